@@ -0,0 +1,157 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+
+/**
+ * An {@link javax.imageio.stream.ImageInputStream} which decodes base64
+ * characters on demand. Since every 4 characters decode to 3 bytes, any
+ * position of the stream can be read directly from the characters, so the
+ * stream is seekable without caching the decoded bytes (unlike wrapping an
+ * InputStream with a {@link javax.imageio.stream.MemoryCacheImageInputStream}).
+ */
+class Base64ImageInputStream extends ImageInputStreamImpl {
+
+    private static final int[] VALUES = new int[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; ++i) {
+            VALUES[i] = -1;
+        }
+        String alphabet =
+                "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); ++i) {
+            VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private final CharSequence chars;
+    private final long length;
+
+    /**
+     * @param data64 The base64 data. Whitespace (e.g., line breaks added by
+     *               some drivers) is allowed, but requires removing it first.
+     */
+    public Base64ImageInputStream(CharSequence data64) {
+        ArgumentGuard.notNull(data64, "data64");
+        chars = withoutWhitespace(data64);
+
+        int charCount = chars.length();
+        while (charCount > 0 && chars.charAt(charCount - 1) == '=') {
+            --charCount;
+        }
+        length = (charCount / 4) * 3L + Math.max(0, (charCount % 4) - 1);
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (streamPos >= length) {
+            return -1;
+        }
+        return byteAt(streamPos++);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos >= length) {
+            return -1;
+        }
+
+        int count = (int) Math.min(len, length - streamPos);
+        int i = 0;
+        // Leading bytes, until we're at the start of a quantum.
+        while (i < count && streamPos % 3 != 0) {
+            b[off + i++] = (byte) byteAt(streamPos++);
+        }
+        // Whole quanta.
+        int charIndex = (int) (streamPos / 3) * 4;
+        while (count - i >= 3) {
+            int quantum = quantumAt(charIndex);
+            b[off + i] = (byte) (quantum >> 16);
+            b[off + i + 1] = (byte) (quantum >> 8);
+            b[off + i + 2] = (byte) quantum;
+            i += 3;
+            charIndex += 4;
+            streamPos += 3;
+        }
+        // Trailing bytes.
+        while (i < count) {
+            b[off + i++] = (byte) byteAt(streamPos++);
+        }
+        return count;
+    }
+
+    private int byteAt(long position) throws IOException {
+        int quantum = quantumAt((int) (position / 3) * 4);
+        return (quantum >> (16 - (int) (position % 3) * 8)) & 0xFF;
+    }
+
+    /**
+     * @return The (up to) 3 bytes decoded from the 4 characters starting at
+     * the given index. Missing characters (at the end of the data) are
+     * decoded as zero bits.
+     */
+    private int quantumAt(int charIndex) throws IOException {
+        int quantum = 0;
+        for (int i = charIndex; i < charIndex + 4; ++i) {
+            int value = 0;
+            if (i < chars.length()) {
+                char c = chars.charAt(i);
+                if (c != '=') {
+                    value = c < VALUES.length ? VALUES[c] : -1;
+                    if (value < 0) {
+                        throw new IOException(String.format(
+                                "Invalid base64 character at %d: '%c'",
+                                i, c));
+                    }
+                }
+            }
+            quantum = (quantum << 6) | value;
+        }
+        return quantum;
+    }
+
+    private static CharSequence withoutWhitespace(CharSequence data64) {
+        int i = 0;
+        while (i < data64.length() && !isWhitespace(data64.charAt(i))) {
+            ++i;
+        }
+        if (i == data64.length()) {
+            return data64;
+        }
+
+        StringBuilder compacted = new StringBuilder(data64.length());
+        compacted.append(data64, 0, i);
+        for (; i < data64.length(); ++i) {
+            char c = data64.charAt(i);
+            if (!isWhitespace(c)) {
+                compacted.append(c);
+            }
+        }
+        return compacted;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == '\n' || c == '\r' || c == ' ' || c == '\t';
+    }
+}
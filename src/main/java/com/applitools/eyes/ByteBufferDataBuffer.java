@@ -0,0 +1,86 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.awt.image.DataBuffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * A single bank {@link DataBuffer} of bytes or ints, stored in a
+ * {@link ByteBuffer} (e.g., a direct or a memory-mapped buffer) rather than
+ * in an array on the heap.
+ */
+class ByteBufferDataBuffer extends DataBuffer {
+
+    private final ByteBuffer bytes;
+    private final IntBuffer ints;
+
+    /**
+     * @param dataType Either {@link DataBuffer#TYPE_BYTE} or
+     *                 {@link DataBuffer#TYPE_INT}.
+     * @param buffer   The buffer in which the elements are stored. Must
+     *                 be large enough for {@code size} elements.
+     * @param size     The number of elements in the buffer.
+     */
+    public ByteBufferDataBuffer(int dataType, ByteBuffer buffer, int size) {
+        super(dataType, size);
+        ArgumentGuard.notNull(buffer, "buffer");
+        if (dataType == TYPE_BYTE) {
+            bytes = buffer;
+            ints = null;
+        } else if (dataType == TYPE_INT) {
+            bytes = null;
+            ints = buffer.asIntBuffer();
+        } else {
+            throw new IllegalArgumentException(
+                    "Unsupported data type: " + dataType);
+        }
+    }
+
+    @Override
+    public int getElem(int bank, int i) {
+        if (bytes != null) {
+            return bytes.get(i) & 0xFF;
+        }
+        return ints.get(i);
+    }
+
+    @Override
+    public void setElem(int bank, int i, int val) {
+        if (bytes != null) {
+            bytes.put(i, (byte) val);
+        } else {
+            ints.put(i, val);
+        }
+    }
+
+    /**
+     * Copies elements from an array into the buffer.
+     * @param index  The index of the first element to set.
+     * @param src    The source array.
+     * @param offset The offset of the first element in {@code src}.
+     * @param length The number of elements to copy.
+     */
+    public void setElems(int index, byte[] src, int offset, int length) {
+        ByteBuffer target = bytes.duplicate();
+        target.position(index);
+        target.put(src, offset, length);
+    }
+
+    /**
+     * Copies elements from an array into the buffer.
+     * @param index  The index of the first element to set.
+     * @param src    The source array.
+     * @param offset The offset of the first element in {@code src}.
+     * @param length The number of elements to copy.
+     */
+    public void setElems(int index, int[] src, int offset, int length) {
+        IntBuffer target = ints.duplicate();
+        target.position(index);
+        target.put(src, offset, length);
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.Map;
+
+/**
+ * Encapsulation for the response of a Chromium DevTools command executed
+ * through the driver's CDP command (e.g., "goog/cdp/execute").
+ */
+
+// Different drivers return different parameters in addition to "value".
+@JsonIgnoreProperties(ignoreUnknown = true)
+class CdpCommandResponse {
+    private Map<String, Object> value;
+
+    void setValue(Map<String, Object> value) {
+        this.value = value;
+    }
+
+    Map<String, Object> getValue() {
+        return value;
+    }
+}
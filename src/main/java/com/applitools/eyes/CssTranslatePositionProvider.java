@@ -0,0 +1,148 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.util.List;
+
+/**
+ * A {@link PositionProvider} which uses CSS translation of the current
+ * context's document element to move the visible part of the page. Unlike
+ * scrolling, this does not fire scroll events. The window itself is
+ * scrolled to the top/left when a position is set, so the state of this
+ * provider includes the window's scroll position.
+ */
+public class CssTranslatePositionProvider implements PositionProvider {
+
+    private static final String JS_GET_STATE =
+            "var doc = document.documentElement;" +
+            " return [doc.style.transform || ''," +
+                " doc.style.webkitTransform || ''," +
+                " window.pageXOffset || doc.scrollLeft || 0," +
+                " window.pageYOffset || doc.scrollTop || 0];";
+
+    private static final String JS_RESTORE_STATE =
+            "var doc = document.documentElement;" +
+            " doc.style.transform = arguments[0];" +
+            " doc.style.webkitTransform = arguments[1];" +
+            " window.scrollTo(arguments[2], arguments[3]);" +
+            EyesWebDriver.JS_MARK_SDK_STYLE;
+
+    private static final String JS_SET_TRANSLATION =
+            "window.scrollTo(0, 0);" +
+            " var doc = document.documentElement;" +
+            " var t = 'translate(' + (-arguments[0]) + 'px, '" +
+                " + (-arguments[1]) + 'px)';" +
+            " doc.style.transform = t; doc.style.webkitTransform = t;" +
+            EyesWebDriver.JS_MARK_SDK_STYLE;
+
+    private static final String JS_GET_TRANSLATION =
+            "var doc = document.documentElement;" +
+            " var t = doc.style.transform || doc.style.webkitTransform || '';" +
+            " var m = t.match(" +
+                "/translate\\(\\s*(-?[\\d.]+)px\\s*,\\s*(-?[\\d.]+)px\\s*\\)/);" +
+            " return m ? [-parseFloat(m[1]), -parseFloat(m[2])] : [0, 0];";
+
+    private final Logger logger;
+    private final EyesWebDriver driver;
+    // The maximum position, so we don't translate beyond the end of the
+    // page (which is what scrolling would do). Lazily initialized.
+    private Location maxPosition;
+    private Location lastSetPosition;
+
+    public CssTranslatePositionProvider(Logger logger, EyesWebDriver driver) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(driver, "driver");
+
+        this.logger = logger;
+        this.driver = driver;
+    }
+
+    /**
+     * @return The last position set by this provider (the translation takes
+     * effect immediately), or the position according to the document
+     * element's current translation if no position was set yet.
+     */
+    public Location getCurrentPosition() {
+        logger.verbose("CssTranslatePositionProvider.getCurrentPosition()");
+        if (lastSetPosition != null) {
+            return new Location(lastSetPosition);
+        }
+        Object result = driver.executeScript(JS_GET_TRANSLATION);
+        List<?> values = (List<?>) result;
+        Location position = new Location(toInt(values.get(0)),
+                toInt(values.get(1)));
+        logger.verbose(String.format("Current position: %s", position));
+        return position;
+    }
+
+    /**
+     * Translates the document element so the given position is at the
+     * top/left of the viewport.
+     * @param location The position to move to.
+     */
+    public void setPosition(Location location) {
+        ArgumentGuard.notNull(location, "location");
+        if (maxPosition == null) {
+            PageGeometry geometry = driver.getPageGeometry();
+            RectangleSize entireSize = geometry.getEntirePageSize();
+            RectangleSize clientSize = geometry.getClientSize();
+            maxPosition = new Location(
+                    Math.max(0, entireSize.getWidth() - clientSize.getWidth()),
+                    Math.max(0,
+                            entireSize.getHeight() - clientSize.getHeight()));
+        }
+        Location position = new Location(
+                Math.max(0, Math.min(location.getX(), maxPosition.getX())),
+                Math.max(0, Math.min(location.getY(), maxPosition.getY())));
+        logger.verbose(String.format("Translating to %s", position));
+        driver.executeScript(JS_SET_TRANSLATION, position.getX(),
+                position.getY());
+        lastSetPosition = position;
+        logger.verbose("Done translating!");
+    }
+
+    /**
+     * @return The size of the entire page based on the scroll width/height.
+     */
+    public RectangleSize getEntireSize() {
+        return driver.getEntirePageSize();
+    }
+
+    public PositionMemento getState() {
+        List<?> values = (List<?>) driver.executeScript(JS_GET_STATE);
+        return new CssTranslatePositionMemento(
+                String.valueOf(values.get(0)), String.valueOf(values.get(1)),
+                new Location(toInt(values.get(2)), toInt(values.get(3))));
+    }
+
+    public void restoreState(PositionMemento state) {
+        ArgumentGuard.notNull(state, "state");
+        CssTranslatePositionMemento memento =
+                (CssTranslatePositionMemento) state;
+        driver.executeScript(JS_RESTORE_STATE, memento.transform,
+                memento.webkitTransform, memento.scrollPosition.getX(),
+                memento.scrollPosition.getY());
+        lastSetPosition = null;
+    }
+
+    private static int toInt(Object value) {
+        return (int) Math.round(Double.parseDouble(String.valueOf(value)));
+    }
+
+    private static class CssTranslatePositionMemento extends PositionMemento {
+        private final String transform;
+        private final String webkitTransform;
+        private final Location scrollPosition;
+
+        public CssTranslatePositionMemento(String transform,
+                                           String webkitTransform,
+                                           Location scrollPosition) {
+            this.transform = transform;
+            this.webkitTransform = webkitTransform;
+            this.scrollPosition = scrollPosition;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+import org.openqa.selenium.WebElement;
+
+import java.util.*;
+
+/**
+ * Maps the IDs of found elements to the elements, so elements can be looked
+ * up by their IDs (e.g., when an Appium tap command references an element).
+ * <p>
+ * The number of registered elements is bounded: when the bound is reached,
+ * the least recently used element is dropped. Elements are registered in
+ * the current epoch, and a new epoch is started on navigation, since the
+ * elements of the previous page can no longer be used. Elements registered
+ * in previous epochs are not returned, and are dropped lazily. Thread safe.
+ */
+class ElementIdRegistry extends AbstractMap<String, WebElement> {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final LinkedHashMap<String, Registration> registrations;
+    private volatile int maxSize;
+    private int epoch;
+
+    public ElementIdRegistry() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize The maximum number of registered elements.
+     */
+    public ElementIdRegistry(int maxSize) {
+        setMaxSize(maxSize);
+        epoch = 0;
+        // Access ordered, so the eldest entry is the least recently used.
+        registrations = new LinkedHashMap<String, Registration>(16, 0.75f,
+                true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Registration> eldest) {
+                return size() > ElementIdRegistry.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param maxSize The maximum number of registered elements. If there are
+     *                more registered elements, the least recently used are
+     *                dropped on the next registration.
+     */
+    public void setMaxSize(int maxSize) {
+        ArgumentGuard.greaterThanZero(maxSize, "maxSize");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return The maximum number of registered elements.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Starts a new epoch: elements registered so far are no longer
+     * returned.
+     */
+    public synchronized void newEpoch() {
+        ++epoch;
+    }
+
+    @Override
+    public synchronized WebElement get(Object id) {
+        Registration registration = registrations.get(id);
+        if (registration == null) {
+            return null;
+        }
+        if (registration.epoch != epoch) {
+            registrations.remove(id);
+            return null;
+        }
+        return registration.element;
+    }
+
+    @Override
+    public boolean containsKey(Object id) {
+        return get(id) != null;
+    }
+
+    @Override
+    public synchronized WebElement put(String id, WebElement element) {
+        ArgumentGuard.notNull(id, "id");
+        ArgumentGuard.notNull(element, "element");
+        Registration previous = registrations.put(id,
+                new Registration(element, epoch));
+        return (previous != null && previous.epoch == epoch)
+                ? previous.element : null;
+    }
+
+    @Override
+    public synchronized WebElement remove(Object id) {
+        Registration previous = registrations.remove(id);
+        return (previous != null && previous.epoch == epoch)
+                ? previous.element : null;
+    }
+
+    @Override
+    public synchronized int size() {
+        removeStale();
+        return registrations.size();
+    }
+
+    @Override
+    public synchronized void clear() {
+        registrations.clear();
+    }
+
+    /**
+     * @return A snapshot of the elements registered in the current epoch,
+     * from the least recently used to the most recently used.
+     */
+    @Override
+    public synchronized Set<Map.Entry<String, WebElement>> entrySet() {
+        removeStale();
+        Map<String, WebElement> snapshot =
+                new LinkedHashMap<String, WebElement>(registrations.size());
+        for (Map.Entry<String, Registration> entry :
+                registrations.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().element);
+        }
+        return Collections.unmodifiableMap(snapshot).entrySet();
+    }
+
+    private void removeStale() {
+        Iterator<Registration> it = registrations.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().epoch != epoch) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * A registered element and the epoch it was registered in.
+     */
+    private static class Registration {
+        private final WebElement element;
+        private final int epoch;
+
+        public Registration(WebElement element, int epoch) {
+            this.element = element;
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+/**
+ * A {@link PositionProvider} which scrolls the content of a scrollable
+ * element (e.g., an element with {@code overflow: auto}) using its
+ * {@code scrollLeft}/{@code scrollTop}, rather than scrolling the window.
+ */
+public class ElementPositionProvider implements PositionProvider {
+
+    private final Logger logger;
+    private final EyesRemoteWebElement element;
+
+    public ElementPositionProvider(Logger logger,
+                                   EyesRemoteWebElement element) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(element, "element");
+
+        this.logger = logger;
+        this.element = element;
+    }
+
+    /**
+     * @return The scroll position of the element's content, once the
+     * element's scroll settled.
+     */
+    public Location getCurrentPosition() {
+        logger.verbose("ElementPositionProvider.getCurrentPosition()");
+        Location position = element.waitForScrollToSettle();
+        logger.verbose(String.format("Current position: %s", position));
+        return position;
+    }
+
+    /**
+     * Scrolls the element's content to the given position.
+     * @param location The position to scroll to.
+     */
+    public void setPosition(Location location) {
+        ArgumentGuard.notNull(location, "location");
+        logger.verbose(String.format("Scrolling element to %s", location));
+        element.scrollTo(location);
+        logger.verbose("Done scrolling element!");
+    }
+
+    /**
+     * @return The size of the element's scrollable content.
+     */
+    public RectangleSize getEntireSize() {
+        RectangleSize size = element.getScrollSize();
+        logger.verbose(String.format("Element's entire size: %s", size));
+        return size;
+    }
+
+    public PositionMemento getState() {
+        return new ElementPositionMemento(element.getScrollPosition());
+    }
+
+    public void restoreState(PositionMemento state) {
+        ArgumentGuard.notNull(state, "state");
+        element.scrollTo(((ElementPositionMemento) state).position);
+    }
+
+    private static class ElementPositionMemento extends PositionMemento {
+        private final Location position;
+
+        public ElementPositionMemento(Location position) {
+            this.position = new Location(position);
+        }
+    }
+}
@@ -5,12 +5,14 @@ package com.applitools.eyes;
 
 import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.GeneralUtils;
-import com.applitools.utils.ImageUtils;
 import org.openqa.selenium.*;
 import org.openqa.selenium.remote.RemoteWebDriver;
 
 import java.awt.image.BufferedImage;
 import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 
 /**
  * The main API gateway for the SDK.
@@ -28,8 +30,26 @@ public class Eyes extends EyesBase {
     private boolean forceFullPageScreenshot;
     private boolean checkFrame;
     private Region frameWindowToCheck;
+    // The region being checked by checkRegion, so only the parts of the page
+    // covering it are stitched when a full page screenshot is forced.
+    private RegionProvider regionToCheck;
+    // The scrollable element whose content is checked by checkElement.
+    private WebElement elementToCheck;
     private boolean hideScrollbars;
 	private ImageRotation rotation;
+    private boolean pipelinedStitching;
+    private Integer maxScrollSettleTime;
+    private StitchMode stitchMode;
+    private StitchedImageStorage stitchedImageStorage;
+    private Integer offHeapPixelThreshold;
+    private Integer maxElementIds;
+    private boolean nativeFullPageCapture;
+    private boolean directScreenshotCapture;
+    private boolean geometryMutationTracking;
+    // The screenshots taken for checks which were not returned to the
+    // driver's buffer pool yet (see releaseScreenshots).
+    private final List<EyesWebDriverScreenshot> checkScreenshots;
+    private ImageCodec imageCodec;
 
     /**
      * Creates a new (possibly disabled) Eyes instance that interacts with the
@@ -42,9 +62,19 @@ public class Eyes extends EyesBase {
 
         checkFrame = false;
         frameWindowToCheck = null;
+        regionToCheck = null;
+        elementToCheck = null;
         forceFullPageScreenshot = false;
         dontGetTitle = false;
         hideScrollbars = false;
+        pipelinedStitching = true;
+        stitchMode = StitchMode.SCROLL;
+        stitchedImageStorage = StitchedImageStorage.HEAP;
+        nativeFullPageCapture = true;
+        directScreenshotCapture = false;
+        geometryMutationTracking = false;
+        imageCodec = new ScreenshotCodec();
+        checkScreenshots = new LinkedList<EyesWebDriverScreenshot>();
     }
 
     @SuppressWarnings("UnusedDeclaration")
@@ -119,6 +149,277 @@ public class Eyes extends EyesBase {
 		}
     }
 
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets whether screenshot parts are decoded and stitched on a worker
+     * thread while the browser captures the next part (enabled by default).
+     *
+     * @param pipelinedStitching Whether to pipeline stitching or not.
+     */
+    public void setPipelinedStitching(boolean pipelinedStitching) {
+        this.pipelinedStitching = pipelinedStitching;
+        if (driver != null) {
+            driver.setPipelinedStitching(pipelinedStitching);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return Whether stitching is pipelined.
+     */
+    public boolean getPipelinedStitching() {
+        return pipelinedStitching;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets the maximum time to wait for a scroll to settle when stitching.
+     * Screenshots are taken as soon as the scroll position and the page
+     * size stop changing, so this only affects pages which keep changing.
+     *
+     * @param maxScrollSettleTime The maximum time to wait (Milliseconds).
+     */
+    public void setMaxScrollSettleTime(int maxScrollSettleTime) {
+        ArgumentGuard.greaterThanOrEqualToZero(maxScrollSettleTime,
+                "maxScrollSettleTime");
+        this.maxScrollSettleTime = maxScrollSettleTime;
+        if (driver != null) {
+            driver.setMaxScrollSettleTime(maxScrollSettleTime);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return The maximum time to wait for a scroll to settle when
+     * stitching (Milliseconds), or {@code null} if the default is used.
+     */
+    public Integer getMaxScrollSettleTime() {
+        return maxScrollSettleTime;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets the method used for moving between parts when stitching (e.g.,
+     * for full page screenshots).
+     *
+     * @param mode The stitch mode to use. {@link StitchMode#CSS} moves the
+     *             page using CSS translation, which doesn't fire scroll
+     *             events.
+     */
+    public void setStitchMode(StitchMode mode) {
+        ArgumentGuard.notNull(mode, "mode");
+        stitchMode = mode;
+        if (driver != null) {
+            driver.setStitchMode(mode);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return The current stitch mode.
+     */
+    public StitchMode getStitchMode() {
+        return stitchMode;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets where the pixels of large stitched images (e.g., full page
+     * screenshots of very tall pages) are stored. Storing them off heap
+     * avoids heap exhaustion and long GC pauses when many browsers run in
+     * the same JVM.
+     *
+     * @param storage Where the pixels should be stored.
+     */
+    public void setStitchedImageStorage(StitchedImageStorage storage) {
+        ArgumentGuard.notNull(storage, "storage");
+        stitchedImageStorage = storage;
+        if (driver != null) {
+            driver.setStitchedImageStorage(storage);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return Where the pixels of large stitched images are stored.
+     */
+    public StitchedImageStorage getStitchedImageStorage() {
+        return stitchedImageStorage;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets the minimal size of a stitched image for it to be stored
+     * according to {@link #setStitchedImageStorage(StitchedImageStorage)}.
+     * Smaller images are always stored on the heap.
+     *
+     * @param pixels The minimal number of pixels.
+     */
+    public void setOffHeapPixelThreshold(int pixels) {
+        ArgumentGuard.greaterThanOrEqualToZero(pixels, "pixels");
+        offHeapPixelThreshold = pixels;
+        if (driver != null) {
+            driver.setOffHeapPixelThreshold(pixels);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return The minimal number of pixels for a stitched image to be stored
+     * off heap, or {@code null} if the default is used.
+     */
+    public Integer getOffHeapPixelThreshold() {
+        return offHeapPixelThreshold;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets the maximum number of found elements kept for lookup by their
+     * IDs (e.g., for recording Appium taps on elements as triggers). When
+     * exceeded, the least recently used elements are dropped.
+     *
+     * @param maxElementIds The maximum number of elements.
+     */
+    public void setMaxElementIds(int maxElementIds) {
+        ArgumentGuard.greaterThanZero(maxElementIds, "maxElementIds");
+        this.maxElementIds = maxElementIds;
+        if (driver != null) {
+            driver.setMaxElementIds(maxElementIds);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return The maximum number of found elements kept for lookup by their
+     * IDs, or {@code null} if the default is used.
+     */
+    public Integer getMaxElementIds() {
+        return maxElementIds;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets whether full page screenshots should be taken in a single
+     * driver command when the driver supports it (e.g., Firefox's full page
+     * screenshot, or Chromium's {@code captureBeyondViewport}), rather than
+     * by scrolling and stitching. Support is detected from the session's
+     * capabilities when the test is opened, and stitching is used if the
+     * command is not supported or fails.
+     *
+     * @param shouldUse Whether to use native full page screenshots.
+     */
+    public void setNativeFullPageCapture(boolean shouldUse) {
+        nativeFullPageCapture = shouldUse;
+        if (driver != null) {
+            driver.setNativeFullPageCapture(shouldUse);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return Whether native full page screenshots are used when supported.
+     */
+    public boolean getNativeFullPageCapture() {
+        return nativeFullPageCapture;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets whether viewport screenshots should be taken by calling the
+     * driver server's screenshot command directly, rather than through the
+     * Selenium client. The screenshot is decoded while the response is
+     * received, which saves memory and time on large screenshots. If a
+     * direct capture fails, the Selenium client is used instead.
+     *
+     * @param shouldUse Whether to take screenshots directly.
+     */
+    public void setDirectScreenshotCapture(boolean shouldUse) {
+        directScreenshotCapture = shouldUse;
+        if (driver != null) {
+            driver.setDirectScreenshotCapture(shouldUse);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return Whether viewport screenshots are taken directly.
+     */
+    public boolean getDirectScreenshotCapture() {
+        return directScreenshotCapture;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * The viewport size and the entire page size are cached between checks,
+     * until the driver navigates, switches windows, resizes the window or
+     * performs a user action. Sets whether the cache should also be
+     * validated against changes the driver can't see (e.g., content loaded
+     * by the page itself): counters of document changes and of window
+     * resizes are installed in the page, and validated with every page
+     * geometry read (which is then made even on a cache hit).
+     *
+     * @param shouldTrack Whether to validate the cached page geometry using
+     *                    mutation counters.
+     */
+    public void setGeometryMutationTracking(boolean shouldTrack) {
+        geometryMutationTracking = shouldTrack;
+        if (driver != null) {
+            driver.setGeometryMutationTracking(shouldTrack);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return Whether the page geometry is cached using mutation counters.
+     */
+    public boolean getGeometryMutationTracking() {
+        return geometryMutationTracking;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets the codec used for decoding screenshots and encoding them as PNG
+     * (e.g., a {@link ScreenshotCodec} with {@link PngCompression#FASTEST}
+     * to trade size for speed).
+     *
+     * @param codec The codec to use.
+     */
+    public void setImageCodec(ImageCodec codec) {
+        ArgumentGuard.notNull(codec, "codec");
+        imageCodec = codec;
+        if (driver != null) {
+            driver.setImageCodec(codec);
+        }
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return The codec used for decoding and encoding screenshots.
+     */
+    public ImageCodec getImageCodec() {
+        return imageCodec;
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Sets the maximum memory held by unused screenshot images, which are
+     * kept so later screenshots of the same size can reuse them. The limit
+     * is shared by all the Eyes instances in the JVM.
+     *
+     * @param maxBytes The maximum number of bytes (0 disables reuse).
+     */
+    public static void setMaxPooledScreenshotBytes(long maxBytes) {
+        ScreenshotBufferPool.setMaxPooledBytes(maxBytes);
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @return The maximum memory held by unused screenshot images (bytes).
+     */
+    public static long getMaxPooledScreenshotBytes() {
+        return ScreenshotBufferPool.getMaxPooledBytes();
+    }
+
     /**
      * Starts a test.
      *
@@ -156,6 +457,22 @@ public class Eyes extends EyesBase {
             throw new EyesException(errMsg);
         }
 		this.driver.setRotation(rotation);
+        this.driver.setPipelinedStitching(pipelinedStitching);
+        this.driver.setStitchMode(stitchMode);
+        this.driver.setStitchedImageStorage(stitchedImageStorage);
+        this.driver.setNativeFullPageCapture(nativeFullPageCapture);
+        this.driver.setDirectScreenshotCapture(directScreenshotCapture);
+        this.driver.setGeometryMutationTracking(geometryMutationTracking);
+        this.driver.setImageCodec(imageCodec);
+        if (offHeapPixelThreshold != null) {
+            this.driver.setOffHeapPixelThreshold(offHeapPixelThreshold);
+        }
+        if (maxScrollSettleTime != null) {
+            this.driver.setMaxScrollSettleTime(maxScrollSettleTime);
+        }
+        if (maxElementIds != null) {
+            this.driver.setMaxElementIds(maxElementIds);
+        }
         return this.driver;
     }
 
@@ -207,20 +524,24 @@ public class Eyes extends EyesBase {
         logger.log(String.format("CheckWindow(%d, '%s')", matchTimeout,
                 tag));
 
-        super.checkWindowBase(
-                new RegionProvider() {
-                    public Region getRegion() {
-                        return Region.EMPTY;
-                    }
+        try {
+            super.checkWindowBase(
+                    new RegionProvider() {
+                        public Region getRegion() {
+                            return Region.EMPTY;
+                        }
 
-                    public CoordinatesType getCoordinatesType() {
-                        return null;
-                    }
-                },
-                tag,
-                false,
-                matchTimeout
-        );
+                        public CoordinatesType getCoordinatesType() {
+                            return null;
+                        }
+                    },
+                    tag,
+                    false,
+                    matchTimeout
+            );
+        } finally {
+            releaseScreenshots();
+        }
     }
 
     @SuppressWarnings("UnusedDeclaration")
@@ -258,23 +579,24 @@ public class Eyes extends EyesBase {
         logger.verbose(String.format("CheckRegion([%s], %d, '%s')", region,
                 matchTimeout, tag));
 
-        super.checkWindowBase(
-                new RegionProvider() {
+        regionToCheck = new RegionProvider() {
 
-                    public Region getRegion() {
-                        return region;
-                    }
+            public Region getRegion() {
+                return region;
+            }
 
-                    public CoordinatesType getCoordinatesType() {
-                        // If we're given a region, it is relative to the
-                        // frame's viewport.
-                        return CoordinatesType.CONTEXT_AS_IS;
-                    }
-                },
-                tag,
-                false,
-                matchTimeout
-        );
+            public CoordinatesType getCoordinatesType() {
+                // If we're given a region, it is relative to the
+                // frame's viewport.
+                return CoordinatesType.CONTEXT_AS_IS;
+            }
+        };
+        try {
+            super.checkWindowBase(regionToCheck, tag, false, matchTimeout);
+        } finally {
+            regionToCheck = null;
+            releaseScreenshots();
+        }
     }
 
     @SuppressWarnings("UnusedDeclaration")
@@ -330,26 +652,106 @@ public class Eyes extends EyesBase {
         driver.scrollTo(
                 new Location(elementLocation.getX(), elementLocation.getY()));
         logger.verbose("Done! calling checkWindowBase..");
-        super.checkWindowBase(
-                new RegionProvider() {
-
-                    public Region getRegion() {
-                        Point p = element.getLocation();
-                        Dimension d = element.getSize();
-                        return new Region(p.getX(), p.getY(), d.getWidth(),
-                                d.getHeight());
-                    }
+        regionToCheck = new RegionProvider() {
 
-                    public CoordinatesType getCoordinatesType() {
-                        // If we're given a region, it is relative to the
-                        // frame's viewport.
-                        return CoordinatesType.CONTEXT_RELATIVE;
-                    }
-                },
-                tag,
-                false,
-                matchTimeout
-        );
+            public Region getRegion() {
+                return driver.getElementBounds(element);
+            }
+
+            public CoordinatesType getCoordinatesType() {
+                // If we're given a region, it is relative to the
+                // frame's viewport.
+                return CoordinatesType.CONTEXT_RELATIVE;
+            }
+        };
+        try {
+            super.checkWindowBase(regionToCheck, tag, false, matchTimeout);
+        } finally {
+            regionToCheck = null;
+            releaseScreenshots();
+        }
+        logger.verbose("Done! trying to scroll back to original position..");
+        driver.scrollTo(originalScrollPos);
+        logger.verbose("Done!");
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @see #checkElement(org.openqa.selenium.WebElement, String).
+     * {@code tag} defaults to {@code null}.
+     */
+    public void checkElement(WebElement element) {
+        checkElement(element, null);
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * @see #checkElement(org.openqa.selenium.WebElement, int, String).
+     * Default match timeout is used.
+     */
+    public void checkElement(WebElement element, String tag) {
+        checkElement(element, USE_DEFAULT_MATCH_TIMEOUT, tag);
+    }
+
+    @SuppressWarnings("UnusedDeclaration")
+    /**
+     * Matches the entire content of a scrollable element (e.g., a grid or a
+     * panel with {@code overflow: auto}) with the expected output. The
+     * content is captured by scrolling the element itself and stitching,
+     * so only the captures the element needs are taken.
+     *
+     * @param element      The scrollable element to check.
+     * @param matchTimeout The amount of time to retry matching.
+     *                     (Milliseconds)
+     * @param tag          An optional tag to be associated with the snapshot.
+     * @throws TestFailedException if a mismatch is detected and
+     *                             immediate failure reports are enabled
+     */
+    public void checkElement(WebElement element, int matchTimeout,
+                             String tag) {
+        if (getIsDisabled()) {
+            logger.log(String.format(
+                    "CheckElement(element, %d, '%s'): Ignored", matchTimeout,
+                    tag));
+            return;
+        }
+
+        ArgumentGuard.notNull(element, "element");
+
+        logger.log(String.format("CheckElement(element, %d, '%s')",
+                matchTimeout, tag));
+
+        // Scrolling the window to the top/left of the element, so as much as
+        // possible of the element's client area is visible.
+        logger.verbose("Getting current scroll position..");
+        Location originalScrollPos = driver.getCurrentScrollPosition();
+        logger.verbose("Done! Getting element's location..");
+        Point elementLocation = element.getLocation();
+        logger.verbose("Done! Trying to scroll to element..");
+        driver.scrollTo(
+                new Location(elementLocation.getX(), elementLocation.getY()));
+        logger.verbose("Done! calling checkWindowBase..");
+        elementToCheck = element;
+        try {
+            super.checkWindowBase(
+                    new RegionProvider() {
+
+                        public Region getRegion() {
+                            return Region.EMPTY;
+                        }
+
+                        public CoordinatesType getCoordinatesType() {
+                            return null;
+                        }
+                    },
+                    tag,
+                    false,
+                    matchTimeout
+            );
+        } finally {
+            elementToCheck = null;
+            releaseScreenshots();
+        }
         logger.verbose("Done! trying to scroll back to original position..");
         driver.scrollTo(originalScrollPos);
         logger.verbose("Done!");
@@ -544,35 +946,58 @@ public class Eyes extends EyesBase {
 
         checkFrame = true;
 
-        logger.verbose("Getting screenshot as base64..");
-        String screenshot64 = driver.getScreenshotAs(OutputType.BASE64);
+        logger.verbose("Getting screenshot..");
+        BufferedImage screenshotImage = driver.getScreenshotImage();
         logger.verbose("Done! Building required object...");
         EyesWebDriverScreenshot screenshot =
-                new EyesWebDriverScreenshot(logger, driver,
-                        ImageUtils.imageFromBase64(screenshot64));
+                new EyesWebDriverScreenshot(logger, driver, screenshotImage);
         logger.verbose("Done!");
         frameWindowToCheck = screenshot.getFrameWindow();
+        // We only needed the frame window, so the image can be reused by
+        // the screenshots taken for the check.
+        screenshot.release();
 
+        try {
+            super.checkWindowBase(
+                    new RegionProvider() {
 
-        super.checkWindowBase(
-                new RegionProvider() {
-
-                    public Region getRegion() {
-                        return Region.EMPTY;
-                    }
+                        public Region getRegion() {
+                            return Region.EMPTY;
+                        }
 
-                    public CoordinatesType getCoordinatesType() {
-                        return null;
-                    }
-                },
-                tag,
-                false,
-                matchTimeout
-        );
+                        public CoordinatesType getCoordinatesType() {
+                            return null;
+                        }
+                    },
+                    tag,
+                    false,
+                    matchTimeout
+            );
+        } finally {
+            releaseScreenshots();
+        }
         checkFrame = false;
         frameWindowToCheck = null;
     }
 
+    /**
+     * Returns the screenshots taken for checks to the driver's buffer pool,
+     * so the screenshots of the next checks can reuse them. The last
+     * screenshot is kept by EyesBase (for triggers, and for compressing the
+     * next check's screenshot), so it is only released once a later check
+     * replaces it.
+     */
+    private void releaseScreenshots() {
+        Iterator<EyesWebDriverScreenshot> it = checkScreenshots.iterator();
+        while (it.hasNext()) {
+            EyesWebDriverScreenshot screenshot = it.next();
+            if (screenshot != lastScreenshot) {
+                screenshot.release();
+                it.remove();
+            }
+        }
+    }
+
     @SuppressWarnings("UnusedDeclaration")
     /**
      * @see #checkFrame(String, int, String).
@@ -859,6 +1284,9 @@ public class Eyes extends EyesBase {
      */
     protected void addMouseTrigger(MouseAction action, Region control,
                                    Location cursor) {
+        // The action might change the page's geometry.
+        driver.invalidateGeometryCache();
+
         if (getIsDisabled()) {
             logger.verbose(String.format(
                     "AddMouseTrigger: Ignoring %s (disabled)",
@@ -892,6 +1320,9 @@ public class Eyes extends EyesBase {
      * @param element The WebElement on which the click was called.
      */
     protected void addMouseTrigger(MouseAction action, WebElement element) {
+        // The action might change the page's geometry.
+        driver.invalidateGeometryCache();
+
         if (getIsDisabled()) {
             logger.verbose(String.format(
                     "AddMouseTrigger: Ignoring %s (disabled)",
@@ -901,11 +1332,7 @@ public class Eyes extends EyesBase {
 
         ArgumentGuard.notNull(element, "element");
 
-        Point pl = element.getLocation();
-        Dimension ds = element.getSize();
-
-        Region elementRegion = new Region(pl.getX(), pl.getY(), ds.getWidth(),
-                ds.getHeight());
+        Region elementRegion = driver.getElementBounds(element);
 
         // Triggers are actually performed on the previous window.
         if (lastScreenshot == null) {
@@ -939,6 +1366,9 @@ public class Eyes extends EyesBase {
      * @param text    The trigger's text.
      */
     protected void addTextTrigger(Region control, String text) {
+        // The action might change the page's geometry.
+        driver.invalidateGeometryCache();
+
         if (getIsDisabled()) {
             logger.verbose(String.format(
                     "AddTextTrigger: Ignoring '%s' (disabled)", text));
@@ -975,11 +1405,7 @@ public class Eyes extends EyesBase {
         }
         ArgumentGuard.notNull(element, "element");
 
-        Point pl = element.getLocation();
-        Dimension ds = element.getSize();
-
-        Region elementRegion = new Region(pl.getX(), pl.getY(), ds.getWidth(),
-                ds.getHeight());
+        Region elementRegion = driver.getElementBounds(element);
 
         addTextTrigger(elementRegion, text);
     }
@@ -990,9 +1416,7 @@ public class Eyes extends EyesBase {
         int height = 0;
 
         try {
-            width = driver.extractViewportWidth();
-            height = driver.extractViewportHeight();
-            return new RectangleSize(width, height);
+            return driver.extractViewportSize();
         } catch (Exception ex) {
             logger.verbose(String.format(
                 "getViewportSize(): Failed to extract viewport size using Javascript: %s",
@@ -1036,6 +1460,7 @@ public class Eyes extends EyesBase {
         logger.verbose("Trying to set browser size to: " + startingBrowserSize);
         do {
             driver.manage().window().setSize(startingBrowserSize);
+            driver.invalidateGeometryCache();
             GeneralUtils.sleep(SLEEP);
             browserSize = driver.manage().window().getSize();
             logger.verbose("Current browser size: " + browserSize);
@@ -1057,10 +1482,13 @@ public class Eyes extends EyesBase {
         driver.manage().window().setSize(new Dimension(
                 (2 * browserSize.width) - actualViewportSize.getWidth(),
                 (2 * browserSize.height) - actualViewportSize.getHeight()));
+        driver.invalidateGeometryCache();
 
         retriesLeft = RETRIES;
         do {
             GeneralUtils.sleep(SLEEP);
+            // The viewport might still be changing.
+            driver.invalidateGeometryCache();
             actualViewportSize = getViewportSize();
             logger.verbose("setViewportSize(): viewport size: "
                     + actualViewportSize);
@@ -1082,10 +1510,12 @@ public class Eyes extends EyesBase {
             logger.verbose("SetViewportSize(): required browser size: " +
                     updatedBrowserSize);
             driver.manage().window().setSize(updatedBrowserSize);
+            driver.invalidateGeometryCache();
 
             retriesLeft = RETRIES;
             do {
                 GeneralUtils.sleep(SLEEP);
+                driver.invalidateGeometryCache();
                 actualViewportSize = getViewportSize();
                 logger.verbose("SetViewportSize(): browser size: "
                         + driver.manage().window().getSize());
@@ -1118,7 +1548,17 @@ public class Eyes extends EyesBase {
             originalOverflow = driver.hideScrollbars();
         }
         try {
-            if (checkFrame) {
+            if (elementToCheck != null) {
+                logger.verbose("Check element requested");
+                BufferedImage entireElement =
+                        driver.getStitchedElement(elementToCheck);
+                logger.verbose("Building screenshot object...");
+                result = new EyesWebDriverScreenshot(logger, driver,
+                        entireElement, new RectangleSize(
+                                entireElement.getWidth(),
+                                entireElement.getHeight()));
+                logger.verbose("Done!");
+            } else if (checkFrame) {
                 logger.verbose("Check frame requested");
                 BufferedImage entireFrame = driver.getStitchedRegion(
                         new RegionProvider() {
@@ -1135,6 +1575,16 @@ public class Eyes extends EyesBase {
                         new RectangleSize(entireFrame.getWidth(),
                                 entireFrame.getHeight()));
                 logger.verbose("Done!");
+            } else if (forceFullPageScreenshot && regionToCheck != null
+                    && driver.getFrameChain().size() == 0) {
+                // In the default content the context coordinates are the
+                // page coordinates, so we only need to stitch the region.
+                Region area = regionToCheck.getRegion();
+                logger.verbose(String.format(
+                        "Full page screenshot of %s requested.", area));
+                result = new EyesWebDriverScreenshot(logger, driver,
+                        driver.getFullPageScreenshot(area), area);
+                logger.verbose("Done!");
             } else if (forceFullPageScreenshot) {
                 logger.verbose("Full page screenshot requested.");
                 result = new EyesWebDriverScreenshot(logger, driver,
@@ -1142,15 +1592,13 @@ public class Eyes extends EyesBase {
                 logger.verbose("Done!");
             } else {
                 logger.verbose("Screenshot requested...");
-                String screenshot64 = driver.getScreenshotAs(OutputType.BASE64);
-                logger.verbose("Done! Creating image object...");
-                BufferedImage screenshotImage = ImageUtils.imageFromBase64(
-                        screenshot64);
+                BufferedImage screenshotImage = driver.getScreenshotImage();
                 logger.verbose("Done! Creating screenshot object...");
                 result = new EyesWebDriverScreenshot(logger, driver,
                         screenshotImage);
                 logger.verbose("Done!");
             }
+            checkScreenshots.add(result);
             return result;
         } finally {
             if (hideScrollbars) {
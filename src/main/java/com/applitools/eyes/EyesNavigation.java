@@ -0,0 +1,61 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+import org.openqa.selenium.WebDriver;
+
+import java.net.URL;
+
+/**
+ * A wrapper class for Selenium's Navigation interface, so we know when the
+ * page changes.
+ */
+class EyesNavigation implements WebDriver.Navigation {
+
+    private final Logger logger;
+    private final EyesWebDriver eyesDriver;
+    private final WebDriver.Navigation navigation;
+
+    public EyesNavigation(Logger logger, EyesWebDriver eyesDriver,
+                          WebDriver.Navigation navigation) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(eyesDriver, "eyesDriver");
+        ArgumentGuard.notNull(navigation, "navigation");
+
+        this.logger = logger;
+        this.eyesDriver = eyesDriver;
+        this.navigation = navigation;
+    }
+
+    public void back() {
+        willNavigate();
+        navigation.back();
+    }
+
+    public void forward() {
+        willNavigate();
+        navigation.forward();
+    }
+
+    public void to(String url) {
+        willNavigate();
+        navigation.to(url);
+    }
+
+    public void to(URL url) {
+        willNavigate();
+        navigation.to(url);
+    }
+
+    public void refresh() {
+        willNavigate();
+        navigation.refresh();
+    }
+
+    private void willNavigate() {
+        logger.verbose("Navigating...");
+        eyesDriver.willNavigate();
+    }
+}
@@ -27,6 +27,22 @@ public class EyesRemoteWebElement extends RemoteWebElement {
                 "return null;" +
             "}";
 
+    private static final String JS_GET_SCROLL_POSITION =
+            "return [arguments[0].scrollLeft, arguments[0].scrollTop];";
+
+    private static final String JS_SCROLL_TO =
+            "arguments[0].scrollLeft = arguments[1]; " +
+            "arguments[0].scrollTop = arguments[2];";
+
+    private static final String JS_GET_SCROLL_SIZE =
+            "return [arguments[0].scrollWidth, arguments[0].scrollHeight];";
+
+    // The client area excludes the borders and the scrollbars.
+    private static final String JS_GET_CLIENT_AREA =
+            "var elem = arguments[0]; " +
+            "return [elem.clientLeft, elem.clientTop, " +
+                "elem.clientWidth, elem.clientHeight];";
+
     public EyesRemoteWebElement(Logger logger, EyesWebDriver eyesDriver,
                                 RemoteWebElement webElement) {
         super();
@@ -41,17 +57,11 @@ public class EyesRemoteWebElement extends RemoteWebElement {
     }
 
     public Region getBounds() {
-        int left = webElement.getLocation().getX();
-        int top = webElement.getLocation().getY();
-        int width = 0;
-        int height = 0;
-
-        try {
-            width = webElement.getSize().getWidth();
-            height = webElement.getSize().getHeight();
-        } catch (Exception ex) {
-            // Not supported on all platforms.
-        }
+        Region bounds = eyesDriver.getElementBounds(webElement);
+        int left = bounds.getLeft();
+        int top = bounds.getTop();
+        int width = bounds.getWidth();
+        int height = bounds.getHeight();
 
         if (left < 0) {
             width = Math.max(0, width + left);
@@ -79,6 +89,62 @@ public class EyesRemoteWebElement extends RemoteWebElement {
         return (String) eyesDriver.executeScript(scriptToExec, this);
     }
 
+    /**
+     * @return The scroll position of the element's content.
+     */
+    public Location getScrollPosition() {
+        int[] position = executeIntegersScript(JS_GET_SCROLL_POSITION);
+        return new Location(position[0], position[1]);
+    }
+
+    /**
+     * Waits until the element's scroll position and scroll size stop
+     * changing, or until the driver's maximum scroll settle time passed.
+     * @return The scroll position of the element's content once the scroll
+     * settled.
+     * @see EyesWebDriver#waitForElementScrollToSettle(WebElement)
+     */
+    public Location waitForScrollToSettle() {
+        return eyesDriver.waitForElementScrollToSettle(this);
+    }
+
+    /**
+     * Scrolls the element's content (not the window) to the given position.
+     * @param location The position to scroll to.
+     */
+    public void scrollTo(Location location) {
+        eyesDriver.executeScript(JS_SCROLL_TO, this, location.getX(),
+                location.getY());
+    }
+
+    /**
+     * @return The size of the element's (scrollable) content.
+     */
+    public RectangleSize getScrollSize() {
+        int[] size = executeIntegersScript(JS_GET_SCROLL_SIZE);
+        return new RectangleSize(size[0], size[1]);
+    }
+
+    /**
+     * @return The region of the element in which its content is displayed
+     * (i.e., without borders and scrollbars), relative to the element's
+     * bounds.
+     */
+    public Region getClientArea() {
+        int[] area = executeIntegersScript(JS_GET_CLIENT_AREA);
+        return new Region(area[0], area[1], area[2], area[3]);
+    }
+
+    private int[] executeIntegersScript(String script) {
+        List<?> values = (List<?>) eyesDriver.executeScript(script, this);
+        int[] result = new int[values.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = (int) Math.round(
+                    Double.parseDouble(String.valueOf(values.get(i))));
+        }
+        return result;
+    }
+
     @Override
     public void click() {
 
@@ -41,6 +41,18 @@ class EyesTargetLocator implements WebDriver.TargetLocator {
         public void willSwitchToFrame(TargetType targetType,
                 WebElement targetFrame);
 
+        /**
+         * Will be called before switching into a frame whose metadata is
+         * already known (e.g., when restoring a frame chain).
+         * @param frame The frame about to be switched to.
+         * @param metadataRoundTrips The number of driver calls made for
+         *                           getting the frame's metadata (e.g., 1
+         *                           for reading the frame index, 0 if it
+         *                           was reused).
+         */
+        public void willSwitchToKnownFrame(Frame frame,
+                int metadataRoundTrips);
+
         /**
          * Will be called before switching into a window.
          * @param nameOrHandle The name/handle of the window to be switched to.
@@ -70,11 +82,29 @@ class EyesTargetLocator implements WebDriver.TargetLocator {
 
     public WebDriver frame(int index) {
         logger.verbose(String.format("EyesTargetLocator.frame(%d)", index));
+        // Finding the target frame using the frame index of the current
+        // context, so we can report it using onWillSwitch.
+        FrameIndex frameIndex = driver.getFrameIndex();
+        if (frameIndex != null) {
+            Frame frame = frameIndex.getFrame(index);
+            if (frame == null) {
+                throw new NoSuchFrameException(String.format(
+                        "Frame index [%d] is invalid!", index));
+            }
+            logger.verbose("Done! Making preparations...");
+            // The frame index was read in a single script call.
+            onWillSwitch.willSwitchToKnownFrame(frame, 1);
+            logger.verbose("Done! Switching to frame...");
+            targetLocator.frame(index);
+            logger.verbose("Done!");
+            return driver;
+        }
+
         // Finding the target element so and reporting it using onWillSwitch.
         logger.verbose("Getting frames list...");
         List<WebElement> frames = driver.findElementsByCssSelector(
                 "frame, iframe");
-        if (index > frames.size()) {
+        if (index >= frames.size()) {
             throw new NoSuchFrameException(String.format(
                     "Frame index [%d] is invalid!", index));
         }
@@ -91,6 +121,24 @@ class EyesTargetLocator implements WebDriver.TargetLocator {
     public WebDriver frame(String nameOrId) {
         logger.verbose(String.format("EyesTargetLocator.frame('%s')",
                 nameOrId));
+        // Finding the target frame using the frame index of the current
+        // context, so we can report it.
+        FrameIndex frameIndex = driver.getFrameIndex();
+        if (frameIndex != null) {
+            Frame frame = frameIndex.getFrame(nameOrId);
+            if (frame == null) {
+                throw new NoSuchFrameException(String.format(
+                        "No frame with name or id '%s' exists!", nameOrId));
+            }
+            logger.verbose("Done! Making preparations..");
+            // The frame index was read in a single script call.
+            onWillSwitch.willSwitchToKnownFrame(frame, 1);
+            logger.verbose("Done! Switching to frame...");
+            targetLocator.frame(nameOrId);
+            logger.verbose("Done!");
+            return driver;
+        }
+
         // Finding the target element so we can report it.
         // We use find elements(plural) to avoid exception when the element
         // is not found.
@@ -139,16 +187,52 @@ class EyesTargetLocator implements WebDriver.TargetLocator {
     /**
      * Switches into every frame in the frame chain. This is used as way to
      * switch into nested frames (while considering scroll) in a single call.
+     * Only the difference from the current frame chain is switched: frames
+     * which both chains share are not left, and the frames which are
+     * entered reuse the metadata already in the chain.
      * @param frameChain The path to the frame to switch to.
      * @return The WebDriver with the switched context.
      */
     public WebDriver frames(FrameChain frameChain) {
         logger.verbose("EyesTargetLocator.frames(frameChain)");
-        for (Frame frame: frameChain) {
+        Frame[] currentFrames = driver.getFrameChain().toArray();
+        Frame[] targetFrames = frameChain.toArray();
+        int commonSize = 0;
+        while (commonSize < currentFrames.length
+                && commonSize < targetFrames.length
+                && currentFrames[commonSize].getId().equals(
+                        targetFrames[commonSize].getId())) {
+            ++commonSize;
+        }
+        logger.verbose(String.format(
+                "Current chain size: %d, target chain size: %d, common: %d",
+                currentFrames.length, targetFrames.length, commonSize));
+
+        // Leaving the frames which are not in the target chain.
+        int framesToLeave = currentFrames.length - commonSize;
+        if (framesToLeave > 0) {
+            if (commonSize == 0) {
+                defaultContent();
+            } else {
+                for (int i = 0; i < framesToLeave; ++i) {
+                    parentFrame();
+                }
+            }
+        }
+
+        // The parent positions are restored the same way the driver moves
+        // between parts (according to its stitch mode).
+        PositionProvider positionProvider = driver.createPositionProvider();
+        for (int i = commonSize; i < targetFrames.length; ++i) {
+            Frame frame = targetFrames[i];
+            // Always restored, since the parent might have been scrolled
+            // since the frame was entered.
             logger.verbose("Scrolling by parent scroll position..");
-            driver.scrollTo(frame.getParentScrollPosition());
+            positionProvider.setPosition(frame.getParentScrollPosition());
             logger.verbose("Done! Switching to frame...");
-            driver.switchTo().frame(frame.getReference());
+            // The frame's metadata is reused from the chain.
+            onWillSwitch.willSwitchToKnownFrame(frame, 0);
+            targetLocator.frame(frame.getReference());
             logger.verbose("Done!");
         }
         logger.verbose("Done switching into nested frames!");
@@ -16,8 +16,12 @@ import org.openqa.selenium.internal.*;
 import org.openqa.selenium.remote.*;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.*;
 
@@ -37,38 +41,236 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
     private static final int MAX_SCROLL_BAR_SIZE = 50;
     private static final int MIN_SCREENSHOT_PART_HEIGHT = 10;
 
-    // See Applitools WiKi for explanation.
-    private static final String JS_GET_VIEWPORT_WIDTH =
-            "var width = undefined;" +
+    // The maximum number of captured parts waiting to be stitched when
+    // stitching is pipelined.
+    private static final int MAX_PENDING_STITCH_PARTS = 2;
+
+    // The default maximum time to wait for a scroll to settle, and the
+    // interval between samples when we have to poll from the client side.
+    private static final int DEFAULT_MAX_SCROLL_SETTLE_TIME = 1000; // ms
+    private static final int SCROLL_SETTLE_POLL_INTERVAL = 20; // ms
+
+    // Stitched images with at least this many pixels are stored according
+    // to the stitched image storage (smaller images are always on the heap).
+    private static final int DEFAULT_OFF_HEAP_PIXEL_THRESHOLD = 10000000;
+
+    // Installs counters of document changes and of window resizes in the
+    // current context's window, if not installed yet. The counters start at
+    // a random value, so the counts of different documents can't be
+    // confused. Resizes are counted as document changes as well. Changes of
+    // the document element's style attribute which leave it as the SDK
+    // last set it (see JS_MARK_SDK_STYLE) are not counted.
+    static final String JS_TRACK_MUTATIONS =
+            "if (window.__applitoolsMutationCount === undefined" +
+                " && window.MutationObserver) {" +
+                " window.__applitoolsMutationCount =" +
+                    " Math.floor(Math.random() * 1000000000);" +
+                " window.__applitoolsResizeCount =" +
+                    " Math.floor(Math.random() * 1000000000);" +
+                " new MutationObserver(function (records) {" +
+                    " var doc = document.documentElement;" +
+                    " for (var i = 0; i < records.length; ++i) {" +
+                        " var r = records[i];" +
+                        " if (r.type !== 'attributes' || r.target !== doc" +
+                            " || r.attributeName !== 'style'" +
+                            " || doc.getAttribute('style') !==" +
+                                " window.__applitoolsSdkStyle) {" +
+                            "++window.__applitoolsMutationCount; return;}" +
+                    "}" +
+                "}).observe(document, {childList: true, subtree: true," +
+                    " attributes: true, characterData: true});" +
+                " window.addEventListener('resize', function () {" +
+                    "++window.__applitoolsMutationCount;" +
+                    " ++window.__applitoolsResizeCount;});" +
+            "}";
+
+    // Appended to scripts which set the document element's style (e.g.,
+    // hiding the scrollbars or CSS translation), so the SDK's own changes
+    // are not counted as document changes.
+    static final String JS_MARK_SDK_STYLE =
+            " window.__applitoolsSdkStyle =" +
+                " document.documentElement.getAttribute('style');";
+
+    // Returns the page geometry of the current context in a single call:
+    // [documentElement.scrollWidth, body.scrollWidth,
+    //  documentElement.clientWidth, documentElement.clientHeight,
+    //  body.clientHeight, documentElement.scrollHeight, body.scrollHeight,
+    //  scrollX, scrollY, viewportWidth, viewportHeight, devicePixelRatio,
+    //  mutationCount, resizeCount].
+    // The mutation counters are installed if arguments[0] is true. If the
+    // mutation count equals arguments[1], the document didn't change, so
+    // the first 7 values (which require layout) are not read, and are
+    // returned as null. The counts are -1 if not tracked.
+    // See Applitools WiKi for explanation on the viewport size.
+    private static final String JS_GET_PAGE_GEOMETRY =
+            "if (arguments[0]) {" + JS_TRACK_MUTATIONS + "}" +
+            " var count = window.__applitoolsMutationCount;" +
+            " if (count === undefined) {count = -1;}" +
+            " var resizeCount = window.__applitoolsResizeCount;" +
+            " if (resizeCount === undefined) {resizeCount = -1;}" +
+            " var doc = document.documentElement;" +
+            " var b = document.body;" +
+            " var x = window.scrollX; var y = window.scrollY;" +
+            " if (x === undefined || y === undefined) {" +
+                " x = (window.pageXOffset || doc.scrollLeft)" +
+                    " - (doc.clientLeft || 0);" +
+                " y = (window.pageYOffset || doc.scrollTop)" +
+                    " - (doc.clientTop || 0);" +
+            "}" +
+            " var width = undefined;" +
             " if (window.innerWidth) {width = window.innerWidth;}" +
-            " else if (document.documentElement " +
-                    "&& document.documentElement.clientWidth) " +
-                        "{width = document.documentElement.clientWidth;}" +
-            " else { var b = document.getElementsByTagName('body')[0]; " +
-                    "if (b.clientWidth) {" +
-                        "width = b.clientWidth;}" +
-                    "};" +
-            "return width;";
-
-    private static final String JS_GET_VIEWPORT_HEIGHT =
-            "var height = undefined;" +
-            "  if (window.innerHeight) {height = window.innerHeight;}" +
-            "  else if (document.documentElement " +
-                    "&& document.documentElement.clientHeight) " +
-                        "{height = document.documentElement.clientHeight;}" +
-            "  else { var b = document.getElementsByTagName('body')[0]; " +
-                        "if (b.clientHeight) {height = b.clientHeight;}" +
-                    "};" +
-            "return height;";
+            " else if (doc && doc.clientWidth) {width = doc.clientWidth;}" +
+            " else if (b && b.clientWidth) {width = b.clientWidth;}" +
+            " var height = undefined;" +
+            " if (window.innerHeight) {height = window.innerHeight;}" +
+            " else if (doc && doc.clientHeight) {height = doc.clientHeight;}" +
+            " else if (b && b.clientHeight) {height = b.clientHeight;}" +
+            " if (count >= 0 && count === arguments[1]) {" +
+                " return [null, null, null, null, null, null, null," +
+                    " x, y, width, height, window.devicePixelRatio || 1," +
+                    " count, resizeCount];" +
+            "}" +
+            " return [doc.scrollWidth, b ? b.scrollWidth : 0," +
+                " doc.clientWidth, doc.clientHeight," +
+                " b ? b.clientHeight : 0," +
+                " doc.scrollHeight, b ? b.scrollHeight : 0," +
+                " x, y, width, height, window.devicePixelRatio || 1," +
+                " count, resizeCount];";
+
+    // Waits (using animation frames) until the scroll position and the
+    // document's scroll size did not change for two consecutive frames, or
+    // until arguments[0] milliseconds passed. Calls back with the page
+    // geometry (same format as JS_GET_PAGE_GEOMETRY).
+    private static final String JS_WAIT_FOR_SCROLL_TO_SETTLE =
+            "var callback = arguments[arguments.length - 1];" +
+            " var maxWait = arguments[0];" +
+            " function getGeometry() {" + JS_GET_PAGE_GEOMETRY + "}" +
+            " var done = false;" +
+            " function finish(g) {" +
+                " if (!done) {done = true; callback(g);}" +
+            "}" +
+            " var nextFrame = window.requestAnimationFrame ||" +
+                " function (f) {return window.setTimeout(f, 16);};" +
+            " var start = new Date().getTime();" +
+            " var last = getGeometry(); var stableFrames = 0;" +
+            " function check() {" +
+                " if (done) {return;}" +
+                " var g = getGeometry();" +
+                " if (g[7] === last[7] && g[8] === last[8]" +
+                    " && g[0] === last[0] && g[5] === last[5]" +
+                    " && g[6] === last[6]) {++stableFrames;}" +
+                " else {stableFrames = 0; last = g;}" +
+                " if (stableFrames >= 2" +
+                    " || new Date().getTime() - start >= maxWait) {" +
+                    "finish(g);}" +
+                " else {nextFrame(check);}" +
+            "}" +
+            // Animation frames are not fired for hidden pages, so we make
+            // sure we always call back in time.
+            " window.setTimeout(function () {finish(getGeometry());}," +
+                " maxWait);" +
+            " nextFrame(check);";
+
+    // Same as JS_WAIT_FOR_SCROLL_TO_SETTLE, for the scroll position and the
+    // scroll size of the element in arguments[1]. Calls back with the
+    // element's scrollLeft, scrollTop, scrollWidth and scrollHeight.
+    private static final String JS_WAIT_FOR_ELEMENT_SCROLL_TO_SETTLE =
+            "var callback = arguments[arguments.length - 1];" +
+            " var maxWait = arguments[0]; var elem = arguments[1];" +
+            " function getState() {" +
+                " return [elem.scrollLeft, elem.scrollTop," +
+                    " elem.scrollWidth, elem.scrollHeight];" +
+            "}" +
+            " var done = false;" +
+            " function finish(s) {" +
+                " if (!done) {done = true; callback(s);}" +
+            "}" +
+            " var nextFrame = window.requestAnimationFrame ||" +
+                " function (f) {return window.setTimeout(f, 16);};" +
+            " var start = new Date().getTime();" +
+            " var last = getState(); var stableFrames = 0;" +
+            " function check() {" +
+                " if (done) {return;}" +
+                " var s = getState();" +
+                " if (s[0] === last[0] && s[1] === last[1]" +
+                    " && s[2] === last[2] && s[3] === last[3]) {" +
+                    "++stableFrames;}" +
+                " else {stableFrames = 0; last = s;}" +
+                " if (stableFrames >= 2" +
+                    " || new Date().getTime() - start >= maxWait) {" +
+                    "finish(s);}" +
+                " else {nextFrame(check);}" +
+            "}" +
+            " window.setTimeout(function () {finish(getState());}," +
+                " maxWait);" +
+            " nextFrame(check);";
+
+    // Returns the scrollLeft, scrollTop, scrollWidth and scrollHeight of the
+    // element in arguments[0].
+    private static final String JS_GET_ELEMENT_SCROLL_STATE =
+            "var elem = arguments[0];" +
+            " return [elem.scrollLeft, elem.scrollTop," +
+                " elem.scrollWidth, elem.scrollHeight];";
+
+    // Returns the bounds of each of the elements in arguments[0], as
+    // consecutive left, top, width and height values relative to the
+    // document of the current context (as returned by the elements'
+    // getLocation and getSize).
+    private static final String JS_GET_ELEMENTS_BOUNDS =
+            "var elements = arguments[0];" +
+            " var x = window.scrollX; var y = window.scrollY;" +
+            " if (x === undefined || y === undefined) {" +
+                " var doc = document.documentElement;" +
+                " x = window.pageXOffset || doc.scrollLeft;" +
+                " y = window.pageYOffset || doc.scrollTop;" +
+            "}" +
+            " var bounds = [];" +
+            " for (var i = 0; i < elements.length; ++i) {" +
+                " var r = elements[i].getBoundingClientRect();" +
+                " bounds.push(r.left + x, r.top + y, r.width, r.height);" +
+            "}" +
+            " return bounds;";
+
+    // Returns the resize count of the top level window (see
+    // JS_TRACK_MUTATIONS), or -1 if it's not tracked or can't be accessed
+    // (e.g., from a cross origin frame).
+    private static final String JS_GET_TOP_RESIZE_COUNT =
+            "try {" +
+                " var count = window.top.__applitoolsResizeCount;" +
+                " return (count === undefined) ? -1 : count;" +
+            "} catch (e) {return -1;}";
 
     private final Logger logger;
     private final Eyes eyes;
     private final RemoteWebDriver driver;
     private final TouchScreen touch;
-    private final ScreenshotTaker screenshotTaker;
-    private final Map<String, WebElement> elementsIds;
+    // Takes viewport screenshots directly through the driver server's
+    // screenshot command, if enabled (null otherwise).
+    private ScreenshotTaker screenshotTaker;
+    private final ElementIdRegistry elementsIds;
     private final FrameChain frameChain;
+    private final GeometryCache geometryCache;
+    // The cached frame indexes of the documents in the current window, by
+    // the ids of the frames leading to each document.
+    private final Map<String, FrameIndex> frameIndexes;
+    // The number of driver calls made for getting the metadata of the
+    // frame switched into by the last frame switch.
+    private int lastFrameSwitchRoundTrips;
+    // Whether the page geometry is cached, using mutation counters
+    // installed in the page.
+    private boolean geometryMutationTracking;
+    private ImageCodec imageCodec;
+    private final ScreenshotBufferPool bufferPool;
     private ImageRotation rotation;
+    private boolean pipelinedStitching;
+    private int maxScrollSettleTime;
+    private boolean asyncScrollSettleSupported;
+    private StitchMode stitchMode;
+    private StitchedImageStorage stitchedImageStorage;
+    private int offHeapPixelThreshold;
+    // Takes full page screenshots in a single command, if the driver
+    // supports it (null otherwise).
+    private FullPageScreenshotTaker fullPageScreenshotTaker;
 
     /**
      * Rotates the image as necessary. The rotation is either manually forced
@@ -88,23 +290,52 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
                                                   ImageRotation rotation) {
         ArgumentGuard.notNull(driver, "driver");
         ArgumentGuard.notNull(image, "image");
-        BufferedImage normalizedImage = image;
-        if (rotation != null) {
-            if (rotation.getRotation() != 0) {
-                normalizedImage = ImageUtils.rotateImage(image,
-                        rotation.getRotation());
-            }
-        } else { // Do automatic rotation if necessary
-            if (driver.isMobileDevice() && driver.isLandscapeOrientation() &&
-                    image.getHeight() > image.getWidth()) {
-                // For Android, we need to rotate images to the right, and for
-                // iOS to the left.
-                int degrees = driver.isAndroid() ? 90 : -90;
-                normalizedImage = ImageUtils.rotateImage(image, degrees);
-            }
+        int degrees = getRotationDegrees(driver, image, rotation);
+        if (degrees == 0) {
+            return image;
         }
+        return ImageRotator.rotate(image, degrees, null);
+    }
+
+    /**
+     * @param driver The driver which produced the screenshot.
+     * @param image The image to normalize.
+     * @param rotation The rotation data, or {@code null} for automatic
+     *                 rotation.
+     * @return The degrees by which the image should be rotated (0 if no
+     * rotation is required).
+     * @see #normalizeRotation(EyesWebDriver, BufferedImage, ImageRotation)
+     */
+    private static int getRotationDegrees(EyesWebDriver driver,
+                                          BufferedImage image,
+                                          ImageRotation rotation) {
+        return getRotationDegrees(driver, image.getWidth(), image.getHeight(),
+                rotation);
+    }
 
-        return normalizedImage;
+    /**
+     * @param driver The driver which produced the screenshot.
+     * @param width The width of the screenshot.
+     * @param height The height of the screenshot.
+     * @param rotation The rotation data, or {@code null} for automatic
+     *                 rotation.
+     * @return The degrees by which the screenshot should be rotated (0 if no
+     * rotation is required).
+     */
+    private static int getRotationDegrees(EyesWebDriver driver, int width,
+                                          int height,
+                                          ImageRotation rotation) {
+        if (rotation != null) {
+            return rotation.getRotation();
+        }
+        // Do automatic rotation if necessary
+        if (driver.isMobileDevice() && driver.isLandscapeOrientation() &&
+                height > width) {
+            // For Android, we need to rotate images to the right, and for
+            // iOS to the left.
+            return driver.isAndroid() ? 90 : -90;
+        }
+        return 0;
     }
 
     public EyesWebDriver(Logger logger, Eyes eyes, RemoteWebDriver driver)
@@ -116,8 +347,20 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
         this.logger = logger;
         this.eyes = eyes;
         this.driver = driver;
-        elementsIds = new HashMap<String, WebElement>();
+        this.imageCodec = new ScreenshotCodec();
+        this.bufferPool = new ScreenshotBufferPool();
+        elementsIds = new ElementIdRegistry();
         this.frameChain = new FrameChain(logger);
+        geometryCache = new GeometryCache(logger);
+        frameIndexes = new HashMap<String, FrameIndex>();
+        lastFrameSwitchRoundTrips = 0;
+        geometryMutationTracking = false;
+        pipelinedStitching = true;
+        maxScrollSettleTime = DEFAULT_MAX_SCROLL_SETTLE_TIME;
+        asyncScrollSettleSupported = true;
+        stitchMode = StitchMode.SCROLL;
+        stitchedImageStorage = StitchedImageStorage.HEAP;
+        offHeapPixelThreshold = DEFAULT_OFF_HEAP_PIXEL_THRESHOLD;
 
         // initializing "touch" if possible
         ExecuteMethod executeMethod = null;
@@ -141,20 +384,6 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
 
         logger.verbose("EyesWebDriver(): Driver can take screenshots");
         screenshotTaker = null;
-
-        // TODO - remove the block below if indeed unnecesssary
-//        logger.verbose("EyesWebDriver(): Driver can't take screenshots");
-//        try {
-//            screenshotTaker = new ScreenshotTaker(
-//                    logger,
-//                    remoteWebDriverServerUrl.toURI(),
-//                    remoteWebDriverSessionId
-//            );
-//        } catch (URISyntaxException ex) {
-//            String errMsg = "Can't take screenshots!";
-//            logger.log(errMsg);
-//            throw new EyesException(errMsg, ex);
-//        }
     }
 
     public Eyes getEyes() {
@@ -186,6 +415,263 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
         this.rotation = rotation;
     }
 
+    /**
+     *
+     * @return Whether screenshot parts are decoded and stitched on a worker
+     * thread while the next part is being captured.
+     */
+    public boolean getPipelinedStitching() {
+        return pipelinedStitching;
+    }
+
+    /**
+     *
+     * @param pipelinedStitching Whether screenshot parts should be decoded
+     *                           and stitched on a worker thread while the
+     *                           next part is being captured.
+     */
+    public void setPipelinedStitching(boolean pipelinedStitching) {
+        this.pipelinedStitching = pipelinedStitching;
+    }
+
+    /**
+     *
+     * @return The maximum time (milliseconds) to wait for a scroll to
+     * settle before taking a screenshot.
+     */
+    public int getMaxScrollSettleTime() {
+        return maxScrollSettleTime;
+    }
+
+    /**
+     *
+     * @param maxScrollSettleTime The maximum time (milliseconds) to wait for
+     *                            a scroll to settle before taking a
+     *                            screenshot.
+     */
+    public void setMaxScrollSettleTime(int maxScrollSettleTime) {
+        ArgumentGuard.greaterThanOrEqualToZero(maxScrollSettleTime,
+                "maxScrollSettleTime");
+        this.maxScrollSettleTime = maxScrollSettleTime;
+    }
+
+    /**
+     *
+     * @return The method used for moving between parts when stitching.
+     */
+    public StitchMode getStitchMode() {
+        return stitchMode;
+    }
+
+    /**
+     *
+     * @param stitchMode The method used for moving between parts when
+     *                   stitching.
+     */
+    public void setStitchMode(StitchMode stitchMode) {
+        ArgumentGuard.notNull(stitchMode, "stitchMode");
+        this.stitchMode = stitchMode;
+    }
+
+    /**
+     *
+     * @return Where the pixels of large stitched images are stored.
+     */
+    public StitchedImageStorage getStitchedImageStorage() {
+        return stitchedImageStorage;
+    }
+
+    /**
+     *
+     * @param stitchedImageStorage Where the pixels of large stitched images
+     *                             are stored.
+     */
+    public void setStitchedImageStorage(
+            StitchedImageStorage stitchedImageStorage) {
+        ArgumentGuard.notNull(stitchedImageStorage, "stitchedImageStorage");
+        this.stitchedImageStorage = stitchedImageStorage;
+    }
+
+    /**
+     *
+     * @return The minimal number of pixels for which a stitched image is
+     * stored according to the stitched image storage.
+     */
+    public int getOffHeapPixelThreshold() {
+        return offHeapPixelThreshold;
+    }
+
+    /**
+     *
+     * @param offHeapPixelThreshold The minimal number of pixels for which a
+     *                              stitched image is stored according to
+     *                              the stitched image storage.
+     */
+    public void setOffHeapPixelThreshold(int offHeapPixelThreshold) {
+        ArgumentGuard.greaterThanOrEqualToZero(offHeapPixelThreshold,
+                "offHeapPixelThreshold");
+        this.offHeapPixelThreshold = offHeapPixelThreshold;
+    }
+
+    /**
+     *
+     * @return The codec used for decoding and encoding screenshots.
+     */
+    public ImageCodec getImageCodec() {
+        return imageCodec;
+    }
+
+    /**
+     *
+     * @param imageCodec The codec used for decoding and encoding
+     *                   screenshots.
+     */
+    public void setImageCodec(ImageCodec imageCodec) {
+        ArgumentGuard.notNull(imageCodec, "imageCodec");
+        this.imageCodec = imageCodec;
+    }
+
+    /**
+     * Sets whether full page screenshots should be taken in a single
+     * driver command when the driver supports it (e.g., Firefox's full page
+     * screenshot, or Chromium's {@code captureBeyondViewport}). Support is
+     * detected from the session's capabilities. If not supported, or if the
+     * command fails, full page screenshots are stitched.
+     *
+     * @param shouldUse Whether to use native full page screenshots.
+     */
+    public void setNativeFullPageCapture(boolean shouldUse) {
+        fullPageScreenshotTaker = null;
+        if (!shouldUse) {
+            return;
+        }
+
+        logger.verbose("Detecting native full page screenshot support...");
+        FullPageScreenshotTaker.Protocol protocol =
+                FullPageScreenshotTaker.detectProtocol(getCapabilities());
+        CommandExecutor commandExecutor = driver.getCommandExecutor();
+        if (protocol == null
+                || !(commandExecutor instanceof HttpCommandExecutor)) {
+            logger.verbose("Not supported.");
+            return;
+        }
+        URL driverServerUrl = ((HttpCommandExecutor) commandExecutor)
+                .getAddressOfRemoteServer();
+        try {
+            fullPageScreenshotTaker = new FullPageScreenshotTaker(logger,
+                    driverServerUrl.toURI(), getSessionId(), protocol);
+        } catch (URISyntaxException e) {
+            logger.verbose(String.format("Invalid driver server URL: %s",
+                    driverServerUrl));
+            return;
+        }
+        logger.verbose(String.format("Supported (%s).", protocol));
+    }
+
+    /**
+     *
+     * @return Whether full page screenshots are taken in a single driver
+     * command.
+     */
+    public boolean getNativeFullPageCapture() {
+        return fullPageScreenshotTaker != null;
+    }
+
+    /**
+     * Sets whether viewport screenshots should be taken by calling the
+     * driver server's screenshot command directly, rather than through the
+     * Selenium client. The response is parsed and decoded while it is
+     * received, so the screenshot is never held in memory as a base64
+     * string. If a direct capture fails, screenshots are taken through the
+     * Selenium client for the rest of the session.
+     *
+     * @param shouldUse Whether to take screenshots directly.
+     */
+    public void setDirectScreenshotCapture(boolean shouldUse) {
+        screenshotTaker = null;
+        if (!shouldUse) {
+            return;
+        }
+
+        // The address is used as is: local driver servers usually only
+        // accept local connections.
+        URL driverServerUrl = getDriverServerAddress();
+        if (driverServerUrl == null) {
+            logger.verbose("Driver server address is unknown, " +
+                    "direct screenshot capture is disabled.");
+            return;
+        }
+        try {
+            screenshotTaker = new ScreenshotTaker(logger,
+                    driverServerUrl.toURI(), getSessionId());
+        } catch (URISyntaxException e) {
+            logger.verbose(String.format("Invalid driver server URL: %s",
+                    driverServerUrl));
+        }
+    }
+
+    /**
+     * @return Whether viewport screenshots are taken by calling the driver
+     * server directly.
+     */
+    public boolean getDirectScreenshotCapture() {
+        return screenshotTaker != null;
+    }
+
+    /**
+     * The default content's viewport size and entire page size are cached
+     * until the cache is invalidated (see {@link #invalidateGeometryCache}).
+     * If mutation tracking is enabled, the cache is also validated against
+     * counters of document changes and of window resizes installed in the
+     * page. They are returned with every page geometry read, so the
+     * default content's sizes are only re-read in the browser if the
+     * document changed, and its viewport size is reused from within frames
+     * as long as the window wasn't resized. Changes the SDK itself makes to
+     * the document element's style (hiding the scrollbars, CSS translation)
+     * are not counted.
+     *
+     * @param shouldTrack Whether to validate the cached page geometry using
+     *                    mutation counters.
+     */
+    public void setGeometryMutationTracking(boolean shouldTrack) {
+        geometryMutationTracking = shouldTrack;
+        geometryCache.invalidate();
+        frameIndexes.clear();
+    }
+
+    /**
+     * @return Whether the page geometry is cached using mutation counters.
+     */
+    public boolean getGeometryMutationTracking() {
+        return geometryMutationTracking;
+    }
+
+    /**
+     * Drops the cached page geometry and frame indexes. Called on
+     * navigation, window switches, user actions and when Eyes sets the
+     * viewport size. Should also be called after resizing the window
+     * directly, or whenever the page might have changed in a way the driver
+     * can't detect (unless mutation tracking is enabled).
+     */
+    public void invalidateGeometryCache() {
+        logger.verbose("Invalidating geometry cache.");
+        geometryCache.invalidate();
+        frameIndexes.clear();
+    }
+
+    /**
+     * @return A position provider for the current context, according to
+     * the stitch mode.
+     */
+    public PositionProvider createPositionProvider() {
+        switch (stitchMode) {
+            case CSS:
+                return new CssTranslatePositionProvider(logger, this);
+            default:
+                return new ScrollPositionProvider(logger, this);
+        }
+    }
+
     /**
      *
      * @return {@code true} if the platform running the test is a mobile
@@ -248,9 +734,20 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
 
     public void get(String s) {
         frameChain.clear();
+        willNavigate();
         driver.get(s);
     }
 
+    /**
+     * Should be called before the driver navigates. Drops the cached
+     * geometry, and the IDs of the elements found in the current page
+     * (which can't be used after navigation).
+     */
+    void willNavigate() {
+        invalidateGeometryCache();
+        elementsIds.newEpoch();
+    }
+
     public String getCurrentUrl() {
         return driver.getCurrentUrl();
     }
@@ -306,7 +803,8 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
 
     /**
      * Found elements are sometimes accessed by their IDs (e.g. tapping an
-     * element in Appium).
+     * element in Appium). Only the most recently used elements of the
+     * current page are kept (see {@link #setMaxElementIds(int)}).
      * @return Maps of IDs for found elements.
      */
     @SuppressWarnings("UnusedDeclaration")
@@ -314,6 +812,23 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
         return elementsIds;
     }
 
+    /**
+     * @param maxElementIds The maximum number of found elements kept for
+     *                      lookup by their IDs. When exceeded, the least
+     *                      recently used elements are dropped.
+     */
+    public void setMaxElementIds(int maxElementIds) {
+        elementsIds.setMaxSize(maxElementIds);
+    }
+
+    /**
+     * @return The maximum number of found elements kept for lookup by their
+     * IDs.
+     */
+    public int getMaxElementIds() {
+        return elementsIds.getMaxSize();
+    }
+
     public String getPageSource() {
         return driver.getPageSource();
     }
@@ -324,6 +839,7 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
 
     public void quit() {
         driver.quit();
+        bufferPool.clear();
     }
 
     public Set<String> getWindowHandles() {
@@ -334,6 +850,41 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
         return driver.getWindowHandle();
     }
 
+    /**
+     * @return The number of driver calls made for getting the frame's
+     * metadata (location, size, borders and parent scroll position) by the
+     * last frame switch, not including the switch itself. 0 if the last
+     * switch was not into a frame.
+     */
+    public int getLastFrameSwitchRoundTrips() {
+        return lastFrameSwitchRoundTrips;
+    }
+
+    /**
+     * Gets the frame index of the current context (the frames it contains,
+     * with the metadata needed for switching into them), in a single script
+     * call. If mutation tracking is enabled, the frames are cached per
+     * document until the document changes.
+     *
+     * @return The frame index of the current context, or {@code null} if it
+     * couldn't be read.
+     */
+    FrameIndex getFrameIndex() {
+        StringBuilder key = new StringBuilder();
+        for (Frame frame : frameChain) {
+            key.append(frame.getId()).append('/');
+        }
+        String documentKey = key.toString();
+        FrameIndex index = FrameIndex.read(logger, this,
+                frameIndexes.get(documentKey), geometryMutationTracking);
+        if (index != null && index.isCacheable()) {
+            frameIndexes.put(documentKey, index);
+        } else {
+            frameIndexes.remove(documentKey);
+        }
+        return index;
+    }
+
     public TargetLocator switchTo() {
         logger.verbose("switchTo()");
         return new EyesTargetLocator(logger, this, driver.switchTo(),
@@ -342,6 +893,7 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
                             EyesTargetLocator.TargetType targetType,
                             WebElement targetFrame) {
                         logger.verbose("willSwitchToFrame()");
+                        lastFrameSwitchRoundTrips = 0;
                         switch(targetType) {
                             case DEFAULT_CONTENT:
                                 logger.verbose("Default content.");
@@ -355,28 +907,36 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
                                 logger.verbose("Frame");
                                 String frameId = ((EyesRemoteWebElement)
                                         targetFrame).getId();
-                                Point pl = targetFrame.getLocation();
-                                Dimension ds = targetFrame.getSize();
-                                frameChain.push(new Frame(logger, targetFrame,
-                                        frameId,
-                                        new Location(pl.getX(), pl.getY()),
-                                        new RectangleSize(ds.getWidth(),
-                                                ds.getHeight()),
-                                        getCurrentScrollPosition()));
+                                Frame frame = Frame.capture(logger,
+                                        EyesWebDriver.this, targetFrame,
+                                        frameId);
+                                lastFrameSwitchRoundTrips =
+                                        frame.getMetadataRoundTrips();
+                                frameChain.push(frame);
                         }
                         logger.verbose("Done!");
                     }
 
+                    public void willSwitchToKnownFrame(Frame frame,
+                            int metadataRoundTrips) {
+                        logger.verbose("willSwitchToKnownFrame()");
+                        lastFrameSwitchRoundTrips = metadataRoundTrips;
+                        frameChain.push(frame);
+                        logger.verbose("Done!");
+                    }
+
                     public void willSwitchToWindow(String nameOrHandle) {
                         logger.verbose("willSwitchToWindow()");
                         frameChain.clear();
+                        geometryCache.invalidate();
+                        frameIndexes.clear();
                         logger.verbose("Done!");
                     }
                 });
     }
 
     public Navigation navigate() {
-        return driver.navigate();
+        return new EyesNavigation(logger, this, driver.navigate());
     }
 
     public Options manage() {
@@ -517,12 +1077,14 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
             script =
                 "var origOverflow = document.documentElement.style.overflow; " +
                 "document.documentElement.style.overflow = undefined; " +
-                "return origOverflow";
+                JS_MARK_SDK_STYLE +
+                " return origOverflow";
         } else {
             script = String.format(
                 "var origOverflow = document.documentElement.style.overflow; " +
                         "document.documentElement.style.overflow = \"%s\"; " +
-                        "return origOverflow",
+                        JS_MARK_SDK_STYLE +
+                        " return origOverflow",
                 value);
         }
         String originalOverflow = (String) executeScript(script);
@@ -540,56 +1102,322 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
         return setOverflow("hidden");
     }
 
-    protected int extractViewportWidth() {
-        logger.verbose("extractViewportWidth()");
-        int viewportWidth = Integer.parseInt(
-                executeScript(JS_GET_VIEWPORT_WIDTH).toString()
-        );
-        logger.verbose("Done!");
-        return viewportWidth;
+    /**
+     * Gets the geometry of the current context using a single script call.
+     * @return A snapshot of the current context's page geometry.
+     */
+    public PageGeometry getPageGeometry() {
+        logger.verbose("getPageGeometry()");
+        boolean isDefaultContent = frameChain.size() == 0;
+        PageGeometry cached = (geometryMutationTracking && isDefaultContent)
+                ? geometryCache.getPageGeometry() : null;
+        long knownMutationCount =
+                (cached != null) ? cached.getMutationCount() : -1;
+        PageGeometry geometry = parsePageGeometry(
+                executeScript(JS_GET_PAGE_GEOMETRY,
+                        geometryMutationTracking, knownMutationCount),
+                cached);
+        logger.verbose(String.format("Done! %s", geometry));
+        if (isDefaultContent) {
+            geometryCache.setPageGeometry(geometry);
+        }
+        return geometry;
     }
 
-    protected int extractViewportHeight() {
-        logger.verbose("extractViewportHeight()");
-        int result = Integer.parseInt(
-                executeScript(JS_GET_VIEWPORT_HEIGHT).toString()
-        );
-        logger.verbose("Done!");
-        return result;
+    /**
+     * Waits until the scroll position and the size of the current context's
+     * document stop changing, or until the maximum settle time passed.
+     * This is done using animation frames in the browser when possible,
+     * or by polling the page geometry otherwise.
+     * @return The page geometry once the scroll settled.
+     */
+    public PageGeometry waitForScrollToSettle() {
+        logger.verbose("waitForScrollToSettle()");
+        if (asyncScrollSettleSupported) {
+            try {
+                PageGeometry geometry = parsePageGeometry(
+                        executeAsyncScript(JS_WAIT_FOR_SCROLL_TO_SETTLE,
+                                maxScrollSettleTime), null);
+                logger.verbose(String.format("Done! %s", geometry));
+                return geometry;
+            } catch (WebDriverException e) {
+                asyncScrollSettleFailed(e);
+            } catch (EyesException e) {
+                asyncScrollSettleFailed(e);
+            } catch (UnsupportedOperationException e) {
+                // Thrown if the driver can't run scripts.
+                asyncScrollSettleFailed(e);
+            }
+        }
+
+        long deadline = System.currentTimeMillis() + maxScrollSettleTime;
+        PageGeometry lastGeometry = getPageGeometry();
+        while (System.currentTimeMillis() < deadline) {
+            GeneralUtils.sleep(SCROLL_SETTLE_POLL_INTERVAL);
+            PageGeometry geometry = getPageGeometry();
+            if (isSameLayout(geometry, lastGeometry)) {
+                logger.verbose("Done! Scroll settled.");
+                return geometry;
+            }
+            lastGeometry = geometry;
+        }
+        logger.verbose("Done! Scroll did not settle in time.");
+        return lastGeometry;
     }
 
     /**
-     * @return The scroll position of the current frame.
+     * Waits until the scroll position and the scroll size of the given
+     * element stop changing, or until the maximum settle time passed. Same
+     * as {@link #waitForScrollToSettle()}, for a scrollable element.
+     * @param element A scrollable element in the current context.
+     * @return The element's scroll position once the scroll settled.
      */
-    public Location getCurrentScrollPosition() {
-        logger.verbose("getCurrentScrollPosition()");
-        int x,y;
-        Object xo, yo;
-
-        xo = executeScript("return window.scrollX");
-        if (xo == null) {
-            // IE
-            xo = executeScript("var doc = document.documentElement; var left = (window.pageXOffset || doc.scrollLeft) - (doc.clientLeft || 0); return left");
-            if (xo == null) {
-                throw new EyesException(
-                        "Could not get left scroll position!");
+    public Location waitForElementScrollToSettle(WebElement element) {
+        ArgumentGuard.notNull(element, "element");
+        logger.verbose("waitForElementScrollToSettle()");
+        if (asyncScrollSettleSupported) {
+            try {
+                int[] state = parseElementScrollState(executeAsyncScript(
+                        JS_WAIT_FOR_ELEMENT_SCROLL_TO_SETTLE,
+                        maxScrollSettleTime, element));
+                Location position = new Location(state[0], state[1]);
+                logger.verbose(String.format("Done! %s", position));
+                return position;
+            } catch (WebDriverException e) {
+                asyncScrollSettleFailed(e);
+            } catch (EyesException e) {
+                asyncScrollSettleFailed(e);
+            } catch (UnsupportedOperationException e) {
+                // Thrown if the driver can't run scripts.
+                asyncScrollSettleFailed(e);
             }
         }
 
-        yo = executeScript("return window.scrollY");
-        if (yo == null) {
-            // For IE
-            yo = executeScript("var doc = document.documentElement; var top = (window.pageYOffset || doc.scrollTop)  - (doc.clientTop || 0); return top");
-            if (yo == null) {
+        long deadline = System.currentTimeMillis() + maxScrollSettleTime;
+        int[] lastState = parseElementScrollState(
+                executeScript(JS_GET_ELEMENT_SCROLL_STATE, element));
+        while (System.currentTimeMillis() < deadline) {
+            GeneralUtils.sleep(SCROLL_SETTLE_POLL_INTERVAL);
+            int[] state = parseElementScrollState(
+                    executeScript(JS_GET_ELEMENT_SCROLL_STATE, element));
+            if (Arrays.equals(state, lastState)) {
+                logger.verbose("Done! Scroll settled.");
+                return new Location(state[0], state[1]);
+            }
+            lastState = state;
+        }
+        logger.verbose("Done! Scroll did not settle in time.");
+        return new Location(lastState[0], lastState[1]);
+    }
+
+    /**
+     * Called when waiting for a scroll to settle using an async script
+     * failed, in which case the current wait polls instead. If async waits
+     * are not supported (the driver doesn't know the command, can't run
+     * scripts, or doesn't return the script's result as expected, e.g.,
+     * returns null), there's no reason to try again, so we poll from now
+     * on. Other failures (e.g., a script timeout, when the driver's script
+     * timeout is shorter than the settle time) only affect the current
+     * wait.
+     */
+    private void asyncScrollSettleFailed(RuntimeException e) {
+        if (e instanceof UnsupportedCommandException
+                || e instanceof UnsupportedOperationException
+                || e instanceof EyesException) {
+            logger.verbose(String.format(
+                    "Async wait is not supported (%s), polling instead.",
+                    e.getMessage()));
+            asyncScrollSettleSupported = false;
+        } else {
+            logger.verbose(String.format(
+                    "Async wait failed (%s), polling this time.",
+                    e.getMessage()));
+        }
+    }
+
+    /**
+     * Parses the result of {@link #JS_GET_ELEMENT_SCROLL_STATE}.
+     */
+    private static int[] parseElementScrollState(Object result) {
+        if (!(result instanceof List) || ((List<?>) result).size() != 4) {
+            throw new EyesException(
+                    "Could not get element scroll state: " + result);
+        }
+        List<?> values = (List<?>) result;
+        int[] state = new int[4];
+        for (int i = 0; i < state.length; ++i) {
+            state[i] = toInt(values.get(i));
+        }
+        return state;
+    }
+
+    private static boolean isSameLayout(PageGeometry g1, PageGeometry g2) {
+        Location sp1 = g1.getScrollPosition();
+        Location sp2 = g2.getScrollPosition();
+        RectangleSize s1 = g1.getEntirePageSize();
+        RectangleSize s2 = g2.getEntirePageSize();
+        return sp1.getX() == sp2.getX() && sp1.getY() == sp2.getY()
+                && s1.getWidth() == s2.getWidth()
+                && s1.getHeight() == s2.getHeight();
+    }
+
+    /**
+     * Parses the result of {@link #JS_GET_PAGE_GEOMETRY}.
+     * @param cached The geometry whose mutation count was passed to the
+     *               script, or {@code null}. Its document sizes are used if
+     *               the script reports the document is unchanged.
+     */
+    private static PageGeometry parsePageGeometry(Object result,
+                                                  PageGeometry cached) {
+        if (!(result instanceof List)) {
+            throw new EyesException("Could not get page geometry!");
+        }
+        List<?> values = (List<?>) result;
+        if (values.size() != 14 || values.get(7) == null
+                || values.get(8) == null) {
+            throw new EyesException(
+                    "Could not get page geometry: " + values);
+        }
+        RectangleSize viewportSize = null;
+        if (values.get(9) != null && values.get(10) != null) {
+            viewportSize = new RectangleSize(toInt(values.get(9)),
+                    toInt(values.get(10)));
+        }
+        Location scrollPosition =
+                new Location(toInt(values.get(7)), toInt(values.get(8)));
+        double devicePixelRatio =
+                Double.parseDouble(values.get(11).toString());
+        long mutationCount = toLong(values.get(12));
+        long resizeCount = toLong(values.get(13));
+        if (values.get(0) == null) {
+            // The document is unchanged since the cached geometry was read.
+            if (cached == null || mutationCount != cached.getMutationCount()) {
                 throw new EyesException(
-                        "Could not get top scroll position");
+                        "Could not get page geometry: " + values);
             }
+            return cached.withCurrentState(scrollPosition, viewportSize,
+                    devicePixelRatio, resizeCount);
         }
+        return new PageGeometry(
+                toInt(values.get(0)), toInt(values.get(1)),
+                toInt(values.get(2)), toInt(values.get(3)),
+                toInt(values.get(4)), toInt(values.get(5)),
+                toInt(values.get(6)), scrollPosition, viewportSize,
+                devicePixelRatio, mutationCount, resizeCount);
+    }
 
-        x = Integer.parseInt(xo.toString());
-        y = Integer.parseInt(yo.toString());
+    /**
+     * Converts a count returned by a script to a long (-1 if unknown).
+     */
+    private static long toLong(Object value) {
+        return (value instanceof Number) ? ((Number) value).longValue() : -1;
+    }
 
-        Location result = new Location(x, y);
+    /**
+     * Gets the bounds of many elements in a single script call, rather than
+     * calling {@link WebElement#getLocation()} and
+     * {@link WebElement#getSize()} for each. If the script fails (e.g., on
+     * platforms which don't support Javascript), each element is queried
+     * separately.
+     *
+     * @param elements The elements, which must be in the current context.
+     * @return The bounds of the elements, as consecutive left, top, width
+     * and height values per element, in context relative coordinates.
+     */
+    public int[] getElementsBounds(List<? extends WebElement> elements) {
+        ArgumentGuard.notNull(elements, "elements");
+        int[] bounds = new int[elements.size() * 4];
+        if (elements.isEmpty()) {
+            return bounds;
+        }
+
+        logger.verbose(String.format("getElementsBounds(%d elements)",
+                elements.size()));
+        try {
+            Object result = executeScript(JS_GET_ELEMENTS_BOUNDS, elements);
+            if (result instanceof List
+                    && ((List<?>) result).size() == bounds.length) {
+                List<?> values = (List<?>) result;
+                for (int i = 0; i < bounds.length; ++i) {
+                    bounds[i] = toInt(values.get(i));
+                }
+                logger.verbose("Done!");
+                return bounds;
+            }
+            logger.verbose(String.format("Unexpected result: %s", result));
+        } catch (WebDriverException e) {
+            logger.verbose(String.format("Script failed: %s",
+                    e.getMessage()));
+        }
+
+        logger.verbose("Getting the bounds of each element...");
+        for (int i = 0; i < elements.size(); ++i) {
+            WebElement element = elements.get(i);
+            Point location = element.getLocation();
+            bounds[i * 4] = location.getX();
+            bounds[i * 4 + 1] = location.getY();
+            try {
+                Dimension size = element.getSize();
+                bounds[i * 4 + 2] = size.getWidth();
+                bounds[i * 4 + 3] = size.getHeight();
+            } catch (Exception e) {
+                // Not supported on all platforms.
+            }
+        }
+        logger.verbose("Done!");
+        return bounds;
+    }
+
+    /**
+     * @param element An element in the current context.
+     * @return The bounds of the element in context relative coordinates,
+     * using a single driver call.
+     * @see #getElementsBounds(List)
+     */
+    public Region getElementBounds(WebElement element) {
+        ArgumentGuard.notNull(element, "element");
+        int[] bounds = getElementsBounds(Collections.singletonList(element));
+        return new Region(bounds[0], bounds[1], bounds[2], bounds[3]);
+    }
+
+    /**
+     * Converts a numeric value returned by a script to an int.
+     */
+    private static int toInt(Object value) {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof Number) {
+            return (int) Math.round(((Number) value).doubleValue());
+        }
+        return (int) Math.round(Double.parseDouble(value.toString()));
+    }
+
+    /**
+     * @return The viewport size of the current context.
+     */
+    protected RectangleSize extractViewportSize() {
+        logger.verbose("extractViewportSize()");
+        if (frameChain.size() == 0 && !geometryMutationTracking) {
+            RectangleSize cached = geometryCache.getViewportSize();
+            if (cached != null) {
+                return cached;
+            }
+        }
+        RectangleSize viewportSize = getPageGeometry().getViewportSize();
+        if (viewportSize == null) {
+            throw new EyesException("Could not get viewport size!");
+        }
+        logger.verbose("Done!");
+        return viewportSize;
+    }
+
+    /**
+     * @return The scroll position of the current frame.
+     */
+    public Location getCurrentScrollPosition() {
+        logger.verbose("getCurrentScrollPosition()");
+        Location result = getPageGeometry().getScrollPosition();
         logger.verbose(String.format("Current position: %s", result));
         return result;
     }
@@ -600,49 +1428,32 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
      */
     public RectangleSize getEntirePageSize() {
         logger.verbose("getEntirePageSize()");
-        int scrollWidth =
-                Integer.parseInt(executeScript
-                        ("return document.documentElement.scrollWidth")
-                        .toString());
-
-        int bodyScrollWidth =
-                Integer.parseInt(executeScript
-                        ("return document.body.scrollWidth")
-                        .toString());
-
-        int totalWidth = Math.max(scrollWidth, bodyScrollWidth);
-
-        // IMPORTANT: Notice there's a major difference between scrollWidth
-        // and scrollHeight. While scrollWidth is the maximum between an
-        // element's width and its content width, scrollHeight might be
-        // smaller (!) than the clientHeight, which is why we take the
-        // maximum between them.
-        int clientHeight =
-                Integer.parseInt(executeScript
-                        ("return document.documentElement.clientHeight")
-                        .toString());
-        int bodyClientHeight =
-                Integer.parseInt(executeScript
-                        ("return document.body.clientHeight")
-                        .toString());
-        int scrollHeight =
-                Integer.parseInt(executeScript
-                        ("return document.documentElement.scrollHeight")
-                        .toString());
-        int bodyScrollHeight =
-                Integer.parseInt(executeScript
-                        ("return document.body.scrollHeight")
-                        .toString());
-        int maxDocumentElementHeight = Math.max(clientHeight, scrollHeight);
-        int maxBodyHeight = Math.max(bodyClientHeight, bodyScrollHeight);
-        int totalHeight = Math.max(maxDocumentElementHeight, maxBodyHeight);
-
-
-        RectangleSize result = new RectangleSize(totalWidth, totalHeight);
+        if (frameChain.size() == 0 && !geometryMutationTracking) {
+            RectangleSize cached = geometryCache.getEntirePageSize();
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // With mutation tracking, the cached sizes are validated by the
+        // page geometry call, and only re-read if the document changed.
+        RectangleSize result = getPageGeometry().getEntirePageSize();
         logger.verbose(String.format("Entire size: %s", result));
         return result;
     }
 
+    /**
+     * @return The resize count of the top level window, or -1 if unknown.
+     */
+    private long getTopResizeCount() {
+        try {
+            return toLong(executeScript(JS_GET_TOP_RESIZE_COUNT));
+        } catch (WebDriverException e) {
+            logger.verbose(String.format(
+                    "Failed to get resize count: %s", e.getMessage()));
+        }
+        return -1;
+    }
+
     /**
      *
      * @return The viewport size of the default content (outer most frame).
@@ -650,12 +1461,25 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
     public RectangleSize getDefaultContentViewportSize() {
         logger.verbose("getDefaultContentViewportSize()");
         RectangleSize viewportSize;
+        if (frameChain.size() != 0) {
+            // Avoids switching to the default content and back. With
+            // mutation tracking, the cached size is also validated against
+            // the window's resize count.
+            viewportSize = geometryMutationTracking
+                    ? geometryCache.getViewportSize(getTopResizeCount())
+                    : geometryCache.getViewportSize();
+            if (viewportSize != null) {
+                return viewportSize;
+            }
+        }
         FrameChain currentFrames = new FrameChain(logger, frameChain);
-        switchTo().defaultContent();
+        boolean isDefaultContent = currentFrames.size() == 0;
+        if (!isDefaultContent) {
+            switchTo().defaultContent();
+        }
         try {
             logger.verbose("Getting viewport size...");
-            viewportSize = new RectangleSize(extractViewportWidth(),
-                    extractViewportHeight());
+            viewportSize = extractViewportSize();
             logger.verbose("Done!");
         } catch (Exception e) {
             // There are platforms for which we can't extract the viewport size
@@ -666,7 +1490,9 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
             viewportSize = new RectangleSize(windowSize.getWidth(),
                     windowSize.getHeight());
         }
-        ((EyesTargetLocator) switchTo()).frames(currentFrames);
+        if (!isDefaultContent) {
+            ((EyesTargetLocator) switchTo()).frames(currentFrames);
+        }
         return viewportSize;
     }
 
@@ -690,46 +1516,204 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
     }
 
     /**
-     * Returns a stitching of a region.
+     * Returns a stitching of a region, using the position provider matching
+     * the current stitch mode.
      * @param regionProvider A provider of the region to stitch. If {@code
      *                       getRegion} returns {@code Region.EMPTY}, the
      *                       entire image will be stitched.
      * @return An image which represents the stitched region.
+     * @see #getStitchedRegion(RegionProvider, PositionProvider)
      */
     public BufferedImage getStitchedRegion(RegionProvider regionProvider) {
+        return getStitchedRegion(regionProvider, createPositionProvider());
+    }
+
+    /**
+     * Returns a stitching of a region.
+     * @param regionProvider A provider of the region to stitch. If {@code
+     *                       getRegion} returns {@code Region.EMPTY}, the
+     *                       entire image will be stitched.
+     * @param positionProvider Used for moving the visible part of the
+     *                         current context between parts.
+     * @return An image which represents the stitched region.
+     */
+    public BufferedImage getStitchedRegion(RegionProvider regionProvider,
+            PositionProvider positionProvider) {
         logger.verbose("getStitchedRegion()");
 
         ArgumentGuard.notNull(regionProvider, "regionProvider");
+        ArgumentGuard.notNull(positionProvider, "positionProvider");
+
+        return getStitchedRegion(regionProvider, positionProvider, null,
+                null);
+    }
 
-        // Saving the original scroll (in case we were already in the
+    /**
+     * Returns a stitching of a region, only capturing the parts needed for
+     * covering an area of the current context. This is much cheaper than
+     * stitching the entire context when the area is small compared to it.
+     * @param regionProvider A provider of the region to stitch. If {@code
+     *                       getRegion} returns {@code Region.EMPTY}, the
+     *                       entire image will be stitched.
+     * @param positionProvider Used for moving the visible part of the
+     *                         current context between parts.
+     * @param stitchArea The area to stitch, in context relative
+     *                   coordinates. The top/left of the returned image is
+     *                   the top/left of this area, and parts of the area
+     *                   which are outside the context are left blank.
+     * @return An image of the stitched area.
+     */
+    public BufferedImage getStitchedRegion(RegionProvider regionProvider,
+            PositionProvider positionProvider, Region stitchArea) {
+        logger.verbose(String.format("getStitchedRegion(%s)", stitchArea));
+
+        ArgumentGuard.notNull(stitchArea, "stitchArea");
+
+        return getStitchedRegion(regionProvider, positionProvider,
+                stitchArea, null);
+    }
+
+    /**
+     * Returns a stitching of the content of a scrollable element (e.g., an
+     * element with {@code overflow: auto}), by scrolling the element itself
+     * rather than the window. The element's client area should be visible
+     * in the viewport (as much as possible).
+     * @param element The element whose content should be stitched.
+     * @return An image of the element's entire content.
+     */
+    public BufferedImage getStitchedElement(WebElement element) {
+        logger.verbose("getStitchedElement()");
+
+        ArgumentGuard.notNull(element, "element");
+
+        final EyesRemoteWebElement eyesElement;
+        if (element instanceof EyesRemoteWebElement) {
+            eyesElement = (EyesRemoteWebElement) element;
+        } else if (element instanceof RemoteWebElement) {
+            eyesElement = new EyesRemoteWebElement(logger, this,
+                    (RemoteWebElement) element);
+        } else {
+            throw new EyesException("Not a remote web element!");
+        }
+
+        return getStitchedRegion(new RegionProvider() {
+            public Region getRegion() {
+                // The element's client area, in context relative coordinates.
+                Region bounds = eyesElement.getBounds();
+                Region clientArea = eyesElement.getClientArea();
+                clientArea.setLocation(new Location(
+                        bounds.getLeft() + clientArea.getLeft(),
+                        bounds.getTop() + clientArea.getTop()));
+                return clientArea;
+            }
+
+            public CoordinatesType getCoordinatesType() {
+                return CoordinatesType.CONTEXT_RELATIVE;
+            }
+        }, new ElementPositionProvider(logger, eyesElement));
+    }
+
+    /**
+     * Stitches a region and writes it as a PNG, encoding rows as soon as all
+     * the parts covering them were stitched. Unlike
+     * {@link #getStitchedRegion(RegionProvider, PositionProvider)}, the
+     * memory used is bounded by a couple of parts rather than by the size of
+     * the region, and encoding overlaps with capturing the parts.
+     * @param regionProvider A provider of the region to stitch. If {@code
+     *                       getRegion} returns {@code Region.EMPTY}, the
+     *                       entire image will be stitched.
+     * @param positionProvider Used for moving the visible part of the
+     *                         current context between parts.
+     * @param pngOutput The stream to which the PNG is written. It is not
+     *                  closed.
+     */
+    public void writeStitchedRegion(RegionProvider regionProvider,
+            PositionProvider positionProvider, OutputStream pngOutput) {
+        logger.verbose("writeStitchedRegion()");
+
+        ArgumentGuard.notNull(pngOutput, "pngOutput");
+
+        getStitchedRegion(regionProvider, positionProvider, null, pngOutput);
+    }
+
+    /**
+     * @param stitchArea The area to stitch, or {@code null} to stitch the
+     *                   entire context.
+     * @param pngOutput If not {@code null}, the stitched region is written
+     *                  to it as PNG (and {@code null} is returned).
+     */
+    private BufferedImage getStitchedRegion(RegionProvider regionProvider,
+            PositionProvider positionProvider, Region stitchArea,
+            OutputStream pngOutput) {
+        ArgumentGuard.notNull(regionProvider, "regionProvider");
+        ArgumentGuard.notNull(positionProvider, "positionProvider");
+
+        // Saving the original position (in case we were already in the
         // outermost frame).
-        Location originalScrollPosition = getCurrentScrollPosition();
+        PositionMemento originalPosition = positionProvider.getState();
+        try {
+            return stitchRegion(regionProvider, positionProvider, stitchArea,
+                    pngOutput);
+        } finally {
+            positionProvider.restoreState(originalPosition);
+        }
+    }
+
+    private BufferedImage stitchRegion(RegionProvider regionProvider,
+            PositionProvider positionProvider, Region stitchArea,
+            OutputStream pngOutput) {
         Location currentScrollPosition;
 
         int scrollRetries = 3;
         do {
-            scrollTo(new Location(0, 0));
-            // Give the scroll time to stabilize
-            GeneralUtils.sleep(150);
-            currentScrollPosition = getCurrentScrollPosition();
+            positionProvider.setPosition(new Location(0, 0));
+            // Give the scroll time to stabilize.
+            currentScrollPosition = positionProvider.getCurrentPosition();
         } while (currentScrollPosition.getX() != 0
                 && currentScrollPosition.getY() !=0
                 && (--scrollRetries > 0));
 
         if (currentScrollPosition.getX() != 0
                 || currentScrollPosition.getY() != 0) {
-            scrollTo(originalScrollPosition);
             throw new EyesException(
                     "Couldn't scroll to the top/left of the frame!");
         }
 
-        RectangleSize entirePageSize = getEntirePageSize();
+        RectangleSize entirePageSize = positionProvider.getEntireSize();
+        logger.verbose(String.format("Entire size: %s", entirePageSize));
+        Region entirePage = new Region(Location.ZERO, entirePageSize);
 
+        // The part of the page we actually need to capture. Only the scroll
+        // positions covering it are visited.
+        boolean isEntirePage = (stitchArea == null);
+        if (isEntirePage) {
+            stitchArea = entirePage;
+        }
+        Region areaInPage = new Region(stitchArea);
+        areaInPage.intersect(entirePage);
+        if (areaInPage.isEmpty()) {
+            throw new EyesException(String.format(
+                    "Stitch area %s is outside the page (%s)!", stitchArea,
+                    entirePageSize));
+        }
+        logger.verbose(String.format("Stitch area: %s, in page: %s",
+                stitchArea, areaInPage));
+
+        // The first part is taken at the top/left of the area (which is
+        // where we already are, unless we're stitching an area).
+        Location firstPartPosition = Location.ZERO;
+        if (areaInPage.getLeft() != 0 || areaInPage.getTop() != 0) {
+            positionProvider.setPosition(areaInPage.getLocation());
+            firstPartPosition = positionProvider.getCurrentPosition();
+            logger.verbose(String.format("Moved to %s", firstPartPosition));
+        }
 
-        logger.verbose("Getting top/left screenshot as base64...");
-        String screenshot64 = getScreenshotAs(OutputType.BASE64);
-        logger.verbose("Done getting base64! Getting BufferedImage..");
-        BufferedImage image = ImageUtils.imageFromBase64(screenshot64);
+        logger.verbose("Getting first screenshot...");
+        BufferedImage image = takeScreenshotImage();
+        // All parts are captured in the same orientation, so the rotation
+        // is only inferred once.
+        int rotationDegrees = getRotationDegrees(this, image, rotation);
+        image = rotateScreenshot(image, rotationDegrees);
         logger.verbose("Done! Creating screenshot object...");
         // We need the screenshot to be able to convert the region to
         // screenshot coordinates.
@@ -740,15 +1724,43 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
                 screenshot.convertRegionLocation(regionProvider.getRegion(),
                         regionProvider.getCoordinatesType(),
                         CoordinatesType.SCREENSHOT_AS_IS);
-        logger.verbose("Done!");
         if (!regionInScreenshot.isEmpty()) {
-            image = ImageUtils.getImagePart(image, regionInScreenshot);
+            // Only the part of the region which is visible in the screenshot
+            // can be used (e.g., for an element taller than the viewport).
+            regionInScreenshot.intersect(new Region(0, 0, image.getWidth(),
+                    image.getHeight()));
+            if (regionInScreenshot.isEmpty()) {
+                throw new EyesException(
+                        "Region to stitch is not visible in the screenshot!");
+            }
         }
-
-        if (image.getWidth() >= entirePageSize.getWidth() &&
-                image.getHeight() >= entirePageSize.getHeight()) {
-            scrollTo(originalScrollPosition);
-
+        logger.verbose("Done!");
+        // The size of the part we use from each screenshot. We don't crop
+        // the first screenshot unless it's the only part, since the
+        // pipeline copies the relevant pixels directly anyway.
+        RectangleSize imageSize = regionInScreenshot.isEmpty()
+                ? new RectangleSize(image.getWidth(), image.getHeight())
+                : regionInScreenshot.getSize();
+
+        if (isEntirePage &&
+                imageSize.getWidth() >= entirePageSize.getWidth() &&
+                imageSize.getHeight() >= entirePageSize.getHeight()) {
+            if (!regionInScreenshot.isEmpty()) {
+                BufferedImage part =
+                        ImageUtils.getImagePart(image, regionInScreenshot);
+                // The part is a copy, so the screenshot can be reused.
+                bufferPool.release(image);
+                image = part;
+            }
+            if (pngOutput != null) {
+                imageCodec.encode(image, pngOutput);
+                if (regionInScreenshot.isEmpty()) {
+                    // The screenshot itself was encoded, so it can be
+                    // reused.
+                    bufferPool.release(image);
+                }
+                return null;
+            }
             return image;
         }
 
@@ -756,72 +1768,186 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
         // in order to eliminate duplicate bottom scroll bars, as well as fixed
         // position footers.
         RectangleSize partImageSize =
-                new RectangleSize(image.getWidth(),
-                        Math.max(image.getHeight() - MAX_SCROLL_BAR_SIZE,
+                new RectangleSize(imageSize.getWidth(),
+                        Math.max(imageSize.getHeight() - MAX_SCROLL_BAR_SIZE,
                                 MIN_SCREENSHOT_PART_HEIGHT));
 
         logger.verbose(String.format("Total size: %s, image part size: %s",
                 entirePageSize, partImageSize));
 
-        // Getting the list of viewport regions composing the page (we'll take
-        // screenshot for each one).
-        Region entirePage = new Region(Location.ZERO, entirePageSize);
-        Iterable<Region> imageParts =
-                entirePage.getSubRegions(partImageSize);
-
-        logger.verbose("Creating stitchedImage container...");
-        //Notice stitchedImage uses the same type of image as the screenshots.
-        BufferedImage stitchedImage = new BufferedImage(
-                entirePageSize.getWidth(), entirePageSize.getHeight(),
-                image.getType());
-        logger.verbose("Done! Adding initial screenshot..");
-        // Starting with the screenshot we already captured at (0,0).
-        stitchedImage.getRaster().setRect(0, 0, image.getData());
-        logger.verbose("Done!");
-
-        // Take screenshot and stitch for each screenshot part.
-        logger.verbose("Getting the rest of the image parts...");
-        BufferedImage partImage;
-        for (Region partRegion: imageParts) {
-            // Skipping screenshot for 0,0 (already taken)
-            if (partRegion.getLeft() == 0 && partRegion.getTop() == 0) {
-                continue;
+        // Getting the list of viewport regions composing the area (we'll
+        // take screenshot for each one).
+        // Skipping the part at the area's top/left (already taken).
+        List<Region> imageParts = new ArrayList<Region>();
+        for (Region partRegion : areaInPage.getSubRegions(partImageSize)) {
+            if (partRegion.getLeft() != areaInPage.getLeft()
+                    || partRegion.getTop() != areaInPage.getTop()) {
+                imageParts.add(partRegion);
             }
-            logger.verbose(String.format("Taking screenshot for %s",
-                    partRegion));
-            // Scroll to the part's top/left.
-            scrollTo(partRegion.getLocation());
-            // Giving the scroll time to stabilize.
-            GeneralUtils.sleep(100);
-            // Screen size may cause the scroll to only reach part of the way.
-            currentScrollPosition = getCurrentScrollPosition();
-            logger.verbose(String.format("Scrolled to %s",
-                    currentScrollPosition));
-
-            // Actually taking the screenshot.
-            logger.verbose("Get screenshot as base64...");
-            String part64 = getScreenshotAs(OutputType.BASE64);
-            logger.verbose("Done! Creating the image object...");
-            partImage = ImageUtils.imageFromBase64(part64);
+        }
+        logger.verbose(String.format("%d more parts to capture.",
+                imageParts.size()));
+
+        // The stitched image's top/left is the area's top/left.
+        RectangleSize stitchedSize = stitchArea.getSize();
+
+        // Parts are decoded and stitched by the pipeline, so that (when
+        // pipelined) the browser captures the next part while the current
+        // one is being processed.
+        int maxPendingParts = pipelinedStitching ? MAX_PENDING_STITCH_PARTS : 0;
+        StitchingPipeline pipeline;
+        BufferedImage stitchedImage;
+        if (pngOutput == null) {
+            logger.verbose("Creating stitchedImage container...");
+            //Notice stitchedImage uses the same type of image as the
+            // screenshots.
+            stitchedImage = createStitchedImage(stitchedSize,
+                    image.getType());
+            pipeline = new StitchingPipeline(logger, stitchedImage,
+                    imageCodec, bufferPool, regionInScreenshot,
+                    rotationDegrees, maxPendingParts);
+        } else {
+            logger.verbose("Creating stitched band container...");
+            // Parts are visited top to bottom, so the rows which aren't
+            // complete yet always fit in two parts.
+            BufferedImage bandImage = new BufferedImage(
+                    stitchedSize.getWidth(),
+                    Math.min(2 * imageSize.getHeight(),
+                            stitchedSize.getHeight()), image.getType());
+            // The result is encoded while stitching, so it can't go through
+            // the codec. We still respect its compression, if it has one.
+            PngCompression compression =
+                    imageCodec instanceof ScreenshotCodec
+                            ? ((ScreenshotCodec) imageCodec).getCompression()
+                            : PngCompression.DEFAULT;
+            StreamingPngEncoder encoder;
+            try {
+                encoder = new StreamingPngEncoder(pngOutput,
+                        stitchedSize.getWidth(), stitchedSize.getHeight(),
+                        image.getColorModel().hasAlpha(), compression);
+            } catch (IOException e) {
+                throw new EyesException("Failed to write PNG header!", e);
+            }
+            stitchedImage = null;
+            pipeline = new StitchingPipeline(logger, bandImage,
+                    stitchedSize.getHeight(), encoder, imageCodec,
+                    bufferPool, regionInScreenshot, rotationDegrees,
+                    maxPendingParts);
+        }
+        try {
+            logger.verbose("Done! Adding initial screenshot..");
+            // Starting with the screenshot we already captured.
+            pipeline.addPart(image,
+                    getLocationInArea(firstPartPosition, stitchArea),
+                    getCompleteRows(imageParts, 0, entirePageSize,
+                            imageSize, stitchArea));
             logger.verbose("Done!");
 
-            if (!regionInScreenshot.isEmpty()) {
-                partImage = ImageUtils.getImagePart(partImage,
-                        regionInScreenshot);
+            // Take screenshot and stitch for each screenshot part.
+            logger.verbose("Getting the rest of the image parts...");
+            for (int i = 0; i < imageParts.size(); ++i) {
+                Region partRegion = imageParts.get(i);
+                logger.verbose(String.format("Taking screenshot for %s",
+                        partRegion));
+                // Move to the part's top/left.
+                positionProvider.setPosition(partRegion.getLocation());
+                // Screen size may cause the move to only reach part of the
+                // way.
+                Location currentPosition =
+                        positionProvider.getCurrentPosition();
+                logger.verbose(String.format("Moved to %s",
+                        currentPosition));
+
+                Location partPosition =
+                        getLocationInArea(currentPosition, stitchArea);
+                int completeRows = getCompleteRows(imageParts, i + 1,
+                        entirePageSize, imageSize, stitchArea);
+                // Actually taking the screenshot. When captured directly,
+                // the part is decoded while it is read, otherwise decoding
+                // is left to the pipeline.
+                if (screenshotTaker != null) {
+                    logger.verbose("Getting screenshot directly...");
+                    BufferedImage partImage = takeScreenshotImage();
+                    logger.verbose("Done! Adding part to the pipeline...");
+                    pipeline.addCapturedPart(partImage, partPosition,
+                            completeRows);
+                } else {
+                    logger.verbose("Get screenshot as base64...");
+                    String part64 = driver.getScreenshotAs(OutputType.BASE64);
+                    logger.verbose("Done! Adding part to the pipeline...");
+                    pipeline.addPart(part64, partPosition, completeRows);
+                }
+                logger.verbose("Done!");
             }
 
-            // Stitching the current part.
-            logger.verbose("Stitching part into the image container...");
-            stitchedImage.getRaster().setRect(currentScrollPosition.getX(),
-                    currentScrollPosition.getY(), partImage.getData());
-            logger.verbose("Done!");
+            pipeline.finish();
+        } finally {
+            // The first screenshot was copied into the stitched image (or
+            // stitching failed), so it can be reused once the worker is done
+            // with it.
+            if (pipeline.shutdown()) {
+                bufferPool.release(image);
+            }
         }
 
         logger.verbose("Stitching done!");
-        scrollTo(originalScrollPosition);
         return stitchedImage;
     }
 
+    /**
+     * @param imageParts The parts which are yet to be stitched, top to
+     *                   bottom.
+     * @param nextPart The index of the next part to be stitched.
+     * @param entirePageSize The size of the page.
+     * @param partSize The size of the area written by each part.
+     * @param stitchArea The area of the page which is stitched.
+     * @return The number of rows of the stitched image which no part from
+     * {@code nextPart} onwards covers. Notice a part can't be written below
+     * the bottom of the page (since the scroll is limited).
+     */
+    private static int getCompleteRows(List<Region> imageParts, int nextPart,
+            RectangleSize entirePageSize, RectangleSize partSize,
+            Region stitchArea) {
+        if (nextPart >= imageParts.size()) {
+            return stitchArea.getHeight();
+        }
+        int maxTop = entirePageSize.getHeight() - partSize.getHeight();
+        return Math.max(0, Math.min(imageParts.get(nextPart).getTop(),
+                maxTop) - stitchArea.getTop());
+    }
+
+    /**
+     * @return The location relative to the top/left of the stitch area.
+     */
+    private static Location getLocationInArea(Location location,
+                                              Region stitchArea) {
+        return new Location(location.getX() - stitchArea.getLeft(),
+                location.getY() - stitchArea.getTop());
+    }
+
+    /**
+     * Creates the image into which parts are stitched. Large images are
+     * stored according to the stitched image storage, if their type allows
+     * it.
+     * @param size The size of the image.
+     * @param type The type of the stitched parts.
+     * @return The (empty) stitched image.
+     */
+    private BufferedImage createStitchedImage(RectangleSize size, int type) {
+        long pixels = (long) size.getWidth() * size.getHeight();
+        if (stitchedImageStorage != StitchedImageStorage.HEAP
+                && pixels >= offHeapPixelThreshold) {
+            BufferedImage image = OffHeapImages.create(logger,
+                    size.getWidth(), size.getHeight(), type,
+                    stitchedImageStorage);
+            if (image != null) {
+                return image;
+            }
+            logger.verbose("Falling back to a heap image.");
+        }
+        return new BufferedImage(size.getWidth(), size.getHeight(), type);
+    }
+
     /**
      * Creates a full page image by scrolling the viewport and "stitching"
      * the screenshots to each other.
@@ -830,50 +1956,222 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
      */
     public BufferedImage getFullPageScreenshot() {
         logger.verbose("Getting full page screenshot..");
+        return getFullPageScreenshot(null, null);
+    }
 
+    /**
+     * Creates an image of an area of the page by scrolling the viewport and
+     * "stitching" the screenshots to each other. Only the scroll positions
+     * needed for covering the area are visited.
+     *
+     * @param area The area of the page to capture (page coordinates).
+     * @return The image of the area. Its top/left is the area's top/left.
+     */
+    public BufferedImage getFullPageScreenshot(Region area) {
+        logger.verbose(String.format("Getting full page screenshot of %s..",
+                area));
+        ArgumentGuard.notNull(area, "area");
+        return getFullPageScreenshot(area, null);
+    }
+
+    /**
+     * Creates a full page image by scrolling the viewport and "stitching"
+     * the screenshots to each other, and writes it as PNG while stitching.
+     *
+     * @param pngOutput The stream to which the PNG is written. It is not
+     *                  closed.
+     * @see #writeStitchedRegion(RegionProvider, PositionProvider,
+     * OutputStream)
+     */
+    public void writeFullPageScreenshot(OutputStream pngOutput) {
+        logger.verbose("Writing full page screenshot..");
+        ArgumentGuard.notNull(pngOutput, "pngOutput");
+        getFullPageScreenshot(null, pngOutput);
+    }
+
+    private BufferedImage getFullPageScreenshot(Region area,
+                                                OutputStream pngOutput) {
         // Save the current frame path.
         FrameChain originalFrame = getFrameChain();
 
         switchTo().defaultContent();
 
-        BufferedImage fullPageImage = getStitchedRegion(new RegionProvider() {
-            public Region getRegion() {
-                return Region.EMPTY;
+        BufferedImage fullPageImage;
+        try {
+            // Native full page screenshots are not rotated, so we only use
+            // them if no rotation is forced.
+            if (area == null && fullPageScreenshotTaker != null
+                    && rotation == null) {
+                fullPageImage = getNativeFullPageScreenshot();
+                if (fullPageImage != null) {
+                    if (pngOutput == null) {
+                        return fullPageImage;
+                    }
+                    imageCodec.encode(fullPageImage, pngOutput);
+                    return null;
+                }
             }
 
-            public CoordinatesType getCoordinatesType() {
-                return null;
-            }
-        });
+            fullPageImage = getStitchedRegion(new RegionProvider() {
+                public Region getRegion() {
+                    return Region.EMPTY;
+                }
 
-        ((EyesTargetLocator)switchTo()).frames(originalFrame);
+                public CoordinatesType getCoordinatesType() {
+                    return null;
+                }
+            }, createPositionProvider(), area, pngOutput);
+        } finally {
+            ((EyesTargetLocator)switchTo()).frames(originalFrame);
+        }
 
         return fullPageImage;
     }
 
+    /**
+     * Takes a full page screenshot in a single driver command. If the
+     * command fails, native full page screenshots are disabled for the rest
+     * of the session.
+     *
+     * @return The image of the entire page, or {@code null} if the command
+     * failed.
+     */
+    private BufferedImage getNativeFullPageScreenshot() {
+        logger.verbose(String.format(
+                "Getting native full page screenshot (%s)...",
+                fullPageScreenshotTaker.getProtocol()));
+        try {
+            String screenshot64 = fullPageScreenshotTaker.getScreenshot(
+                    getEntirePageSize());
+            logger.verbose("Done getting base64! Getting BufferedImage..");
+            BufferedImage image = imageCodec.decode(screenshot64, null);
+            logger.verbose("Done!");
+            return image;
+        } catch (RuntimeException e) {
+            logger.log(String.format(
+                    "Native full page screenshot failed, falling back to " +
+                            "stitching: %s", e.getMessage()));
+            fullPageScreenshotTaker = null;
+            return null;
+        }
+    }
+
+    /**
+     * Takes a screenshot of the viewport, decoded and rotated as necessary.
+     * Unlike {@link #getScreenshotAs(OutputType)}, the screenshot is only
+     * decoded once, and never re-encoded.
+     *
+     * @return The screenshot image.
+     */
+    public BufferedImage getScreenshotImage() {
+        logger.verbose("Getting screenshot...");
+        BufferedImage screenshot = takeScreenshotImage();
+        logger.verbose("Done!");
+        return rotateScreenshot(screenshot,
+                getRotationDegrees(this, screenshot, rotation));
+    }
+
+    /**
+     * Returns an image taken by this driver (e.g., by
+     * {@link #getScreenshotImage()}) to the screenshot buffer pool, so later
+     * screenshots of the same size can reuse it.
+     *
+     * @param image The image, which must not be used after this call.
+     */
+    public void releaseScreenshotImage(BufferedImage image) {
+        bufferPool.release(image);
+    }
+
+    /**
+     * @return The pool of screenshot images which are no longer used.
+     */
+    ScreenshotBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Takes a viewport screenshot and decodes it (without rotating it),
+     * directly through the driver server if enabled. If the direct capture
+     * fails, it is disabled for the rest of the session.
+     */
+    private BufferedImage takeScreenshotImage() {
+        if (screenshotTaker != null) {
+            try {
+                return screenshotTaker.getScreenshot(bufferPool);
+            } catch (RuntimeException e) {
+                logger.log(String.format(
+                        "Direct screenshot capture failed, falling back to " +
+                                "the driver: %s", e.getMessage()));
+                screenshotTaker = null;
+            }
+        }
+        String screenshot64 = driver.getScreenshotAs(OutputType.BASE64);
+        logger.verbose("Done getting base64! Getting BufferedImage...");
+        return decodeScreenshot(screenshot64);
+    }
+
+    /**
+     * Decodes a viewport screenshot, into a pooled image if one of the
+     * right size is available.
+     */
+    private BufferedImage decodeScreenshot(String screenshot64) {
+        RectangleSize size = ScreenshotDecoder.getPngSize(screenshot64);
+        BufferedImage buffer = size == null ? null
+                : bufferPool.acquire(size.getWidth(), size.getHeight());
+        BufferedImage image = imageCodec.decode(screenshot64, buffer);
+        if (image != buffer) {
+            bufferPool.release(buffer);
+        }
+        return image;
+    }
+
+    /**
+     * Rotates a screenshot which is no longer used, into a pooled image if
+     * one of the right size is available (or in place, if possible).
+     */
+    private BufferedImage rotateScreenshot(BufferedImage image, int degrees) {
+        int clockwise = ImageRotator.normalizeDegrees(degrees);
+        if (clockwise == 0) {
+            return image;
+        }
+        if (clockwise == 180) {
+            return ImageRotator.rotate(image, degrees, image);
+        }
+        BufferedImage buffer = bufferPool.acquire(image.getHeight(),
+                image.getWidth());
+        BufferedImage rotated = ImageRotator.rotate(image, degrees, buffer);
+        if (rotated != buffer) {
+            bufferPool.release(buffer);
+        }
+        bufferPool.release(image);
+        return rotated;
+    }
+
     public <X> X getScreenshotAs(OutputType<X> xOutputType)
             throws WebDriverException {
         // Get the image as base64.
         String screenshot64 = driver.getScreenshotAs(OutputType.BASE64);
-        BufferedImage screenshot = ImageUtils.imageFromBase64(screenshot64);
-        screenshot = normalizeRotation(this, screenshot, rotation);
 
-        // Return the image in the requested format.
-        screenshot64 = ImageUtils.base64FromImage(screenshot);
-        return xOutputType.convertFromBase64Png(screenshot64);
+        // Whether rotation is required only depends on the image's size,
+        // which we can read from the PNG header. If it isn't, we return the
+        // driver's PNG as is, rather than decoding and re-encoding it.
+        RectangleSize screenshotSize =
+                ScreenshotDecoder.getPngSize(screenshot64);
+        if (screenshotSize != null && getRotationDegrees(this,
+                screenshotSize.getWidth(), screenshotSize.getHeight(),
+                rotation) == 0) {
+            return xOutputType.convertFromBase64Png(screenshot64);
+        }
 
-        // TODO - Remove the code block below if indeed unnecessary.
-//        if (screenshotTaker == null) {
-//            return driver.getScreenshotAs(xOutputType);
-//        }
-//
-//        // Get base64 screenshot using the Wire protocol.
-//        if (xOutputType != OutputType.BASE64) {
-//            throw new EyesException("Screenshot OutputType not supported");
-//        }
-//
-//        String screenshot = screenshotTaker.getScreenshot();
-//        return xOutputType.convertFromBase64Png(screenshot);
+        BufferedImage screenshot = decodeScreenshot(screenshot64);
+        screenshot = rotateScreenshot(screenshot,
+                getRotationDegrees(this, screenshot, rotation));
+
+        // Return the image in the requested format.
+        ByteArrayOutputStream pngOutput = new ByteArrayOutputStream();
+        imageCodec.encode(screenshot, pngOutput);
+        bufferPool.release(screenshot);
+        return xOutputType.convertFromPngBytes(pngOutput.toByteArray());
     }
 
     /**
@@ -913,6 +2211,27 @@ public class EyesWebDriver implements HasCapabilities, HasInputDevices,
         return remoteWebDriverServerUrl;
     }
 
+    /**
+     * @return The address of the driver server, as used by the driver's
+     * command executor, or {@code null} if it's unknown.
+     */
+    private URL getDriverServerAddress() {
+        if (driver instanceof FirefoxDriver) {
+            try {
+                return getFirefoxServerUrl(driver);
+            } catch (EyesException e) {
+                logger.verbose(e.getMessage());
+                return null;
+            }
+        }
+        CommandExecutor commandExecutor = driver.getCommandExecutor();
+        if (!(commandExecutor instanceof HttpCommandExecutor)) {
+            return null;
+        }
+        return ((HttpCommandExecutor) commandExecutor)
+                .getAddressOfRemoteServer();
+    }
+
     /**
      * Gets the web driver's server URL.
      */
@@ -5,20 +5,24 @@ package com.applitools.eyes;
 
 import com.applitools.utils.ArgumentGuard;
 import com.applitools.utils.ImageUtils;
-import org.openqa.selenium.Dimension;
-import org.openqa.selenium.Point;
-import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 
 import java.awt.image.BufferedImage;
 import java.util.Iterator;
+import java.util.List;
 
 public class EyesWebDriverScreenshot extends EyesScreenshot {
 
     private static enum ScreenshotType {VIEWPORT, ENTIRE_FRAME}
 
+    private static final int COORDINATES_TYPE_COUNT =
+            CoordinatesType.values().length;
+
     private final Logger logger;
     private final EyesWebDriver driver;
+    // The page geometry captured when the screenshot was created, which is
+    // shared by its sub-screenshots.
+    private final ScreenshotGeometry geometry;
     private final FrameChain frameChain;
     private final Location scrollPosition;
     private final ScreenshotType screenshotType;
@@ -31,6 +35,13 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
     // The part of the frame window which is visible in the screenshot
     private final Region frameWindow;
 
+    // All conversions between coordinate types are translations, so they
+    // are calculated once. For each (from, to) pair, the x and y offsets
+    // (or null if the conversion is not supported).
+    private final int[][] conversionOffsets;
+
+    private boolean isReleased;
+
     private static Location calcFrameLocationInScreenshot(Logger logger,
             FrameChain frameChain, ScreenshotType screenshotType) {
 
@@ -82,41 +93,45 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
                                    BufferedImage image,
                                    ScreenshotType screenshotType,
                                    Location frameLocationInScreenshot) {
+        // The viewport size is only required for inferring the type.
+        this(logger, driver, image, screenshotType, frameLocationInScreenshot,
+                ScreenshotGeometry.capture(logger, driver,
+                        screenshotType == null));
+    }
+
+    /**
+     * @param logger                     A Logger instance.
+     * @param driver                     The web driver used to get the
+     *                                   screenshot.
+     * @param image                      The actual screenshot image.
+     * @param screenshotType             (Optional) The screenshot's type
+     *                                   (e.g., viewport/full page).
+     * @param frameLocationInScreenshot  (Optional) The current frame's
+     *                                   location in the screenshot.
+     * @param geometry                   The page geometry at the time the
+     *                                   screenshot was taken. Must include
+     *                                   the viewport size if
+     *                                   {@code screenshotType} is
+     *                                   {@code null}.
+     */
+    private EyesWebDriverScreenshot(Logger logger, EyesWebDriver driver,
+                                    BufferedImage image,
+                                    ScreenshotType screenshotType,
+                                    Location frameLocationInScreenshot,
+                                    ScreenshotGeometry geometry) {
         super(image);
         ArgumentGuard.notNull(logger, "logger");
         ArgumentGuard.notNull(driver, "driver");
+        ArgumentGuard.notNull(geometry, "geometry");
         this.logger = logger;
         this.driver = driver;
-        RectangleSize viewportSize = driver.getDefaultContentViewportSize();
-        frameChain = driver.getFrameChain();
-        // If we're inside a frame, then the frame size is given by the frame
-        // chain. Otherwise, it's the size of the entire page.
-        RectangleSize frameSize;
-        if (frameChain.size() != 0) {
-            frameSize = frameChain.getCurrentFrameSize();
-        } else {
-            // get entire page size might throw an exception for applications
-            // which don't support Javascript (e.g., Appium). In that case
-            // we'll use the viewport size as the frame's size.
-            RectangleSize fs;
-            try {
-                fs = driver.getEntirePageSize();
-            } catch (WebDriverException e) {
-                fs = viewportSize;
-            }
-            frameSize = fs;
-        }
-        // Getting the scroll position. For native Appium apps we can't get the
-        // scroll position, so we use (0,0)
-        Location sp;
-        try {
-            sp = driver.getCurrentScrollPosition();
-        } catch (WebDriverException e) {
-            sp = new Location(0, 0);
-        }
-        scrollPosition = sp;
+        this.geometry = geometry;
+        frameChain = geometry.getFrameChain();
+        RectangleSize frameSize = geometry.getFrameSize();
+        scrollPosition = geometry.getScrollPosition();
 
         if (screenshotType == null) {
+            RectangleSize viewportSize = geometry.getViewportSize();
             if (image.getWidth() <= viewportSize.getWidth()
                     && image.getHeight() <= viewportSize.getHeight()) {
                 screenshotType = ScreenshotType.VIEWPORT;
@@ -151,6 +166,7 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
             throw new EyesException("Got empty frame window for screenshot!");
         }
 
+        conversionOffsets = calculateConversionOffsets();
         logger.verbose("Done!");
     }
 
@@ -168,6 +184,21 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
         this(logger, driver, image, null, null);
     }
 
+    /**
+     * Creates a screenshot of an area of the entire page (e.g., as returned
+     * by {@link EyesWebDriver#getFullPageScreenshot(Region)}).
+     * @param logger A Logger instance.
+     * @param driver The web driver used to get the screenshot.
+     * @param image The actual screenshot image.
+     * @param area The area of the page which the image contains. The
+     *             top/left of the image is the top/left of the area.
+     */
+    public EyesWebDriverScreenshot(Logger logger, EyesWebDriver driver,
+                                   BufferedImage image, Region area) {
+        this(logger, driver, image, ScreenshotType.ENTIRE_FRAME,
+                new Location(-area.getLeft(), -area.getTop()));
+    }
+
     // TODO replace "entireFrameSize" as frame window ctor identifier
     /**
      * Creates a frame(!) window screenshot.
@@ -185,12 +216,15 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
         ArgumentGuard.notNull(entireFrameSize, "entireFrameSize");
         this.logger = logger;
         this.driver = driver;
-        frameChain = driver.getFrameChain();
         // The frame comprises the entire screenshot.
+        geometry = new ScreenshotGeometry(driver.getFrameChain(),
+                entireFrameSize, new Location(0, 0), null);
+        frameChain = geometry.getFrameChain();
         screenshotType = ScreenshotType.ENTIRE_FRAME;
-        scrollPosition = new Location(0, 0);
+        scrollPosition = geometry.getScrollPosition();
         frameLocationInScreenshot = new Location(0, 0);
         frameWindow = new Region(new Location(0, 0), entireFrameSize);
+        conversionOffsets = calculateConversionOffsets();
     }
 
     /**
@@ -201,6 +235,19 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
         return frameWindow;
     }
 
+    /**
+     * Returns the screenshot's image to the driver's screenshot buffer
+     * pool, so later screenshots of the same size can reuse it. The
+     * screenshot (and its image) must not be used afterwards.
+     */
+    public void release() {
+        if (isReleased) {
+            return;
+        }
+        isReleased = true;
+        driver.getBufferPool().release(image);
+    }
+
     /**
      * @return A copy of the frame chain which was available when the
      * screenshot was created.
@@ -246,13 +293,55 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
                 new Location(-contextAsIsRegionLocation.getX(),
                         -contextAsIsRegionLocation.getY());
 
+        // The sub-screenshot shares this screenshot's geometry, so it is
+        // created without any driver calls.
         EyesWebDriverScreenshot result = new EyesWebDriverScreenshot(logger,
                 driver, subScreenshotImage, screenshotType,
-                frameLocationInSubScreenshot);
+                frameLocationInSubScreenshot, geometry);
         logger.verbose("getSubScreenshot Done!");
         return result;
     }
 
+    /**
+     * @return The x and y offsets of each supported conversion, indexed by
+     * {@link #getConversionIndex}.
+     */
+    private int[][] calculateConversionOffsets() {
+        int[][] offsets =
+                new int[COORDINATES_TYPE_COUNT * COORDINATES_TYPE_COUNT][];
+        for (CoordinatesType from : CoordinatesType.values()) {
+            for (CoordinatesType to : CoordinatesType.values()) {
+                try {
+                    Location offset = calculateConversionOffset(from, to);
+                    offsets[getConversionIndex(from, to)] =
+                            new int[]{offset.getX(), offset.getY()};
+                } catch (CoordinatesTypeConversionException e) {
+                    // Not supported, left null.
+                }
+            }
+        }
+        return offsets;
+    }
+
+    private static int getConversionIndex(CoordinatesType from,
+                                          CoordinatesType to) {
+        return from.ordinal() * COORDINATES_TYPE_COUNT + to.ordinal();
+    }
+
+    /**
+     * @return The x and y offsets of the conversion.
+     * @throws CoordinatesTypeConversionException If the conversion is not
+     * supported.
+     */
+    private int[] getConversionOffset(CoordinatesType from,
+                                      CoordinatesType to) {
+        int[] offset = conversionOffsets[getConversionIndex(from, to)];
+        if (offset == null) {
+            throw new CoordinatesTypeConversionException(from, to);
+        }
+        return offset;
+    }
+
     @Override
     protected Location convertLocation(Location location,
             CoordinatesType from, CoordinatesType to) {
@@ -262,6 +351,22 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
         ArgumentGuard.notNull(to, "to");
 
         Location result = new Location(location);
+        if (from != to) {
+            int[] offset = getConversionOffset(from, to);
+            result.offset(offset[0], offset[1]);
+        }
+        return result;
+    }
+
+    /**
+     * @return The offset by which locations are translated when converted
+     * from one coordinates type to another.
+     * @throws CoordinatesTypeConversionException If the conversion is not
+     * supported.
+     */
+    private Location calculateConversionOffset(CoordinatesType from,
+                                               CoordinatesType to) {
+        Location result = new Location(0, 0);
 
         if (from == to) {
             return result;
@@ -382,41 +487,136 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
             return new Region(region);
         }
 
-        Region intersectedRegion = convertRegionLocation(region,
-                originalCoordinatesType, CoordinatesType.SCREENSHOT_AS_IS);
+        int[] intersected = new int[4];
+        intersect(region.getLeft(), region.getTop(), region.getWidth(),
+                region.getHeight(), originalCoordinatesType,
+                resultCoordinatesType, intersected, 0);
+        if (intersected[2] == 0) {
+            return new Region(Region.EMPTY);
+        }
+        return new Region(intersected[0], intersected[1], intersected[2],
+                intersected[3]);
+    }
+
+    /**
+     * Intersects many regions with the screenshot at once, without
+     * allocating objects per region. Each region is handled as by
+     * {@link #getIntersectedRegion(Region, CoordinatesType, CoordinatesType)},
+     * except that empty results are always written as (0, 0, 0, 0).
+     *
+     * @param regions                 The regions, as consecutive left, top,
+     *                                width and height values.
+     * @param count                   The number of regions.
+     * @param originalCoordinatesType The coordinates type of the regions.
+     * @param resultCoordinatesType   The coordinates type of the results.
+     * @param results                 The array to which the intersected
+     *                                regions are written, in the same
+     *                                layout as {@code regions}. Can be
+     *                                {@code regions} itself.
+     */
+    public void getIntersectedRegions(int[] regions, int count,
+                                      CoordinatesType originalCoordinatesType,
+                                      CoordinatesType resultCoordinatesType,
+                                      int[] results) {
+        ArgumentGuard.notNull(regions, "regions");
+        ArgumentGuard.greaterThanOrEqualToZero(count, "count");
+        ArgumentGuard.notNull(originalCoordinatesType,
+                "originalCoordinatesType");
+        ArgumentGuard.notNull(resultCoordinatesType, "resultCoordinatesType");
+        ArgumentGuard.notNull(results, "results");
+        if (regions.length < count * 4 || results.length < count * 4) {
+            throw new IllegalArgumentException(
+                    "regions and results must hold 4 values per region!");
+        }
+
+        for (int i = 0; i < count * 4; i += 4) {
+            intersect(regions[i], regions[i + 1], regions[i + 2],
+                    regions[i + 3], originalCoordinatesType,
+                    resultCoordinatesType, results, i);
+        }
+    }
 
+    /**
+     * Converts a region to screenshot coordinates, intersects it with the
+     * frame window (for context coordinates) or with the image (for
+     * screenshot coordinates), and converts the intersection to the result
+     * coordinates type.
+     *
+     * @param results The array to which the left, top, width and height of
+     *                the intersection are written, or (0, 0, 0, 0) if it's
+     *                empty.
+     * @param offset  The index in {@code results} of the left value.
+     */
+    private void intersect(int left, int top, int width, int height,
+                           CoordinatesType originalCoordinatesType,
+                           CoordinatesType resultCoordinatesType,
+                           int[] results, int offset) {
+        int boundsLeft;
+        int boundsTop;
+        int boundsRight;
+        int boundsBottom;
         switch (originalCoordinatesType) {
             // If the request was context based, we intersect with the frame
             // window.
             case CONTEXT_AS_IS:
             case CONTEXT_RELATIVE:
-                intersectedRegion.intersect(frameWindow);
+                boundsLeft = frameWindow.getLeft();
+                boundsTop = frameWindow.getTop();
+                boundsRight = boundsLeft + frameWindow.getWidth();
+                boundsBottom = boundsTop + frameWindow.getHeight();
                 break;
 
             // If the request is screenshot based, we intersect with the image
             case SCREENSHOT_AS_IS:
-                intersectedRegion.intersect(new Region(0, 0,
-                        image.getWidth(), image.getHeight()));
+                boundsLeft = 0;
+                boundsTop = 0;
+                boundsRight = image.getWidth();
+                boundsBottom = image.getHeight();
                 break;
 
             default:
                 throw new CoordinatesTypeConversionException(
                         String.format("Unknown coordinates type: '%s'",
                                 originalCoordinatesType));
-
         }
 
-        // If the intersection is empty we don't want to convert the
-        // coordinates.
-        if(intersectedRegion.isEmpty()) {
-            return intersectedRegion;
+        if (width > 0 && height > 0) {
+            if (originalCoordinatesType != CoordinatesType.SCREENSHOT_AS_IS) {
+                int[] toScreenshot = getConversionOffset(
+                        originalCoordinatesType,
+                        CoordinatesType.SCREENSHOT_AS_IS);
+                left += toScreenshot[0];
+                top += toScreenshot[1];
+            }
+            int intersectedLeft = Math.max(left, boundsLeft);
+            int intersectedTop = Math.max(top, boundsTop);
+            int intersectedRight = Math.min(left + width, boundsRight);
+            int intersectedBottom = Math.min(top + height, boundsBottom);
+            if (intersectedLeft < intersectedRight
+                    && intersectedTop < intersectedBottom) {
+                // Converting the result to the required coordinates type.
+                if (resultCoordinatesType
+                        != CoordinatesType.SCREENSHOT_AS_IS) {
+                    int[] toResult = getConversionOffset(
+                            CoordinatesType.SCREENSHOT_AS_IS,
+                            resultCoordinatesType);
+                    intersectedLeft += toResult[0];
+                    intersectedTop += toResult[1];
+                    intersectedRight += toResult[0];
+                    intersectedBottom += toResult[1];
+                }
+                results[offset] = intersectedLeft;
+                results[offset + 1] = intersectedTop;
+                results[offset + 2] = intersectedRight - intersectedLeft;
+                results[offset + 3] = intersectedBottom - intersectedTop;
+                return;
+            }
         }
-
-        // Converting the result to the required coordinates type.
-        intersectedRegion = convertRegionLocation(intersectedRegion,
-                CoordinatesType.SCREENSHOT_AS_IS, resultCoordinatesType);
-
-        return intersectedRegion;
+        // If the intersection is empty we don't convert the coordinates.
+        results[offset] = 0;
+        results[offset + 1] = 0;
+        results[offset + 2] = 0;
+        results[offset + 3] = 0;
     }
 
     @SuppressWarnings("UnusedDeclaration")
@@ -430,11 +630,7 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
     public Region getIntersectedRegion(WebElement element) {
         ArgumentGuard.notNull(element, "element");
 
-        Point pl = element.getLocation();
-        Dimension ds = element.getSize();
-
-        Region elementRegion = new Region(pl.getX(), pl.getY(), ds.getWidth(),
-                ds.getHeight());
+        Region elementRegion = driver.getElementBounds(element);
 
         // Since the element coordinates are in context relative
         elementRegion = getIntersectedRegion(elementRegion,
@@ -448,4 +644,26 @@ public class EyesWebDriverScreenshot extends EyesScreenshot {
 
         return elementRegion;
     }
+
+    /**
+     * Gets the regions of many elements in the screenshot, resolving the
+     * bounds of all the elements in a single driver call.
+     *
+     * @param elements The elements whose regions we want to intersect. They
+     *                 must be in the screenshot's context.
+     * @return The intersected regions, in {@code SCREENSHOT_AS_IS}
+     * coordinates type, as consecutive left, top, width and height values
+     * per element. Regions which are outside the screenshot are
+     * (0, 0, 0, 0).
+     */
+    public int[] getIntersectedRegions(List<? extends WebElement> elements) {
+        ArgumentGuard.notNull(elements, "elements");
+
+        // The element coordinates are context relative.
+        int[] regions = driver.getElementsBounds(elements);
+        getIntersectedRegions(regions, elements.size(),
+                CoordinatesType.CONTEXT_RELATIVE,
+                CoordinatesType.SCREENSHOT_AS_IS, regions);
+        return regions;
+    }
 }
@@ -0,0 +1,116 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link javax.imageio.stream.ImageInputStream} over an
+ * {@link InputStream}, which only keeps a small window of the most recently
+ * read bytes, rather than caching the entire stream (like
+ * {@link javax.imageio.stream.MemoryCacheImageInputStream} does). Readers
+ * can seek back within the window (e.g., the PNG reader re-reads the header
+ * of the first image data chunk), and can seek forward freely.
+ */
+class ForwardImageInputStream extends ImageInputStreamImpl {
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private final InputStream input;
+    // A ring buffer holding the bytes at positions
+    // [readLimit - WINDOW_SIZE, readLimit).
+    private final byte[] window;
+    // The number of bytes read from the underlying stream.
+    private long readLimit;
+    private boolean ended;
+
+    /**
+     * @param input The stream to read. It is not closed when this stream is
+     *              closed.
+     */
+    public ForwardImageInputStream(InputStream input) {
+        ArgumentGuard.notNull(input, "input");
+        this.input = input;
+        window = new byte[WINDOW_SIZE];
+        readLimit = 0;
+        ended = false;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if (!fill(streamPos + 1)) {
+            return -1;
+        }
+        return window[(int) (streamPos++ % WINDOW_SIZE)] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        ArgumentGuard.notNull(b, "b");
+        if (off < 0 || len < 0 || off + len > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        bitOffset = 0;
+        if (!fill(streamPos + 1)) {
+            return -1;
+        }
+        int index = (int) (streamPos % WINDOW_SIZE);
+        int count = (int) Math.min(Math.min(len, readLimit - streamPos),
+                WINDOW_SIZE - index);
+        System.arraycopy(window, index, b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public void seek(long pos) throws IOException {
+        checkClosed();
+        if (pos < flushedPos) {
+            throw new IndexOutOfBoundsException("pos < flushedPos!");
+        }
+        if (pos < readLimit - WINDOW_SIZE) {
+            throw new IOException(String.format(
+                    "Can't seek back to %d, the earliest position is %d!",
+                    pos, readLimit - WINDOW_SIZE));
+        }
+        streamPos = pos;
+        bitOffset = 0;
+    }
+
+    @Override
+    public boolean isCached() {
+        return false;
+    }
+
+    /**
+     * Reads from the underlying stream until the given position is
+     * reached, without overwriting bytes which were not read yet.
+     *
+     * @return Whether the stream has at least {@code limit} bytes.
+     */
+    private boolean fill(long limit) throws IOException {
+        while (readLimit < limit && !ended) {
+            int index = (int) (readLimit % WINDOW_SIZE);
+            int length = (int) Math.min(WINDOW_SIZE - index,
+                    streamPos + WINDOW_SIZE - readLimit);
+            int count = input.read(window, index, length);
+            if (count < 0) {
+                ended = true;
+            } else {
+                readLimit += count;
+            }
+        }
+        return readLimit >= limit;
+    }
+}
@@ -4,15 +4,46 @@
 package com.applitools.eyes;
 
 import com.applitools.utils.ArgumentGuard;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Point;
 import org.openqa.selenium.WebDriverException;
 import org.openqa.selenium.WebElement;
 
+import java.util.List;
+
 /**
  * Encapsulates a frame/iframe. This is a generic type class,
  * and it's actual type is determined by the reference used by the user in
  * order to switch into the frame.
  */
 public class Frame {
+    // The metadata needed for a frame, in a single call: the frame
+    // element's location and size (as returned by getLocation and getSize),
+    // its left and top border widths, and the scroll position of the
+    // current context.
+    private static final String JS_GET_FRAME_METADATA =
+            "var frame = arguments[0];" +
+            " var doc = document.documentElement;" +
+            " var x = window.scrollX; var y = window.scrollY;" +
+            " if (x === undefined || y === undefined) {" +
+                " x = (window.pageXOffset || doc.scrollLeft)" +
+                    " - (doc.clientLeft || 0);" +
+                " y = (window.pageYOffset || doc.scrollTop)" +
+                    " - (doc.clientTop || 0);" +
+            "}" +
+            " var r = frame.getBoundingClientRect();" +
+            " var style = window.getComputedStyle" +
+                " ? window.getComputedStyle(frame, null) : null;" +
+            " var borderLeft = style" +
+                " ? style.getPropertyValue('border-left-width')" +
+                " : frame.currentStyle.borderLeftWidth;" +
+            " var borderTop = style" +
+                " ? style.getPropertyValue('border-top-width')" +
+                " : frame.currentStyle.borderTopWidth;" +
+            " return [r.left + x, r.top + y, r.width, r.height," +
+                " parseFloat(borderLeft) || 0, parseFloat(borderTop) || 0," +
+                " x, y];";
+
     // A user can switch into a frame by either its name,
     // index or by passing the relevant web element.
     protected final Logger logger;
@@ -21,8 +52,12 @@ public class Frame {
     protected final Location location;
     protected final RectangleSize size;
     protected final Location parentScrollPosition;
+    // The number of driver calls made for creating the frame.
+    protected final int metadataRoundTrips;
 
     /**
+     * Creates a frame, getting its border widths from the driver.
+     *
      * @param logger A Logger instance.
      * @param reference The web element for the frame, used as a reference to
      *                  switch into the frame.
@@ -36,6 +71,37 @@ public class Frame {
     public Frame(Logger logger, WebElement reference,
                  String frameId, Location location, RectangleSize size,
                  Location parentScrollPosition) {
+        this(logger, reference, frameId, location, size,
+                parentScrollPosition, getBorders(logger, reference));
+    }
+
+    /**
+     * Creates a frame without any driver calls.
+     *
+     * @param logger A Logger instance.
+     * @param reference The web element for the frame, used as a reference to
+     *                  switch into the frame.
+     * @param frameId The id of the frame. Can be used later for comparing
+     *                two frames.
+     * @param location The location of the frame within the current frame.
+     * @param size The entire frame size.
+     * @param parentScrollPosition The scroll position the frame's parent was
+     *                             in when the frame was switched to.
+     * @param leftBorderWidth The width of the frame's left border.
+     * @param topBorderWidth The width of the frame's top border.
+     */
+    public Frame(Logger logger, WebElement reference,
+                 String frameId, Location location, RectangleSize size,
+                 Location parentScrollPosition, int leftBorderWidth,
+                 int topBorderWidth) {
+        this(logger, reference, frameId, location, size,
+                parentScrollPosition,
+                new Borders(leftBorderWidth, topBorderWidth, 0));
+    }
+
+    private Frame(Logger logger, WebElement reference,
+                  String frameId, Location location, RectangleSize size,
+                  Location parentScrollPosition, Borders borders) {
         ArgumentGuard.notNull(logger, "logger");
         ArgumentGuard.notNull(reference, "reference");
         ArgumentGuard.notNull(frameId, "frameId");
@@ -51,89 +117,133 @@ public class Frame {
         this.parentScrollPosition = new Location(parentScrollPosition.getX(),
                 parentScrollPosition.getY());
         this.size = size;
+        this.metadataRoundTrips = borders.roundTrips;
 
         // Frame borders also have effect on the frame's
         // location.
-        int leftBorderWidth, topBorderWidth;
-        String propValue;
+        Location frameLocation = new Location(location);
+        frameLocation.offset(borders.left, borders.top);
+        this.location = frameLocation;
+        logger.verbose("Done!");
+    }
+
+    /**
+     * Creates a frame for a frame element in the current context, getting
+     * its location, size, borders and the context's scroll position in a
+     * single script call. If the script fails, each is queried separately.
+     *
+     * @param logger A Logger instance.
+     * @param driver The driver, whose current context contains the frame.
+     * @param reference The web element for the frame, used as a reference to
+     *                  switch into the frame.
+     * @param frameId The id of the frame. Can be used later for comparing
+     *                two frames.
+     * @return The frame.
+     */
+    public static Frame capture(Logger logger, EyesWebDriver driver,
+                                WebElement reference, String frameId) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(driver, "driver");
+        ArgumentGuard.notNull(reference, "reference");
+
+        logger.verbose("Getting frame metadata...");
         try {
-            logger.verbose("Get frame border left width...");
-            if (reference instanceof EyesRemoteWebElement) {
-                logger.verbose(
-                        "Frame reference is an EyesWebElement, using 'getComputedStyle'.");
-                try {
-                    propValue = ((EyesRemoteWebElement) reference)
-                            .getComputedStyle("border-left-width");
-                } catch (WebDriverException e) {
-                    logger.verbose(String.format("Using getComputedStyle failed: %s.",
-                            e.getMessage()));
-                    logger.verbose("Using getCssValue...");
-                    propValue = reference.getCssValue("border-left-width");
-                }
-                logger.verbose("Done!");
-            } else {
-                // OK, this is weird, we got an element which is not
-                // EyesWebElement?? Log it and try to move on.
-                logger.verbose("Frame reference is not an EyesWebElement! " +
-                        "(when trying to get border-left-width) " +
-                        "Element's class: " +
-                        reference.getClass().getName());
-                logger.verbose("Using getCssValue...");
-                propValue = reference.getCssValue("border-left-width");
-                logger.verbose("Done!");
+            Object result = driver.executeScript(JS_GET_FRAME_METADATA,
+                    reference);
+            if (result instanceof List && ((List<?>) result).size() == 8) {
+                List<?> values = (List<?>) result;
+                return new Frame(logger, reference, frameId,
+                        new Location(toInt(values.get(0)),
+                                toInt(values.get(1))),
+                        new RectangleSize(toInt(values.get(2)),
+                                toInt(values.get(3))),
+                        new Location(toInt(values.get(6)),
+                                toInt(values.get(7))),
+                        new Borders(toInt(values.get(4)),
+                                toInt(values.get(5)), 1));
             }
-            // Convert border value from the format "2px" to int.
-            leftBorderWidth = Math.round(Float.valueOf(
-                    propValue.trim().replace("px", "")
-            ));
-            logger.verbose("border-left-width: " + leftBorderWidth);
+            logger.verbose(String.format("Unexpected result: %s", result));
         } catch (WebDriverException e) {
-            logger.verbose(String.format(
-                "Couldn't get frame border-left-width: %s. Falling back to default",
+            logger.verbose(String.format("Getting frame metadata failed: %s",
                     e.getMessage()));
-            leftBorderWidth = 0;
         }
+
+        logger.verbose("Getting each of the frame's properties...");
+        Point pl = reference.getLocation();
+        Dimension ds = reference.getSize();
+        Location parentScrollPosition = driver.getCurrentScrollPosition();
+        Borders borders = getBorders(logger, reference);
+        return new Frame(logger, reference, frameId,
+                new Location(pl.getX(), pl.getY()),
+                new RectangleSize(ds.getWidth(), ds.getHeight()),
+                parentScrollPosition,
+                // The failed script, the location, the size and the scroll
+                // position, in addition to the borders.
+                new Borders(borders.left, borders.top,
+                        borders.roundTrips + 4));
+    }
+
+    private static int toInt(Object value) {
+        return Math.round(Float.valueOf(String.valueOf(value)));
+    }
+
+    /**
+     * Gets the frame's left and top border widths, each using a separate
+     * driver call.
+     */
+    private static Borders getBorders(Logger logger, WebElement reference) {
+        int[] roundTrips = new int[1];
+        int left = getBorderWidth(logger, reference, "border-left-width",
+                roundTrips);
+        int top = getBorderWidth(logger, reference, "border-top-width",
+                roundTrips);
+        return new Borders(left, top, roundTrips[0]);
+    }
+
+    private static int getBorderWidth(Logger logger, WebElement reference,
+                                      String propStyle, int[] roundTrips) {
+        String propValue;
         try {
-            logger.verbose("Get frame border top width...");
+            logger.verbose(String.format("Get frame %s...", propStyle));
             if (reference instanceof EyesRemoteWebElement) {
                 logger.verbose(
                         "Frame reference is an EyesWebElement, using 'getComputedStyle'.");
                 try {
+                    ++roundTrips[0];
                     propValue = ((EyesRemoteWebElement) reference)
-                            .getComputedStyle("border-top-width");
+                            .getComputedStyle(propStyle);
                 } catch (WebDriverException e) {
                     logger.verbose(String.format("Using getComputedStyle failed: %s.",
                             e.getMessage()));
                     logger.verbose("Using getCssValue...");
-                    propValue = reference.getCssValue("border-top-width");
+                    ++roundTrips[0];
+                    propValue = reference.getCssValue(propStyle);
                 }
                 logger.verbose("Done!");
             } else {
                 // OK, this is weird, we got an element which is not
                 // EyesWebElement?? Log it and try to move on.
-                logger.verbose("Frame reference is not an EyesWebElement " +
-                        "(when trying to get border-top-width) " +
+                logger.verbose("Frame reference is not an EyesWebElement! " +
+                        "(when trying to get " + propStyle + ") " +
                         "Element's class: " +
                         reference.getClass().getName());
                 logger.verbose("Using getCssValue...");
-                propValue = reference.getCssValue("border-top-width");
+                ++roundTrips[0];
+                propValue = reference.getCssValue(propStyle);
                 logger.verbose("Done!");
             }
-            topBorderWidth = Math.round(Float.valueOf(
+            // Convert border value from the format "2px" to int.
+            int borderWidth = Math.round(Float.valueOf(
                     propValue.trim().replace("px", "")
             ));
-            logger.verbose("border-top-width: " + topBorderWidth);
+            logger.verbose(propStyle + ": " + borderWidth);
+            return borderWidth;
         } catch (WebDriverException e) {
             logger.verbose(String.format(
-                    "Couldn't get frame border-top-width: %s. Falling back to default",
-                    e.getMessage()));
-            topBorderWidth = 0; 
+                "Couldn't get frame %s: %s. Falling back to default",
+                    propStyle, e.getMessage()));
+            return 0;
         }
-
-        Location frameLocation = new Location(location);
-        frameLocation.offset(leftBorderWidth, topBorderWidth);
-        this.location = frameLocation;
-        logger.verbose("Done!");
     }
 
     public WebElement getReference() {
@@ -144,15 +254,47 @@ public class Frame {
         return id;
     }
 
+    /**
+     * @return A copy of the frame's location (frames are shared between
+     * frame chains, so they must not be modified).
+     */
     public Location getLocation() {
-        return location;
+        return new Location(location);
     }
 
     public RectangleSize getSize() {
         return size;
     }
 
+    /**
+     * @return A copy of the scroll position of the frame's parent.
+     */
     public Location getParentScrollPosition() {
-        return parentScrollPosition;
+        return new Location(parentScrollPosition);
+    }
+
+    /**
+     * @return The number of driver calls made for getting the frame's
+     * metadata when it was created (0 if it was created without driver
+     * calls, e.g., as a copy).
+     */
+    public int getMetadataRoundTrips() {
+        return metadataRoundTrips;
+    }
+
+    /**
+     * The border widths of a frame, and the number of driver calls made for
+     * getting them.
+     */
+    private static class Borders {
+        private final int left;
+        private final int top;
+        private final int roundTrips;
+
+        public Borders(int left, int top, int roundTrips) {
+            this.left = left;
+            this.top = top;
+            this.roundTrips = roundTrips;
+        }
     }
 }
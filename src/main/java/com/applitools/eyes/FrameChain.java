@@ -6,15 +6,39 @@ package com.applitools.eyes;
 import com.applitools.utils.ArgumentGuard;
 
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Represents a path to a frame, including their location and scroll.
+ * <p>
+ * The frames are kept in a persistent (immutable) linked list, from the
+ * current frame to the outermost one. Pushing and popping frames only
+ * replace the head of the list, so copies share their frames with the
+ * original chain: copying is O(1), and neither copying nor comparing
+ * chains access the driver.
  */
 public class FrameChain implements Iterable<Frame>{
-    private final Logger logger;
-    private List<Frame> frames;
+
+    /**
+     * An immutable node of the list of frames.
+     */
+    private static final class Node {
+        private final Frame frame;
+        // The node of the frame's parent frame, or null for the outermost
+        // frame.
+        private final Node parent;
+        // The number of frames from the outermost frame to this one.
+        private final int size;
+
+        public Node(Frame frame, Node parent) {
+            this.frame = frame;
+            this.parent = parent;
+            this.size = (parent == null) ? 1 : parent.size + 1;
+        }
+    }
+
+    // The current frame's node, or null if the chain is empty.
+    private Node current;
 
     /**
      * Compares two frame chains.
@@ -24,22 +48,21 @@ public class FrameChain implements Iterable<Frame>{
      *         false otherwise.
      */
     public static boolean isSameFrameChain(FrameChain c1, FrameChain c2) {
-        int lc1 = c1.frames.size();
-        int lc2 = c2.frames.size();
+        Node n1 = c1.current;
+        Node n2 = c2.current;
 
         // different chains size means different frames
-        if (lc1 != lc2) {
+        if (c1.size() != c2.size()) {
             return false;
         }
 
-        Iterator<Frame> c1Iterator = c1.iterator();
-        Iterator<Frame> c2Iterator = c2.iterator();
-
-        //noinspection ForLoopReplaceableByForEach
-        for(int i = 0; i<lc1; ++i) {
-            if (!c1Iterator.next().getId().equals(c2Iterator.next().getId())) {
+        // Once the chains share a node, the rest of the frames are shared.
+        while (n1 != n2) {
+            if (!n1.frame.getId().equals(n2.frame.getId())) {
                 return false;
             }
+            n1 = n1.parent;
+            n2 = n2.parent;
         }
 
         return true;
@@ -51,12 +74,12 @@ public class FrameChain implements Iterable<Frame>{
      */
     public FrameChain(Logger logger) {
         ArgumentGuard.notNull(logger, "logger");
-        this.logger = logger;
-        frames = new LinkedList<Frame>();
+        current = null;
     }
 
     /**
-     * Creates a frame chain which is a copy of the current frame.
+     * Creates a frame chain which is a copy of the current frame. The
+     * frames are shared, so this is O(1).
      * @param logger A Logger instance.
      * @param other A frame chain from which the current frame chain will be
      *              created.
@@ -64,17 +87,7 @@ public class FrameChain implements Iterable<Frame>{
     public FrameChain(Logger logger, FrameChain other) {
         ArgumentGuard.notNull(logger, "logger");
         ArgumentGuard.notNull(other, "other");
-        this.logger = logger;
-        logger.verbose(String.format("Frame chain copy constructor (size %d)",
-                        other.size()));
-        frames = new LinkedList<Frame>();
-        for (Frame otherFrame: other.frames) {
-            frames.add(new Frame(logger, otherFrame.getReference(),
-                    otherFrame.getId(), otherFrame.getLocation(),
-                    otherFrame.getSize(),
-                    otherFrame.getParentScrollPosition()));
-        }
-        logger.verbose("Done!");
+        current = other.current;
     }
 
     /**
@@ -82,14 +95,14 @@ public class FrameChain implements Iterable<Frame>{
      * @return The number of frames in the chain.
      */
     public int size() {
-        return frames.size();
+        return (current == null) ? 0 : current.size;
     }
 
     /**
      * Removes all current frames in the frame chain.
      */
     public void clear() {
-        frames.clear();
+        current = null;
     }
 
     /**
@@ -97,7 +110,10 @@ public class FrameChain implements Iterable<Frame>{
      * back to the parent of the current frame
      */
     public void pop() {
-        frames.remove(frames.size() - 1);
+        if (current == null) {
+            throw new NoFramesException("No frames in frame chain");
+        }
+        current = current.parent;
     }
 
     /**
@@ -105,7 +121,8 @@ public class FrameChain implements Iterable<Frame>{
      * @param frame The frame to be added.
      */
     public void push(Frame frame) {
-        frames.add(frame);
+        ArgumentGuard.notNull(frame, "frame");
+        current = new Node(frame, current);
     }
 
     /**
@@ -116,8 +133,8 @@ public class FrameChain implements Iterable<Frame>{
     public Location getCurrentFrameOffset() {
         Location result = new Location(0 ,0);
 
-        for (Frame frame: frames) {
-            result.offset(frame.getLocation());
+        for (Node node = current; node != null; node = node.parent) {
+            result.offset(node.frame.getLocation());
         }
 
         return result;
@@ -129,10 +146,14 @@ public class FrameChain implements Iterable<Frame>{
      */
     @SuppressWarnings("UnusedDeclaration")
     public Location getDefaultContentScrollPosition() {
-        if (frames.size() == 0) {
+        if (current == null) {
             throw new NoFramesException("No frames in frame chain");
         }
-        return new Location(frames.get(0).getParentScrollPosition());
+        Node outermost = current;
+        while (outermost.parent != null) {
+            outermost = outermost.parent;
+        }
+        return new Location(outermost.frame.getParentScrollPosition());
     }
 
     /**
@@ -140,25 +161,44 @@ public class FrameChain implements Iterable<Frame>{
      * @return The size of the current frame.
      */
     public RectangleSize getCurrentFrameSize() {
-        logger.verbose("getCurrentFrameSize()");
-        RectangleSize result = frames.get(frames.size()-1).getSize();
-        logger.verbose("Done!");
-        return result;
+        if (current == null) {
+            throw new NoFramesException("No frames in frame chain");
+        }
+        return current.frame.getSize();
+    }
+
+    /**
+     *
+     * @return The frames in the chain, from the outermost frame to the
+     * current one.
+     */
+    public Frame[] toArray() {
+        Frame[] frames = new Frame[size()];
+        int i = frames.length;
+        for (Node node = current; node != null; node = node.parent) {
+            frames[--i] = node.frame;
+        }
+        return frames;
     }
 
     /**
      *
-     * @return An iterator to go over the frames in the chain.
+     * @return An iterator to go over the frames in the chain, from the
+     * outermost frame to the current one.
      */
     public Iterator<Frame> iterator() {
+        final Frame[] frames = toArray();
         return new Iterator<Frame>() {
-            Iterator<Frame> framesIterator = frames.iterator();
+            int index = 0;
             public boolean hasNext() {
-                return framesIterator.hasNext();
+                return index < frames.length;
             }
 
             public Frame next() {
-                return framesIterator.next();
+                if (index >= frames.length) {
+                    throw new NoSuchElementException();
+                }
+                return frames[index++];
             }
 
             public void remove() {
@@ -0,0 +1,251 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.RemoteWebElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The frames of a single document (the driver's current context): their
+ * names, ids, locations, sizes and borders, in the order used for switching
+ * by index, together with the document's scroll position. It is read in a
+ * single script call, so switching into a frame by name, id or index
+ * doesn't require finding the frame element and then getting its metadata.
+ * <p>
+ * If mutation tracking is enabled, the frames are cached, and reading the
+ * index again only returns the scroll position as long as the document
+ * didn't change (see {@link EyesWebDriver#setGeometryMutationTracking}).
+ * Immutable.
+ */
+class FrameIndex {
+
+    // Arguments: the mutation count and the token of the cached index (-1
+    // and null if there's none), and whether to track mutations. Returns
+    // the scroll position, the mutation count (-1 if not tracked) and the
+    // document's token, followed by the frame element, name, id, location,
+    // size and left and top border widths of each frame, unless the cached
+    // index is still valid.
+    private static final String JS_GET_FRAME_INDEX =
+            "var knownCount = arguments[0]; var knownToken = arguments[1];" +
+            " var doc = document.documentElement;" +
+            " var x = window.scrollX; var y = window.scrollY;" +
+            " if (x === undefined || y === undefined) {" +
+                " x = (window.pageXOffset || doc.scrollLeft)" +
+                    " - (doc.clientLeft || 0);" +
+                " y = (window.pageYOffset || doc.scrollTop)" +
+                    " - (doc.clientTop || 0);" +
+            "}" +
+            " var count = -1;" +
+            " if (arguments[2]) {" +
+                EyesWebDriver.JS_TRACK_MUTATIONS +
+                " if (window.__applitoolsMutationCount !== undefined) {" +
+                    " count = window.__applitoolsMutationCount;" +
+                "}" +
+            "}" +
+            " if (count >= 0 && count === knownCount" +
+                " && document.__applitoolsFrameIndexToken === knownToken) {" +
+                " return [x, y, count, knownToken];" +
+            "}" +
+            " var token = new Date().getTime() + '-' + Math.random();" +
+            " document.__applitoolsFrameIndexToken = token;" +
+            " var result = [x, y, count, token];" +
+            " var frames = document.querySelectorAll('frame, iframe');" +
+            " for (var i = 0; i < frames.length; ++i) {" +
+                " var frame = frames[i];" +
+                " var r = frame.getBoundingClientRect();" +
+                " var style = window.getComputedStyle" +
+                    " ? window.getComputedStyle(frame, null) : null;" +
+                " var borderLeft = style" +
+                    " ? style.getPropertyValue('border-left-width')" +
+                    " : frame.currentStyle.borderLeftWidth;" +
+                " var borderTop = style" +
+                    " ? style.getPropertyValue('border-top-width')" +
+                    " : frame.currentStyle.borderTopWidth;" +
+                " result.push(frame, frame.name || '', frame.id || ''," +
+                    " r.left + x, r.top + y, r.width, r.height," +
+                    " parseFloat(borderLeft) || 0," +
+                    " parseFloat(borderTop) || 0);" +
+            "}" +
+            " return result;";
+
+    private static final int HEADER_SIZE = 4;
+    private static final int ENTRY_SIZE = 9;
+
+    private final Logger logger;
+    private final List<Entry> entries;
+    private final Location scrollPosition;
+    private final long mutationCount;
+    private final String token;
+
+    private FrameIndex(Logger logger, List<Entry> entries,
+                       Location scrollPosition, long mutationCount,
+                       String token) {
+        this.logger = logger;
+        this.entries = entries;
+        this.scrollPosition = scrollPosition;
+        this.mutationCount = mutationCount;
+        this.token = token;
+    }
+
+    /**
+     * Reads the frame index of the driver's current context.
+     *
+     * @param logger A Logger instance.
+     * @param driver The driver whose current context is indexed.
+     * @param cached The cached index of the current context, or
+     *               {@code null} if there's none.
+     * @param trackMutations Whether to track the document's mutations, so
+     *                       the returned index can be cached.
+     * @return The index of the current context, which reuses the cached
+     * frames if the document didn't change, or {@code null} if the index
+     * couldn't be read (e.g., the driver doesn't support Javascript).
+     */
+    public static FrameIndex read(Logger logger, EyesWebDriver driver,
+                                  FrameIndex cached, boolean trackMutations) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(driver, "driver");
+
+        logger.verbose("Getting frame index...");
+        long knownCount = cached != null ? cached.mutationCount : -1;
+        String knownToken = cached != null ? cached.token : null;
+        List<?> values;
+        try {
+            Object result = driver.executeScript(JS_GET_FRAME_INDEX,
+                    knownCount, knownToken, trackMutations);
+            if (!(result instanceof List)) {
+                logger.verbose(String.format("Unexpected result: %s",
+                        result));
+                return null;
+            }
+            values = (List<?>) result;
+        } catch (WebDriverException e) {
+            logger.verbose(String.format("Getting frame index failed: %s",
+                    e.getMessage()));
+            return null;
+        }
+        if (values.size() < HEADER_SIZE
+                || (values.size() - HEADER_SIZE) % ENTRY_SIZE != 0) {
+            logger.verbose(String.format("Unexpected result size: %d",
+                    values.size()));
+            return null;
+        }
+
+        Location scrollPosition = new Location(toInt(values.get(0)),
+                toInt(values.get(1)));
+        long mutationCount = (values.get(2) instanceof Number)
+                ? ((Number) values.get(2)).longValue() : -1;
+        String token = String.valueOf(values.get(3));
+        if (values.size() == HEADER_SIZE && cached != null
+                && mutationCount >= 0 && mutationCount == knownCount
+                && token.equals(knownToken)) {
+            logger.verbose("Done! Document unchanged, using cached frames.");
+            return new FrameIndex(logger, cached.entries, scrollPosition,
+                    mutationCount, token);
+        }
+
+        List<Entry> entries = new ArrayList<Entry>(
+                (values.size() - HEADER_SIZE) / ENTRY_SIZE);
+        for (int i = HEADER_SIZE; i < values.size(); i += ENTRY_SIZE) {
+            Object element = values.get(i);
+            if (!(element instanceof RemoteWebElement)) {
+                logger.verbose(String.format(
+                        "Frame element is not a RemoteWebElement: %s",
+                        element));
+                return null;
+            }
+            entries.add(new Entry(new EyesRemoteWebElement(logger, driver,
+                    (RemoteWebElement) element),
+                    String.valueOf(values.get(i + 1)),
+                    String.valueOf(values.get(i + 2)),
+                    new Location(toInt(values.get(i + 3)),
+                            toInt(values.get(i + 4))),
+                    new RectangleSize(toInt(values.get(i + 5)),
+                            toInt(values.get(i + 6))),
+                    toInt(values.get(i + 7)), toInt(values.get(i + 8))));
+        }
+        logger.verbose(String.format("Done! %d frames.", entries.size()));
+        return new FrameIndex(logger, Collections.unmodifiableList(entries),
+                scrollPosition, mutationCount, token);
+    }
+
+    private static int toInt(Object value) {
+        return Math.round(Float.valueOf(String.valueOf(value)));
+    }
+
+    /**
+     * @return Whether the index can be cached (i.e., the document's
+     * mutations are tracked).
+     */
+    public boolean isCacheable() {
+        return mutationCount >= 0;
+    }
+
+    /**
+     * @param index The index of the frame, as used for switching to a frame
+     *              by index.
+     * @return The frame, or {@code null} if there's no such frame.
+     */
+    public Frame getFrame(int index) {
+        if (index < 0 || index >= entries.size()) {
+            return null;
+        }
+        return entries.get(index).toFrame(logger, scrollPosition);
+    }
+
+    /**
+     * @param nameOrId The name or id of the frame. Frames are first matched
+     *                 by name, and only then by id.
+     * @return The first matching frame, or {@code null} if there's none.
+     */
+    public Frame getFrame(String nameOrId) {
+        ArgumentGuard.notNull(nameOrId, "nameOrId");
+        for (Entry entry : entries) {
+            if (nameOrId.equals(entry.name)) {
+                return entry.toFrame(logger, scrollPosition);
+            }
+        }
+        for (Entry entry : entries) {
+            if (nameOrId.equals(entry.id)) {
+                return entry.toFrame(logger, scrollPosition);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A frame in the index.
+     */
+    private static class Entry {
+        private final EyesRemoteWebElement reference;
+        private final String name;
+        private final String id;
+        private final Location location;
+        private final RectangleSize size;
+        private final int leftBorderWidth;
+        private final int topBorderWidth;
+
+        public Entry(EyesRemoteWebElement reference, String name, String id,
+                     Location location, RectangleSize size,
+                     int leftBorderWidth, int topBorderWidth) {
+            this.reference = reference;
+            this.name = name;
+            this.id = id;
+            this.location = location;
+            this.size = size;
+            this.leftBorderWidth = leftBorderWidth;
+            this.topBorderWidth = topBorderWidth;
+        }
+
+        public Frame toFrame(Logger logger, Location parentScrollPosition) {
+            return new Frame(logger, reference, reference.getId(), location,
+                    size, parentScrollPosition, leftBorderWidth,
+                    topBorderWidth);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+import org.openqa.selenium.Capabilities;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Takes a screenshot of the entire page in a single driver command, for
+ * drivers which support it.
+ */
+class FullPageScreenshotTaker extends RestClient {
+
+    /**
+     * The driver command used for taking the screenshot.
+     */
+    public enum Protocol {
+        /**
+         * Firefox (geckodriver) full page screenshot endpoint.
+         */
+        FIREFOX(null),
+
+        /**
+         * Chrome (chromedriver) DevTools {@code Page.captureScreenshot} with
+         * {@code captureBeyondViewport}, through the driver's CDP endpoint.
+         */
+        CHROME("goog/cdp/execute"),
+
+        /**
+         * Edge (msedgedriver) DevTools {@code Page.captureScreenshot}, as
+         * for Chrome, through msedgedriver's own CDP endpoint.
+         */
+        EDGE("ms/cdp/execute");
+
+        private final String cdpCommandPath;
+
+        Protocol(String cdpCommandPath) {
+            this.cdpCommandPath = cdpCommandPath;
+        }
+
+        /**
+         * @return The session relative path of the driver's CDP endpoint,
+         * or {@code null} if the protocol doesn't use CDP.
+         */
+        public String getCdpCommandPath() {
+            return cdpCommandPath;
+        }
+    }
+
+    private final Protocol protocol;
+
+    /**
+     * @param logger          A Logger instance.
+     * @param driverServerUri The URI of the driver's server.
+     * @param driverSessionId The driver's session ID.
+     * @param protocol        The command to use for taking screenshots.
+     */
+    public FullPageScreenshotTaker(Logger logger, URI driverServerUri,
+                                   String driverSessionId,
+                                   Protocol protocol) {
+        super(logger, driverServerUri);
+
+        ArgumentGuard.notNullOrEmpty(driverSessionId, "driverSessionId");
+        ArgumentGuard.notNull(protocol, "protocol");
+
+        this.protocol = protocol;
+        endPoint = endPoint.path("/session/" + driverSessionId);
+    }
+
+    /**
+     * @param capabilities The capabilities of the driver's session.
+     * @return The protocol to use for full page screenshots, or {@code null}
+     * if the driver doesn't advertise any.
+     */
+    public static Protocol detectProtocol(Capabilities capabilities) {
+        if (capabilities == null) {
+            return null;
+        }
+        Map<String, ?> capabilitiesMap = capabilities.asMap();
+        for (String capabilityName : capabilitiesMap.keySet()) {
+            // Only geckodriver (rather than the legacy Firefox driver)
+            // returns "moz:" capabilities.
+            if (capabilityName.startsWith("moz:")) {
+                return Protocol.FIREFOX;
+            }
+        }
+        // Checking Edge first, since the CDP endpoint of msedgedriver is not
+        // the same as chromedriver's.
+        if (capabilitiesMap.containsKey("ms:edgeOptions")) {
+            return Protocol.EDGE;
+        }
+        if (capabilitiesMap.containsKey("goog:chromeOptions")) {
+            return Protocol.CHROME;
+        }
+        return null;
+    }
+
+    /**
+     * @return The protocol used for taking screenshots.
+     */
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * @param entirePageSize The size of the entire page.
+     * @return The screenshot of the entire page, as base64 PNG.
+     */
+    public String getScreenshot(RectangleSize entirePageSize) {
+        ArgumentGuard.notNull(entirePageSize, "entirePageSize");
+
+        // Only OK is acceptable for us.
+        List<Integer> validStatusCodes = new ArrayList<Integer>(1);
+        validStatusCodes.add(Response.Status.OK.getStatusCode());
+
+        Response response;
+        if (protocol == Protocol.FIREFOX) {
+            response = endPoint.path("moz/screenshot/full")
+                    .request(MediaType.APPLICATION_JSON_TYPE).get();
+            WebDriverScreenshot screenshot = parseResponseWithJsonData(
+                    response, validStatusCodes, WebDriverScreenshot.class);
+            return screenshot.getValue();
+        }
+
+        Map<String, Object> clip = new HashMap<String, Object>();
+        clip.put("x", 0);
+        clip.put("y", 0);
+        clip.put("width", entirePageSize.getWidth());
+        clip.put("height", entirePageSize.getHeight());
+        clip.put("scale", 1);
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("format", "png");
+        params.put("captureBeyondViewport", true);
+        params.put("clip", clip);
+        Map<String, Object> command = new HashMap<String, Object>();
+        command.put("cmd", "Page.captureScreenshot");
+        command.put("params", params);
+
+        response = endPoint.path(protocol.getCdpCommandPath())
+                .request(MediaType.APPLICATION_JSON_TYPE)
+                .post(Entity.json(command));
+        CdpCommandResponse result = parseResponseWithJsonData(response,
+                validStatusCodes, CdpCommandResponse.class);
+        if (result.getValue() == null || result.getValue().get("data") == null) {
+            throw new EyesException(
+                    "Page.captureScreenshot returned no data!");
+        }
+        return String.valueOf(result.getValue().get("data"));
+    }
+}
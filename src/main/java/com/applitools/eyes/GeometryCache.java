@@ -0,0 +1,105 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+/**
+ * Caches the default content's viewport size and entire page size, so they
+ * are not re-read from the browser while the page is known to be unchanged
+ * (e.g., for repeated checks of the same page).
+ * <p>
+ * The cache is dropped on explicit invalidation: on navigation, window
+ * switches, window resizes, and user actions performed through the driver.
+ * If mutation tracking is enabled, the page geometry also carries counters
+ * installed in the page: the mutation count (document changes and window
+ * resizes) and the resize count (window resizes only), which can be used
+ * for additionally validating the cache against changes the driver can't
+ * see.
+ */
+class GeometryCache {
+
+    private final Logger logger;
+    private RectangleSize viewportSize;
+    private RectangleSize entirePageSize;
+    private PageGeometry pageGeometry;
+
+    public GeometryCache(Logger logger) {
+        ArgumentGuard.notNull(logger, "logger");
+        this.logger = logger;
+        invalidate();
+    }
+
+    /**
+     * @return The last page geometry read in the default content, if the
+     * document's mutations were tracked when it was read, or {@code null}
+     * otherwise. Its mutation count should be passed to the page geometry
+     * script, so the document's sizes are only read if the document
+     * changed.
+     */
+    public PageGeometry getPageGeometry() {
+        return pageGeometry;
+    }
+
+    /**
+     * @param pageGeometry A page geometry read in the default content.
+     */
+    public void setPageGeometry(PageGeometry pageGeometry) {
+        ArgumentGuard.notNull(pageGeometry, "pageGeometry");
+        if (pageGeometry.getViewportSize() != null) {
+            viewportSize = pageGeometry.getViewportSize();
+        }
+        entirePageSize = pageGeometry.getEntirePageSize();
+        this.pageGeometry = (pageGeometry.getMutationCount() >= 0)
+                ? pageGeometry : null;
+    }
+
+    /**
+     * @return The cached viewport size of the default content, or
+     * {@code null} if there's none.
+     */
+    public RectangleSize getViewportSize() {
+        if (viewportSize != null) {
+            logger.verbose(String.format("Viewport size cache hit: %s",
+                    viewportSize));
+        }
+        return viewportSize;
+    }
+
+    /**
+     * @param resizeCount The current resize count of the default content's
+     *                    window, or a negative value if unknown.
+     * @return The cached viewport size of the default content, or
+     * {@code null} if there's none, or if the window was resized since it
+     * was cached.
+     */
+    public RectangleSize getViewportSize(long resizeCount) {
+        if (pageGeometry == null || resizeCount < 0
+                || resizeCount != pageGeometry.getResizeCount()) {
+            return null;
+        }
+        return getViewportSize();
+    }
+
+    /**
+     * @return The cached entire page size of the default content, or
+     * {@code null} if there's none.
+     */
+    public RectangleSize getEntirePageSize() {
+        if (entirePageSize != null) {
+            logger.verbose(String.format("Entire page size cache hit: %s",
+                    entirePageSize));
+        }
+        return entirePageSize;
+    }
+
+    /**
+     * Drops all cached values.
+     */
+    public void invalidate() {
+        viewportSize = null;
+        entirePageSize = null;
+        pageGeometry = null;
+    }
+}
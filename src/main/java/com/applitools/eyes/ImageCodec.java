@@ -0,0 +1,38 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import java.awt.image.BufferedImage;
+import java.io.OutputStream;
+
+/**
+ * Decodes and encodes screenshots. The same codec is used concurrently by
+ * the test thread and by the threads stitching screenshot parts, so
+ * implementations must be thread safe.
+ *
+ * @see ScreenshotCodec
+ */
+public interface ImageCodec {
+
+    /**
+     * @param image64     The image as base64 PNG.
+     * @param destination An image which is no longer used (e.g., a
+     *                    previously decoded screenshot), whose pixels may
+     *                    be overwritten by the decoded image, or
+     *                    {@code null}.
+     * @return The decoded image (possibly {@code destination}).
+     * @throws EyesException If the image could not be decoded.
+     */
+    BufferedImage decode(CharSequence image64, BufferedImage destination);
+
+    /**
+     * Writes an image as PNG.
+     *
+     * @param image  The image to encode.
+     * @param output The stream to which the PNG is written. It is not
+     *               closed.
+     * @throws EyesException If the image could not be encoded or written.
+     */
+    void encode(BufferedImage image, OutputStream output);
+}
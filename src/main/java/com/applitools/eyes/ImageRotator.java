@@ -0,0 +1,314 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+import com.applitools.utils.ImageUtils;
+
+import java.awt.image.*;
+import java.util.Arrays;
+
+/**
+ * Rotates images by multiples of 90 degrees by moving the pixels directly
+ * between the rasters' data arrays. The pixels are visited in square tiles,
+ * so both the rows read and the columns written by a tile stay in the
+ * cache. Images of other layouts (or rotations by other angles) are
+ * rotated using {@link ImageUtils}.
+ */
+class ImageRotator {
+
+    // 64x64 pixels of 4 bytes each are 16KB, so the source and destination
+    // of a tile fit in the L1 cache.
+    private static final int TILE_SIZE = 64;
+
+    private ImageRotator() {}
+
+    /**
+     * @param degrees The degrees by which to rotate (positive values =
+     *                clockwise rotation).
+     * @return The equivalent clockwise rotation between 0 and 359 degrees.
+     */
+    public static int normalizeDegrees(int degrees) {
+        return ((degrees % 360) + 360) % 360;
+    }
+
+    /**
+     * Rotates an image.
+     *
+     * @param image       The image to rotate.
+     * @param degrees     The degrees by which to rotate (positive values =
+     *                    clockwise rotation).
+     * @param destination An image which is no longer used, into which the
+     *                    rotated image is written if it has the rotated
+     *                    image's size and layout, or {@code null}. When
+     *                    rotating by 180 degrees, this can be
+     *                    {@code image} itself (rotation in place).
+     * @return The rotated image ({@code image} itself if no rotation is
+     * required).
+     */
+    public static BufferedImage rotate(BufferedImage image, int degrees,
+                                       BufferedImage destination) {
+        ArgumentGuard.notNull(image, "image");
+        int clockwise = normalizeDegrees(degrees);
+        if (clockwise == 0) {
+            return image;
+        }
+        if (clockwise % 90 != 0
+                || image.getType() == BufferedImage.TYPE_CUSTOM
+                || image.getColorModel() instanceof IndexColorModel
+                || !canRotateInto(image.getRaster(), image.getRaster())) {
+            return ImageUtils.rotateImage(image, degrees);
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        if (clockwise == 180 && destination == image) {
+            rotateInPlace(image.getRaster());
+            return image;
+        }
+        int rotatedWidth = clockwise == 180 ? width : height;
+        int rotatedHeight = clockwise == 180 ? height : width;
+        if (destination == null || destination == image
+                || destination.getType() != image.getType()
+                || destination.getWidth() != rotatedWidth
+                || destination.getHeight() != rotatedHeight
+                || !canRotateInto(image.getRaster(),
+                        destination.getRaster())) {
+            destination = new BufferedImage(rotatedWidth, rotatedHeight,
+                    image.getType());
+        }
+        rotateInto(image.getRaster(), 0, 0, width, height, clockwise,
+                destination.getRaster(), 0, 0);
+        return destination;
+    }
+
+    /**
+     * @return Whether {@link #rotateInto} supports the given rasters, i.e.,
+     * they share the same interleaved byte or packed int layout and are
+     * backed by arrays.
+     */
+    public static boolean canRotateInto(Raster src, WritableRaster dst) {
+        if (src.getDataBuffer() instanceof DataBufferInt
+                && dst.getDataBuffer() instanceof DataBufferInt) {
+            return src.getSampleModel() instanceof SinglePixelPackedSampleModel
+                    && dst.getSampleModel()
+                            instanceof SinglePixelPackedSampleModel
+                    && Arrays.equals(((SinglePixelPackedSampleModel)
+                            src.getSampleModel()).getBitMasks(),
+                    ((SinglePixelPackedSampleModel) dst.getSampleModel())
+                            .getBitMasks());
+        }
+        if (src.getDataBuffer() instanceof DataBufferByte
+                && dst.getDataBuffer() instanceof DataBufferByte
+                && src.getSampleModel() instanceof PixelInterleavedSampleModel
+                && dst.getSampleModel()
+                        instanceof PixelInterleavedSampleModel) {
+            ComponentSampleModel srcModel =
+                    (ComponentSampleModel) src.getSampleModel();
+            ComponentSampleModel dstModel =
+                    (ComponentSampleModel) dst.getSampleModel();
+            int pixelStride = srcModel.getPixelStride();
+            int[] bandOffsets = srcModel.getBandOffsets();
+            // Each pixel must occupy exactly "pixelStride" bytes, laid out
+            // the same way in both rasters.
+            if (dstModel.getPixelStride() != pixelStride
+                    || bandOffsets.length != pixelStride
+                    || !Arrays.equals(bandOffsets,
+                            dstModel.getBandOffsets())) {
+                return false;
+            }
+            for (int bandOffset : bandOffsets) {
+                if (bandOffset >= pixelStride) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Rotates a rectangle of a raster, and writes it into another raster.
+     * The rasters must be supported by {@link #canRotateInto}.
+     *
+     * @param src       The raster to rotate.
+     * @param srcX      The left of the rectangle to rotate.
+     * @param srcY      The top of the rectangle to rotate.
+     * @param width     The width of the rectangle to rotate.
+     * @param height    The height of the rectangle to rotate.
+     * @param clockwise The clockwise rotation: 90, 180 or 270.
+     * @param dst       The raster to which the rotated rectangle is written.
+     * @param dstX      The left of the rotated rectangle in {@code dst}.
+     * @param dstY      The top of the rotated rectangle in {@code dst}.
+     */
+    public static void rotateInto(Raster src, int srcX, int srcY, int width,
+                                  int height, int clockwise,
+                                  WritableRaster dst, int dstX, int dstY) {
+        int pixelStride;
+        int srcStride;
+        int dstStride;
+        if (src.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+            pixelStride = 1;
+            srcStride = ((SinglePixelPackedSampleModel) src.getSampleModel())
+                    .getScanlineStride();
+            dstStride = ((SinglePixelPackedSampleModel) dst.getSampleModel())
+                    .getScanlineStride();
+        } else {
+            ComponentSampleModel srcModel =
+                    (ComponentSampleModel) src.getSampleModel();
+            pixelStride = srcModel.getPixelStride();
+            srcStride = srcModel.getScanlineStride();
+            dstStride = ((ComponentSampleModel) dst.getSampleModel())
+                    .getScanlineStride();
+        }
+
+        int srcIndex = src.getDataBuffer().getOffset()
+                + (srcY - src.getSampleModelTranslateY()) * srcStride
+                + (srcX - src.getSampleModelTranslateX()) * pixelStride;
+        int dstLeft = dstX - dst.getSampleModelTranslateX();
+        int dstTop = dstY - dst.getSampleModelTranslateY();
+
+        // The index in dst of the source rectangle's top/left pixel, and
+        // the steps in dst when moving right/down in the source.
+        int dstIndex;
+        int xStep;
+        int yStep;
+        switch (clockwise) {
+            case 90:
+                dstIndex = dstTop * dstStride
+                        + (dstLeft + height - 1) * pixelStride;
+                xStep = dstStride;
+                yStep = -pixelStride;
+                break;
+            case 180:
+                dstIndex = (dstTop + height - 1) * dstStride
+                        + (dstLeft + width - 1) * pixelStride;
+                xStep = -pixelStride;
+                yStep = -dstStride;
+                break;
+            case 270:
+                dstIndex = (dstTop + width - 1) * dstStride
+                        + dstLeft * pixelStride;
+                xStep = -dstStride;
+                yStep = pixelStride;
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported rotation: " + clockwise);
+        }
+        dstIndex += dst.getDataBuffer().getOffset();
+
+        if (src.getDataBuffer() instanceof DataBufferInt) {
+            rotateInts(((DataBufferInt) src.getDataBuffer()).getData(),
+                    srcIndex, srcStride,
+                    ((DataBufferInt) dst.getDataBuffer()).getData(),
+                    dstIndex, xStep, yStep, width, height);
+        } else {
+            rotateBytes(((DataBufferByte) src.getDataBuffer()).getData(),
+                    srcIndex, srcStride, pixelStride,
+                    ((DataBufferByte) dst.getDataBuffer()).getData(),
+                    dstIndex, xStep, yStep, width, height);
+        }
+    }
+
+    private static void rotateInts(int[] src, int srcIndex, int srcStride,
+                                   int[] dst, int dstIndex, int xStep,
+                                   int yStep, int width, int height) {
+        for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+            int tileBottom = Math.min(tileY + TILE_SIZE, height);
+            for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+                int tileRight = Math.min(tileX + TILE_SIZE, width);
+                for (int y = tileY; y < tileBottom; ++y) {
+                    int s = srcIndex + y * srcStride + tileX;
+                    int d = dstIndex + y * yStep + tileX * xStep;
+                    for (int x = tileX; x < tileRight; ++x) {
+                        dst[d] = src[s++];
+                        d += xStep;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void rotateBytes(byte[] src, int srcIndex, int srcStride,
+                                    int pixelStride, byte[] dst,
+                                    int dstIndex, int xStep, int yStep,
+                                    int width, int height) {
+        for (int tileY = 0; tileY < height; tileY += TILE_SIZE) {
+            int tileBottom = Math.min(tileY + TILE_SIZE, height);
+            for (int tileX = 0; tileX < width; tileX += TILE_SIZE) {
+                int tileRight = Math.min(tileX + TILE_SIZE, width);
+                for (int y = tileY; y < tileBottom; ++y) {
+                    int s = srcIndex + y * srcStride + tileX * pixelStride;
+                    int d = dstIndex + y * yStep + tileX * xStep;
+                    // Screenshots are almost always 3 or 4 bytes per pixel,
+                    // so those are unrolled.
+                    if (pixelStride == 3) {
+                        for (int x = tileX; x < tileRight; ++x) {
+                            dst[d] = src[s];
+                            dst[d + 1] = src[s + 1];
+                            dst[d + 2] = src[s + 2];
+                            s += 3;
+                            d += xStep;
+                        }
+                    } else if (pixelStride == 4) {
+                        for (int x = tileX; x < tileRight; ++x) {
+                            dst[d] = src[s];
+                            dst[d + 1] = src[s + 1];
+                            dst[d + 2] = src[s + 2];
+                            dst[d + 3] = src[s + 3];
+                            s += 4;
+                            d += xStep;
+                        }
+                    } else {
+                        for (int x = tileX; x < tileRight; ++x) {
+                            for (int b = 0; b < pixelStride; ++b) {
+                                dst[d + b] = src[s++];
+                            }
+                            d += xStep;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rotates a raster by 180 degrees in place, by swapping each pixel with
+     * its mirror pixel.
+     */
+    private static void rotateInPlace(WritableRaster raster) {
+        int width = raster.getWidth();
+        int height = raster.getHeight();
+        // Swapping rows from both ends (and reversing each), until they
+        // meet. The middle row (if any) is only reversed.
+        int[] top = null;
+        int[] bottom = null;
+        for (int y = 0; y <= (height - 1) / 2; ++y) {
+            int mirrorY = height - 1 - y;
+            top = raster.getPixels(0, y, width, 1, top);
+            bottom = raster.getPixels(0, mirrorY, width, 1, bottom);
+            reversePixels(top, raster.getNumBands());
+            if (mirrorY != y) {
+                reversePixels(bottom, raster.getNumBands());
+                raster.setPixels(0, y, width, 1, bottom);
+            }
+            raster.setPixels(0, mirrorY, width, 1, top);
+        }
+    }
+
+    private static void reversePixels(int[] samples, int bands) {
+        int left = 0;
+        int right = samples.length - bands;
+        while (left < right) {
+            for (int b = 0; b < bands; ++b) {
+                int swap = samples[left + b];
+                samples[left + b] = samples[right + b];
+                samples[right + b] = swap;
+            }
+            left += bands;
+            right -= bands;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.awt.image.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Creates images whose pixels are stored outside the Java heap. The
+ * images are regular {@link BufferedImage} instances (of type
+ * {@link BufferedImage#TYPE_CUSTOM}), so they can be cropped, encoded and
+ * uploaded like any other image without being copied to the heap.
+ */
+class OffHeapImages {
+
+    private static final String TEMP_FILE_PREFIX = "eyes-stitched-";
+    private static final String TEMP_FILE_SUFFIX = ".raw";
+
+    private OffHeapImages() {}
+
+    /**
+     * Creates an image with the same layout as images of the given type.
+     *
+     * @param logger  A Logger instance.
+     * @param width   The width of the image.
+     * @param height  The height of the image.
+     * @param type    The type of image whose layout should be used (e.g.,
+     *                {@link BufferedImage#TYPE_3BYTE_BGR}).
+     * @param storage Where the pixels should be stored.
+     * @return The created image, or {@code null} if the type or the size
+     * of the image are not supported for the given storage, in which case
+     * the caller should create the image on the heap.
+     */
+    public static BufferedImage create(Logger logger, int width, int height,
+                                       int type,
+                                       StitchedImageStorage storage) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.greaterThanZero(width, "width");
+        ArgumentGuard.greaterThanZero(height, "height");
+        ArgumentGuard.notNull(storage, "storage");
+
+        if (storage == StitchedImageStorage.HEAP
+                || type == BufferedImage.TYPE_CUSTOM) {
+            return null;
+        }
+
+        // Using the layout of a (tiny) image of the requested type, so the
+        // created image is compatible with the parts stitched into it.
+        BufferedImage template = new BufferedImage(1, 1, type);
+        ColorModel colorModel = template.getColorModel();
+        SampleModel sampleModel = template.getSampleModel()
+                .createCompatibleSampleModel(width, height);
+
+        int dataType = sampleModel.getDataType();
+        int elementSize;
+        if (dataType == DataBuffer.TYPE_BYTE
+                && sampleModel instanceof PixelInterleavedSampleModel) {
+            elementSize = 1;
+        } else if (dataType == DataBuffer.TYPE_INT
+                && sampleModel instanceof SinglePixelPackedSampleModel) {
+            elementSize = 4;
+        } else {
+            logger.verbose(String.format(
+                    "Image type %d can't be stored off heap.", type));
+            return null;
+        }
+
+        long elementCount = (long) sampleModel.getNumDataElements()
+                * width * height;
+        if (elementCount * elementSize > Integer.MAX_VALUE) {
+            logger.verbose(String.format(
+                    "Image of %dx%d is too large to be stored off heap.",
+                    width, height));
+            return null;
+        }
+        int byteCount = (int) (elementCount * elementSize);
+
+        logger.verbose(String.format("Allocating %d bytes (%s)...",
+                byteCount, storage));
+        ByteBuffer buffer;
+        if (storage == StitchedImageStorage.MEMORY_MAPPED) {
+            buffer = mapTempFile(byteCount);
+        } else {
+            buffer = ByteBuffer.allocateDirect(byteCount);
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        logger.verbose("Done!");
+
+        DataBuffer dataBuffer = new ByteBufferDataBuffer(dataType, buffer,
+                (int) elementCount);
+        WritableRaster raster =
+                Raster.createWritableRaster(sampleModel, dataBuffer, null);
+        return new BufferedImage(colorModel, raster,
+                colorModel.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * Maps a new temporary file of the given size. The file is deleted as
+     * soon as possible; the mapping itself is released once the buffer is
+     * garbage collected.
+     */
+    private static ByteBuffer mapTempFile(int size) {
+        try {
+            File file = File.createTempFile(TEMP_FILE_PREFIX,
+                    TEMP_FILE_SUFFIX);
+            RandomAccessFile randomAccessFile =
+                    new RandomAccessFile(file, "rw");
+            try {
+                randomAccessFile.setLength(size);
+                return randomAccessFile.getChannel().map(
+                        FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                randomAccessFile.close();
+                // Some platforms don't allow deleting a mapped file.
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new EyesException(
+                    "Failed to map a temporary file for the image!", e);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+/**
+ * A snapshot of the geometry of the current context's document (sizes,
+ * scroll position and viewport), as returned by a single script call.
+ */
+public class PageGeometry {
+    private final int documentScrollWidth;
+    private final int bodyScrollWidth;
+    private final int documentClientWidth;
+    private final int documentClientHeight;
+    private final int bodyClientHeight;
+    private final int documentScrollHeight;
+    private final int bodyScrollHeight;
+    private final Location scrollPosition;
+    private final RectangleSize viewportSize;
+    private final double devicePixelRatio;
+    private final long mutationCount;
+    private final long resizeCount;
+
+    /**
+     * @param documentScrollWidth  The document element's scroll width.
+     * @param bodyScrollWidth      The body's scroll width.
+     * @param documentClientWidth  The document element's client width.
+     * @param documentClientHeight The document element's client height.
+     * @param bodyClientHeight     The body's client height.
+     * @param documentScrollHeight The document element's scroll height.
+     * @param bodyScrollHeight     The body's scroll height.
+     * @param scrollPosition       The scroll position of the context.
+     * @param viewportSize         The viewport size of the context.
+     * @param devicePixelRatio     The ratio between device pixels and CSS
+     *                             pixels.
+     */
+    public PageGeometry(int documentScrollWidth, int bodyScrollWidth,
+                        int documentClientWidth, int documentClientHeight,
+                        int bodyClientHeight, int documentScrollHeight,
+                        int bodyScrollHeight, Location scrollPosition,
+                        RectangleSize viewportSize, double devicePixelRatio) {
+        this(documentScrollWidth, bodyScrollWidth, documentClientWidth,
+                documentClientHeight, bodyClientHeight, documentScrollHeight,
+                bodyScrollHeight, scrollPosition, viewportSize,
+                devicePixelRatio, -1, -1);
+    }
+
+    /**
+     * @param documentScrollWidth  The document element's scroll width.
+     * @param bodyScrollWidth      The body's scroll width.
+     * @param documentClientWidth  The document element's client width.
+     * @param documentClientHeight The document element's client height.
+     * @param bodyClientHeight     The body's client height.
+     * @param documentScrollHeight The document element's scroll height.
+     * @param bodyScrollHeight     The body's scroll height.
+     * @param scrollPosition       The scroll position of the context.
+     * @param viewportSize         The viewport size of the context.
+     * @param devicePixelRatio     The ratio between device pixels and CSS
+     *                             pixels.
+     * @param mutationCount        The document's mutation count when the
+     *                             geometry was read, or -1 if not tracked.
+     * @param resizeCount          The window's resize count when the
+     *                             geometry was read, or -1 if not tracked.
+     */
+    public PageGeometry(int documentScrollWidth, int bodyScrollWidth,
+                        int documentClientWidth, int documentClientHeight,
+                        int bodyClientHeight, int documentScrollHeight,
+                        int bodyScrollHeight, Location scrollPosition,
+                        RectangleSize viewportSize, double devicePixelRatio,
+                        long mutationCount, long resizeCount) {
+        this.documentScrollWidth = documentScrollWidth;
+        this.bodyScrollWidth = bodyScrollWidth;
+        this.documentClientWidth = documentClientWidth;
+        this.documentClientHeight = documentClientHeight;
+        this.bodyClientHeight = bodyClientHeight;
+        this.documentScrollHeight = documentScrollHeight;
+        this.bodyScrollHeight = bodyScrollHeight;
+        this.scrollPosition = new Location(scrollPosition);
+        this.viewportSize = viewportSize;
+        this.devicePixelRatio = devicePixelRatio;
+        this.mutationCount = mutationCount;
+        this.resizeCount = resizeCount;
+    }
+
+    /**
+     * Creates a geometry with the same document sizes as this one, for when
+     * the document is known to be unchanged.
+     *
+     * @param scrollPosition   The current scroll position.
+     * @param viewportSize     The current viewport size.
+     * @param devicePixelRatio The current device pixel ratio.
+     * @param resizeCount      The current resize count.
+     * @return The geometry with the updated values.
+     */
+    PageGeometry withCurrentState(Location scrollPosition,
+                                  RectangleSize viewportSize,
+                                  double devicePixelRatio,
+                                  long resizeCount) {
+        return new PageGeometry(documentScrollWidth, bodyScrollWidth,
+                documentClientWidth, documentClientHeight, bodyClientHeight,
+                documentScrollHeight, bodyScrollHeight, scrollPosition,
+                viewportSize, devicePixelRatio, mutationCount, resizeCount);
+    }
+
+    /**
+     *
+     * @return The size of the entire page based on the scroll width/height.
+     */
+    public RectangleSize getEntirePageSize() {
+        int totalWidth = Math.max(documentScrollWidth, bodyScrollWidth);
+
+        // IMPORTANT: Notice there's a major difference between scrollWidth
+        // and scrollHeight. While scrollWidth is the maximum between an
+        // element's width and its content width, scrollHeight might be
+        // smaller (!) than the clientHeight, which is why we take the
+        // maximum between them.
+        int maxDocumentElementHeight =
+                Math.max(documentClientHeight, documentScrollHeight);
+        int maxBodyHeight = Math.max(bodyClientHeight, bodyScrollHeight);
+        int totalHeight = Math.max(maxDocumentElementHeight, maxBodyHeight);
+
+        return new RectangleSize(totalWidth, totalHeight);
+    }
+
+    /**
+     *
+     * @return The document element's client size.
+     */
+    public RectangleSize getClientSize() {
+        return new RectangleSize(documentClientWidth, documentClientHeight);
+    }
+
+    /**
+     *
+     * @return A copy of the scroll position of the context.
+     */
+    public Location getScrollPosition() {
+        return new Location(scrollPosition);
+    }
+
+    /**
+     *
+     * @return The viewport size of the context.
+     */
+    public RectangleSize getViewportSize() {
+        return viewportSize;
+    }
+
+    /**
+     *
+     * @return The ratio between device pixels and CSS pixels.
+     */
+    public double getDevicePixelRatio() {
+        return devicePixelRatio;
+    }
+
+    /**
+     *
+     * @return The document's mutation count when the geometry was read, or
+     * -1 if mutations are not tracked.
+     */
+    public long getMutationCount() {
+        return mutationCount;
+    }
+
+    /**
+     *
+     * @return The window's resize count when the geometry was read, or -1
+     * if resizes are not tracked.
+     */
+    public long getResizeCount() {
+        return resizeCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "PageGeometry(entire size: %s, scroll: %s, viewport: %s, " +
+                        "device pixel ratio: %s)", getEntirePageSize(),
+                scrollPosition, viewportSize, devicePixelRatio);
+    }
+}
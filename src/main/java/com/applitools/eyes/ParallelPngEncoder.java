@@ -0,0 +1,256 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes an entire image as an 8 bit RGB/RGBA PNG, splitting it into
+ * horizontal bands which are filtered and compressed in parallel. Each band
+ * is compressed as raw deflate data ending on a byte boundary (a sync
+ * flush), so the bands are simply concatenated into a single zlib stream,
+ * and the stream's checksum is combined from the checksums of the bands.
+ */
+class ParallelPngEncoder {
+
+    // Bands shorter than this aren't worth a task of their own.
+    static final int MIN_BAND_HEIGHT = 64;
+
+    private static final int ADLER_BASE = 65521;
+    private static final int DEFLATE_BUFFER_SIZE = 64 * 1024;
+
+    private ParallelPngEncoder() {}
+
+    /**
+     * @param height    The height of the image.
+     * @param maxBands  The maximum number of bands.
+     * @return The number of bands into which an image of the given height
+     * is split.
+     */
+    public static int getBandCount(int height, int maxBands) {
+        return Math.max(1, Math.min(maxBands, height / MIN_BAND_HEIGHT));
+    }
+
+    /**
+     * Writes an image as PNG.
+     *
+     * @param image       The image to encode.
+     * @param output      The stream to which the PNG is written. It is not
+     *                    closed.
+     * @param compression The compression level of the image data.
+     * @param executor    The executor on which the bands are encoded.
+     * @param bandCount   The number of bands into which the image is split.
+     * @throws IOException If writing to the output failed.
+     */
+    public static void encode(BufferedImage image, OutputStream output,
+                              PngCompression compression,
+                              ExecutorService executor, int bandCount)
+            throws IOException {
+        ArgumentGuard.notNull(image, "image");
+        ArgumentGuard.notNull(output, "output");
+        ArgumentGuard.notNull(compression, "compression");
+        ArgumentGuard.notNull(executor, "executor");
+        ArgumentGuard.greaterThanZero(bandCount, "bandCount");
+
+        int height = image.getHeight();
+        boolean hasAlpha = image.getColorModel().hasAlpha();
+        int bandHeight = (height + bandCount - 1) / bandCount;
+
+        List<Future<EncodedBand>> bands = new ArrayList<Future<EncodedBand>>();
+        for (int top = 0; top < height; top += bandHeight) {
+            int rowCount = Math.min(bandHeight, height - top);
+            bands.add(executor.submit(new BandEncoder(image, top, rowCount,
+                    top + rowCount == height, hasAlpha,
+                    compression.getDeflaterLevel())));
+        }
+
+        try {
+            StreamingPngEncoder.writeHeader(output, image.getWidth(), height,
+                    hasAlpha);
+            // Buffering, so each IDAT chunk is as large as possible.
+            OutputStream idatStream = new BufferedOutputStream(
+                    new StreamingPngEncoder.IdatOutputStream(output),
+                    StreamingPngEncoder.MAX_IDAT_SIZE);
+            idatStream.write(getZlibHeader(compression));
+            long adler = 1;
+            for (Future<EncodedBand> bandFuture : bands) {
+                EncodedBand band = getBand(bandFuture);
+                band.compressed.writeTo(idatStream);
+                adler = combineAdler32(adler, band.adler, band.length);
+            }
+            byte[] trailer = new byte[4];
+            StreamingPngEncoder.writeInt(trailer, 0, (int) adler);
+            idatStream.write(trailer);
+            idatStream.flush();
+
+            StreamingPngEncoder.writeChunk(output, "IEND", new byte[0], 0, 0);
+            output.flush();
+        } finally {
+            // Only has an effect if we failed before all bands were written.
+            for (Future<EncodedBand> bandFuture : bands) {
+                bandFuture.cancel(true);
+            }
+        }
+    }
+
+    private static EncodedBand getBand(Future<EncodedBand> bandFuture) {
+        try {
+            return bandFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EyesException("Interrupted while encoding PNG!", e);
+        } catch (ExecutionException e) {
+            throw new EyesException("Failed to encode PNG band!",
+                    e.getCause());
+        }
+    }
+
+    /**
+     * @return The zlib header (CMF and FLG bytes) for a 32K window, with a
+     * compression level hint matching the given compression.
+     */
+    private static byte[] getZlibHeader(PngCompression compression) {
+        switch (compression) {
+            case FASTEST:
+                return new byte[]{0x78, 0x01};
+            case SMALLEST:
+                return new byte[]{0x78, (byte) 0xDA};
+            default:
+                return new byte[]{0x78, (byte) 0x9C};
+        }
+    }
+
+    /**
+     * @return The Adler-32 checksum of two consecutive sequences, given the
+     * checksum of each (as in zlib's {@code adler32_combine}).
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        long remainder = length2 % ADLER_BASE;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (remainder * sum1) % ADLER_BASE;
+        sum1 += (adler2 & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF)
+                + ADLER_BASE - remainder;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (ADLER_BASE << 1)) {
+            sum2 -= (ADLER_BASE << 1);
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | (sum2 << 16);
+    }
+
+    private static class EncodedBand {
+        private final ByteArrayOutputStream compressed;
+        // The checksum and length of the filtered (uncompressed) data.
+        private final long adler;
+        private final long length;
+
+        public EncodedBand(ByteArrayOutputStream compressed, long adler,
+                           long length) {
+            this.compressed = compressed;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Filters and compresses the rows of a single band.
+     */
+    private static class BandEncoder implements Callable<EncodedBand> {
+        private final BufferedImage image;
+        private final int top;
+        private final int rowCount;
+        private final boolean isLast;
+        private final boolean hasAlpha;
+        private final int deflaterLevel;
+
+        public BandEncoder(BufferedImage image, int top, int rowCount,
+                           boolean isLast, boolean hasAlpha,
+                           int deflaterLevel) {
+            this.image = image;
+            this.top = top;
+            this.rowCount = rowCount;
+            this.isLast = isLast;
+            this.hasAlpha = hasAlpha;
+            this.deflaterLevel = deflaterLevel;
+        }
+
+        public EncodedBand call() {
+            PngRowFilter rowFilter = new PngRowFilter(image.getWidth(),
+                    hasAlpha ? 4 : 3);
+            byte[] currentRow = new byte[rowFilter.getRowLength()];
+            byte[] previousRow = new byte[rowFilter.getRowLength()];
+            // Filters refer to the row above, so the first row of a band
+            // needs the last row of the previous band.
+            if (top > 0) {
+                rowFilter.readRow(image, top - 1, previousRow);
+            }
+
+            Adler32 adler = new Adler32();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+                    rowCount * rowFilter.getRowLength() / 4);
+            byte[] buffer = new byte[DEFLATE_BUFFER_SIZE];
+            Deflater deflater = new Deflater(deflaterLevel, true);
+            try {
+                for (int y = top; y < top + rowCount; ++y) {
+                    rowFilter.readRow(image, y, currentRow);
+                    byte[] filteredRow = rowFilter.filter(currentRow,
+                            y > 0 ? previousRow : null);
+                    adler.update(filteredRow, 0, filteredRow.length);
+                    // The filtered row is reused for the next row, so it
+                    // must be entirely consumed.
+                    deflater.setInput(filteredRow);
+                    while (!deflater.needsInput()) {
+                        int length = deflater.deflate(buffer);
+                        compressed.write(buffer, 0, length);
+                    }
+
+                    byte[] swap = previousRow;
+                    previousRow = currentRow;
+                    currentRow = swap;
+                }
+
+                if (isLast) {
+                    deflater.finish();
+                    while (!deflater.finished()) {
+                        int length = deflater.deflate(buffer);
+                        compressed.write(buffer, 0, length);
+                    }
+                } else {
+                    int length;
+                    do {
+                        length = deflater.deflate(buffer, 0, buffer.length,
+                                Deflater.SYNC_FLUSH);
+                        compressed.write(buffer, 0, length);
+                    } while (length == buffer.length);
+                }
+            } finally {
+                deflater.end();
+            }
+            return new EncodedBand(compressed, adler.getValue(),
+                    (long) rowCount * (rowFilter.getRowLength() + 1));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import java.util.zip.Deflater;
+
+/**
+ * Represents the trade-off between encoding speed and size when encoding
+ * screenshots as PNG.
+ */
+public enum PngCompression {
+    /**
+     * The fastest compression. Screenshots are typically somewhat larger.
+     */
+    FASTEST(Deflater.BEST_SPEED),
+
+    /**
+     * The default zlib compression level.
+     */
+    DEFAULT(Deflater.DEFAULT_COMPRESSION),
+
+    /**
+     * The smallest output, at a considerably higher CPU cost.
+     */
+    SMALLEST(Deflater.BEST_COMPRESSION);
+
+    private final int deflaterLevel;
+
+    PngCompression(int deflaterLevel) {
+        this.deflaterLevel = deflaterLevel;
+    }
+
+    int getDeflaterLevel() {
+        return deflaterLevel;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import java.awt.image.*;
+
+/**
+ * Reads image rows as 8 bit RGB/RGBA PNG scanlines, and filters them.
+ * Rows of the common screenshot image types are read directly from the
+ * image's data array, other images are read through
+ * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+ * <p>
+ * Not thread safe: each thread should use its own filter.
+ */
+class PngRowFilter {
+
+    static final int FILTER_NONE = 0;
+    static final int FILTER_SUB = 1;
+    static final int FILTER_UP = 2;
+    static final int FILTER_AVERAGE = 3;
+    static final int FILTER_PAETH = 4;
+
+    private final int width;
+    private final int bytesPerPixel;
+    private final int[] argbRow;
+    private final byte[][] filteredRows;
+    private final long[] sums;
+
+    /**
+     * @param width         The width of the image.
+     * @param bytesPerPixel 3 for RGB, 4 for RGBA.
+     */
+    public PngRowFilter(int width, int bytesPerPixel) {
+        this.width = width;
+        this.bytesPerPixel = bytesPerPixel;
+        argbRow = new int[width];
+        filteredRows = new byte[FILTER_PAETH + 1][width * bytesPerPixel + 1];
+        for (int filter = FILTER_NONE; filter <= FILTER_PAETH; ++filter) {
+            filteredRows[filter][0] = (byte) filter;
+        }
+        sums = new long[FILTER_PAETH + 1];
+    }
+
+    /**
+     * @return The number of bytes in a row, before filtering.
+     */
+    public int getRowLength() {
+        return width * bytesPerPixel;
+    }
+
+    /**
+     * Reads a row of the image as RGB/RGBA bytes.
+     *
+     * @param source The image.
+     * @param y      The row to read.
+     * @param row    The array to which the row is written.
+     */
+    public void readRow(BufferedImage source, int y, byte[] row) {
+        WritableRaster raster = source.getRaster();
+        DataBuffer dataBuffer = raster.getDataBuffer();
+        int x = -raster.getSampleModelTranslateX();
+        int rasterY = y - raster.getSampleModelTranslateY();
+
+        switch (source.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                if (dataBuffer instanceof DataBufferInt) {
+                    int offset = dataBuffer.getOffset()
+                            + ((SinglePixelPackedSampleModel)
+                            raster.getSampleModel()).getOffset(x, rasterY);
+                    writeArgbRow(((DataBufferInt) dataBuffer).getData(),
+                            offset, source.getType()
+                                    == BufferedImage.TYPE_INT_RGB, row);
+                    return;
+                }
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                if (dataBuffer instanceof DataBufferByte) {
+                    ComponentSampleModel sampleModel =
+                            (ComponentSampleModel) raster.getSampleModel();
+                    // Not using getOffset, which includes the offset of
+                    // the first band.
+                    int offset = dataBuffer.getOffset()
+                            + rasterY * sampleModel.getScanlineStride()
+                            + x * sampleModel.getPixelStride();
+                    writeComponentRow(((DataBufferByte) dataBuffer).getData(),
+                            offset, sampleModel.getPixelStride(),
+                            sampleModel.getBandOffsets(), row);
+                    return;
+                }
+                break;
+        }
+
+        source.getRGB(0, y, width, 1, argbRow, 0, width);
+        writeArgbRow(argbRow, 0, false, row);
+    }
+
+    private void writeArgbRow(int[] pixels, int offset, boolean opaque,
+                              byte[] row) {
+        int i = 0;
+        int end = offset + width;
+        for (int p = offset; p < end; ++p) {
+            int argb = pixels[p];
+            row[i++] = (byte) (argb >> 16);
+            row[i++] = (byte) (argb >> 8);
+            row[i++] = (byte) argb;
+            if (bytesPerPixel == 4) {
+                row[i++] = opaque ? (byte) 0xFF : (byte) (argb >>> 24);
+            }
+        }
+    }
+
+    private void writeComponentRow(byte[] data, int offset, int pixelStride,
+                                   int[] bandOffsets, byte[] row) {
+        int red = offset + bandOffsets[0];
+        int green = offset + bandOffsets[1];
+        int blue = offset + bandOffsets[2];
+        boolean hasAlpha = bandOffsets.length > 3;
+        int alpha = hasAlpha ? offset + bandOffsets[3] : 0;
+        int i = 0;
+        for (int p = 0; p < width; ++p) {
+            int step = p * pixelStride;
+            row[i++] = data[red + step];
+            row[i++] = data[green + step];
+            row[i++] = data[blue + step];
+            if (bytesPerPixel == 4) {
+                row[i++] = hasAlpha ? data[alpha + step] : (byte) 0xFF;
+            }
+        }
+    }
+
+    /**
+     * Filters a row with each of the filter types, and returns the one with
+     * the minimal sum of absolute differences (the heuristic recommended by
+     * the PNG specification).
+     *
+     * @param row         The row to filter.
+     * @param previousRow The (unfiltered) row above it, or {@code null} for
+     *                    the first row of the image.
+     * @return The filter type byte followed by the filtered row. The array
+     * is reused by the next call.
+     */
+    public byte[] filter(byte[] row, byte[] previousRow) {
+        int length = row.length;
+        for (int filter = FILTER_NONE; filter <= FILTER_PAETH; ++filter) {
+            sums[filter] = 0;
+        }
+        for (int i = 0; i < length; ++i) {
+            int raw = row[i] & 0xFF;
+            int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+            int up = previousRow != null ? previousRow[i] & 0xFF : 0;
+            int upLeft = (previousRow != null && i >= bytesPerPixel)
+                    ? previousRow[i - bytesPerPixel] & 0xFF : 0;
+
+            byte none = (byte) raw;
+            byte sub = (byte) (raw - left);
+            byte upFiltered = (byte) (raw - up);
+            byte average = (byte) (raw - ((left + up) >> 1));
+            byte paeth = (byte) (raw - paethPredictor(left, up, upLeft));
+
+            filteredRows[FILTER_NONE][i + 1] = none;
+            filteredRows[FILTER_SUB][i + 1] = sub;
+            filteredRows[FILTER_UP][i + 1] = upFiltered;
+            filteredRows[FILTER_AVERAGE][i + 1] = average;
+            filteredRows[FILTER_PAETH][i + 1] = paeth;
+
+            // Treating the filtered bytes as signed values.
+            sums[FILTER_NONE] += Math.abs(none);
+            sums[FILTER_SUB] += Math.abs(sub);
+            sums[FILTER_UP] += Math.abs(upFiltered);
+            sums[FILTER_AVERAGE] += Math.abs(average);
+            sums[FILTER_PAETH] += Math.abs(paeth);
+        }
+
+        int bestFilter = FILTER_NONE;
+        for (int filter = FILTER_SUB; filter <= FILTER_PAETH; ++filter) {
+            if (sums[filter] < sums[bestFilter]) {
+                bestFilter = filter;
+            }
+        }
+        return filteredRows[bestFilter];
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        if (pb <= pc) {
+            return b;
+        }
+        return c;
+    }
+}
@@ -0,0 +1,11 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+/**
+ * A base class for position related memento instances. This is intentionally
+ * not an interface, since the mementos might vary in their interfaces.
+ */
+public abstract class PositionMemento {
+}
@@ -0,0 +1,44 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+/**
+ * Encapsulates page/element positioning, e.g., how the visible part of the
+ * current context is moved when stitching.
+ */
+public interface PositionProvider {
+    /**
+     * @return The current position of the visible part of the content,
+     * once it settled.
+     */
+    Location getCurrentPosition();
+
+    /**
+     * Moves the visible part of the content to the given position.
+     * Notice the actual position might be different (e.g., when reaching
+     * the end of the content), use {@link #getCurrentPosition()} to get it.
+     * @param location The position to move to.
+     */
+    void setPosition(Location location);
+
+    /**
+     * @return The entire size of the content which can be positioned.
+     */
+    RectangleSize getEntireSize();
+
+    /**
+     * Get the current state of the position provider. This is different from
+     * {@link #getCurrentPosition()} in that the state of the position
+     * provider might include other data than just the coordinates.
+     * @return The current state of the position provider.
+     */
+    PositionMemento getState();
+
+    /**
+     * Restores the state of the position provider to the state provided as a
+     * parameter.
+     * @param state The state to restore to.
+     */
+    void restoreState(PositionMemento state);
+}
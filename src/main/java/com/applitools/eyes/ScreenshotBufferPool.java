@@ -0,0 +1,166 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.*;
+
+/**
+ * Keeps screenshot images which are no longer used, so the next screenshot
+ * of the same size can be decoded (or rotated) into them instead of
+ * allocating a new image. Within a session, captures usually have the same
+ * size, so steady-state captures don't allocate image buffers at all.
+ * <p>
+ * The memory held by all the pools in the JVM is capped (see
+ * {@link #setMaxPooledBytes(long)}); images released when the cap is
+ * reached are simply dropped. Pools which are no longer referenced (e.g.,
+ * of a driver which was discarded) don't count towards the cap. Only heap
+ * images backed by an array are pooled. Thread safe.
+ */
+class ScreenshotBufferPool {
+
+    // The maximum number of images of the same size kept by a single pool.
+    private static final int MAX_IMAGES_PER_SIZE = 4;
+
+    // All the pools which are still referenced. Also used as the lock for
+    // reading the pools' sizes.
+    private static final Map<ScreenshotBufferPool, Boolean> pools =
+            new WeakHashMap<ScreenshotBufferPool, Boolean>();
+    private static volatile long maxPooledBytes =
+            Runtime.getRuntime().maxMemory() / 8;
+
+    private final Map<Long, LinkedList<BufferedImage>> images;
+    private volatile long pooledBytes;
+
+    public ScreenshotBufferPool() {
+        images = new HashMap<Long, LinkedList<BufferedImage>>();
+        pooledBytes = 0;
+        synchronized (pools) {
+            pools.put(this, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * @return The maximum number of bytes held by all the pools in the JVM.
+     */
+    public static long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * @param maxBytes The maximum number of bytes held by all the pools in
+     *                 the JVM (0 disables pooling). Images which are
+     *                 already pooled are not dropped.
+     */
+    public static void setMaxPooledBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >= 0!");
+        }
+        maxPooledBytes = maxBytes;
+    }
+
+    /**
+     * @param width  The required width.
+     * @param height The required height.
+     * @return A pooled image of the given size (of any type), or
+     * {@code null} if there's none. The image is removed from the pool.
+     */
+    public synchronized BufferedImage acquire(int width, int height) {
+        LinkedList<BufferedImage> sameSize = images.get(getKey(width, height));
+        if (sameSize == null || sameSize.isEmpty()) {
+            return null;
+        }
+        BufferedImage image = sameSize.removeFirst();
+        pooledBytes -= getSizeInBytes(image);
+        return image;
+    }
+
+    /**
+     * Returns an image to the pool. The image must not be used by the
+     * caller afterwards.
+     *
+     * @param image The image, or {@code null} (in which case nothing is
+     *              done).
+     */
+    public synchronized void release(BufferedImage image) {
+        if (image == null) {
+            return;
+        }
+        long size = getSizeInBytes(image);
+        if (size == 0) {
+            return;
+        }
+
+        Long key = getKey(image.getWidth(), image.getHeight());
+        LinkedList<BufferedImage> sameSize = images.get(key);
+        if (sameSize == null) {
+            sameSize = new LinkedList<BufferedImage>();
+            images.put(key, sameSize);
+        }
+        if (sameSize.size() >= MAX_IMAGES_PER_SIZE) {
+            return;
+        }
+        // Releasing the same image twice would hand it out twice.
+        for (BufferedImage pooled : sameSize) {
+            if (pooled == image) {
+                return;
+            }
+        }
+        if (getTotalPooledBytes() + size > maxPooledBytes) {
+            return;
+        }
+        sameSize.addLast(image);
+        pooledBytes += size;
+    }
+
+    /**
+     * Drops all the images held by this pool.
+     */
+    public synchronized void clear() {
+        images.clear();
+        pooledBytes = 0;
+    }
+
+    /**
+     * @return The number of bytes held by all the pools in the JVM. Only
+     * approximate while other pools are being modified.
+     */
+    private static long getTotalPooledBytes() {
+        long total = 0;
+        synchronized (pools) {
+            for (ScreenshotBufferPool pool : pools.keySet()) {
+                total += pool.pooledBytes;
+            }
+        }
+        return total;
+    }
+
+    private static Long getKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @return The number of bytes held by the image's data buffer, or 0 if
+     * the image should not be pooled.
+     */
+    private static long getSizeInBytes(BufferedImage image) {
+        ArgumentGuard.notNull(image, "image");
+        if (image.getType() == BufferedImage.TYPE_CUSTOM) {
+            return 0;
+        }
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        if (buffer instanceof DataBufferInt) {
+            return (long) buffer.getSize() * buffer.getNumBanks() * 4;
+        }
+        if (buffer instanceof DataBufferByte) {
+            return (long) buffer.getSize() * buffer.getNumBanks();
+        }
+        return 0;
+    }
+}
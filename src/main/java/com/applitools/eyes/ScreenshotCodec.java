@@ -0,0 +1,134 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The default {@link ImageCodec}, tuned for screenshots. Base64 PNGs are
+ * decoded while the PNG reader consumes them (see
+ * {@link ScreenshotDecoder}), and images are encoded by filtering and
+ * compressing horizontal bands in parallel, reading the pixels directly
+ * from the image's data array when possible.
+ */
+public class ScreenshotCodec implements ImageCodec {
+
+    // How long an idle encoding thread is kept before it terminates.
+    private static final long ENCODING_THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    private final PngCompression compression;
+    private final int encodingThreads;
+    private final ThreadLocal<ScreenshotDecoder> decoders;
+
+    /**
+     * Creates a codec with the default compression, which encodes on as
+     * many threads as there are available processors.
+     */
+    public ScreenshotCodec() {
+        this(PngCompression.DEFAULT,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param compression     The trade-off between encoding speed and size.
+     * @param encodingThreads The maximum number of threads encoding a
+     *                        single image (the threads are shared by all
+     *                        codecs, and are limited to the number of
+     *                        available processors). If 1, images are
+     *                        encoded on the calling thread.
+     */
+    public ScreenshotCodec(PngCompression compression, int encodingThreads) {
+        ArgumentGuard.notNull(compression, "compression");
+        ArgumentGuard.greaterThanZero(encodingThreads, "encodingThreads");
+
+        this.compression = compression;
+        this.encodingThreads = encodingThreads;
+        decoders = new ThreadLocal<ScreenshotDecoder>() {
+            @Override
+            protected ScreenshotDecoder initialValue() {
+                return new ScreenshotDecoder();
+            }
+        };
+    }
+
+    /**
+     * @return The trade-off between encoding speed and size.
+     */
+    public PngCompression getCompression() {
+        return compression;
+    }
+
+    /**
+     * @return The maximum number of threads encoding a single image.
+     */
+    public int getEncodingThreads() {
+        return encodingThreads;
+    }
+
+    public BufferedImage decode(CharSequence image64,
+                                BufferedImage destination) {
+        return decoders.get().decode(image64, destination);
+    }
+
+    public void encode(BufferedImage image, OutputStream output) {
+        ArgumentGuard.notNull(image, "image");
+        ArgumentGuard.notNull(output, "output");
+
+        int bandCount = ParallelPngEncoder.getBandCount(image.getHeight(),
+                encodingThreads);
+        try {
+            if (bandCount > 1) {
+                ParallelPngEncoder.encode(image, output, compression,
+                        EncodingExecutorHolder.EXECUTOR, bandCount);
+            } else {
+                StreamingPngEncoder encoder = new StreamingPngEncoder(output,
+                        image.getWidth(), image.getHeight(),
+                        image.getColorModel().hasAlpha(), compression);
+                try {
+                    encoder.writeRows(image, 0, image.getHeight());
+                    encoder.finish();
+                } finally {
+                    encoder.abort();
+                }
+            }
+        } catch (IOException e) {
+            throw new EyesException("Failed to write image as PNG!", e);
+        }
+    }
+
+    /**
+     * The encoding threads, shared by all the codecs in the JVM. There are
+     * at most as many as the available processors, and they are daemon
+     * threads which terminate when idle, so codecs which are no longer used
+     * don't leave any threads behind. Initialized on first use.
+     */
+    private static class EncodingExecutorHolder {
+        private static final ExecutorService EXECUTOR;
+
+        static {
+            int threads = Runtime.getRuntime().availableProcessors();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+                    threads, ENCODING_THREAD_KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "eyes-png-encoding");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+}
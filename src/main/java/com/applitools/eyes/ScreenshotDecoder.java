@@ -0,0 +1,188 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * Decodes base64 PNG screenshots. The base64 characters are decoded while
+ * the PNG reader consumes them, so neither the decoded bytes nor a copy of
+ * the characters are ever held in memory. The pixels can also be decoded
+ * into an existing image, so consecutive screenshots of the same size
+ * reuse the same raster.
+ * <p>
+ * Not thread safe: each thread should use its own decoder.
+ */
+class ScreenshotDecoder {
+
+    private static final String BASE64_ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    private final ImageReader reader;
+
+    public ScreenshotDecoder() {
+        Iterator<ImageReader> readers =
+                ImageIO.getImageReadersByFormatName("png");
+        if (!readers.hasNext()) {
+            throw new EyesException("No PNG image reader available!");
+        }
+        reader = readers.next();
+    }
+
+    /**
+     * @param image64 The image as base64 PNG.
+     * @return The decoded image.
+     */
+    public BufferedImage decode(CharSequence image64) {
+        return decode(image64, null);
+    }
+
+    /**
+     * @param image64     The image as base64 PNG.
+     * @param destination An image which is no longer used (e.g., a
+     *                    previously decoded screenshot), or {@code null}.
+     * @return The decoded image. This is {@code destination} if the
+     * decoded image has the same size and layout, or a new image
+     * otherwise.
+     */
+    public BufferedImage decode(CharSequence image64,
+                                BufferedImage destination) {
+        ArgumentGuard.notNull(image64, "image64");
+
+        ImageInputStream input = new Base64ImageInputStream(image64);
+        try {
+            return decode(input, destination, null);
+        } catch (IOException e) {
+            throw new EyesException("Failed to decode screenshot!", e);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Nothing to release, the stream only wraps the characters.
+            }
+        }
+    }
+
+    /**
+     * Decodes a PNG image from a stream, into a pooled image if possible.
+     * The stream is read as the image is decoded, and only a small window
+     * of it is kept in memory (see {@link ForwardImageInputStream}).
+     *
+     * @param input The PNG image. The stream is not closed.
+     * @param pool  The pool from which an image of the decoded size is
+     *              taken, once the PNG header was read. If it can't be used,
+     *              it is returned to the pool.
+     * @return The decoded image.
+     * @throws IOException If reading the stream or decoding failed.
+     */
+    public BufferedImage decode(InputStream input, ScreenshotBufferPool pool)
+            throws IOException {
+        ArgumentGuard.notNull(input, "input");
+        ArgumentGuard.notNull(pool, "pool");
+
+        ImageInputStream imageInput = new ForwardImageInputStream(input);
+        try {
+            return decode(imageInput, null, pool);
+        } finally {
+            // Doesn't close the underlying stream.
+            imageInput.close();
+        }
+    }
+
+    private BufferedImage decode(ImageInputStream input,
+                                 BufferedImage destination,
+                                 ScreenshotBufferPool pool)
+            throws IOException {
+        try {
+            reader.setInput(input, true, true);
+            if (destination == null && pool != null) {
+                destination = pool.acquire(reader.getWidth(0),
+                        reader.getHeight(0));
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (destination != null && canDecodeInto(destination)) {
+                param.setDestination(destination);
+            } else if (pool != null) {
+                pool.release(destination);
+            }
+            return reader.read(0, param);
+        } finally {
+            reader.setInput(null);
+        }
+    }
+
+    /**
+     * Reads the size of a PNG image from its header, without decoding the
+     * image.
+     *
+     * @param image64 The image as base64 PNG.
+     * @return The size of the image, or {@code null} if the header could
+     * not be read.
+     */
+    public static RectangleSize getPngSize(CharSequence image64) {
+        // The signature (8 bytes), the IHDR chunk's length and type (8
+        // bytes), then the width and height (4 bytes each), i.e., the first
+        // 24 bytes, which are the first 32 base64 characters.
+        if (image64 == null || image64.length() < 32) {
+            return null;
+        }
+        byte[] header = new byte[24];
+        for (int i = 0; i < 8; ++i) {
+            int quantum = 0;
+            for (int j = 0; j < 4; ++j) {
+                int value = BASE64_ALPHABET.indexOf(image64.charAt(i * 4 + j));
+                if (value < 0) {
+                    return null;
+                }
+                quantum = (quantum << 6) | value;
+            }
+            header[i * 3] = (byte) (quantum >> 16);
+            header[i * 3 + 1] = (byte) (quantum >> 8);
+            header[i * 3 + 2] = (byte) quantum;
+        }
+        if (header[1] != 'P' || header[2] != 'N' || header[3] != 'G'
+                || header[12] != 'I' || header[13] != 'H'
+                || header[14] != 'D' || header[15] != 'R') {
+            return null;
+        }
+        return new RectangleSize(readInt(header, 16), readInt(header, 20));
+    }
+
+    private static int readInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFF) << 24)
+                | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8)
+                | (buffer[offset + 3] & 0xFF);
+    }
+
+    private boolean canDecodeInto(BufferedImage destination)
+            throws IOException {
+        if (destination.getWidth() != reader.getWidth(0)
+                || destination.getHeight() != reader.getHeight(0)) {
+            return false;
+        }
+        // Only reusing the direct color types, since the pixels are written
+        // as is (i.e., indexed images might have a different palette).
+        // The reader decodes into the first of its image types when no
+        // destination is given.
+        Iterator<ImageTypeSpecifier> types = reader.getImageTypes(0);
+        if (!types.hasNext()) {
+            return false;
+        }
+        int type = types.next().getBufferedImageType();
+        return (type == BufferedImage.TYPE_3BYTE_BGR
+                || type == BufferedImage.TYPE_4BYTE_ABGR)
+                && destination.getType() == type;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+import org.openqa.selenium.WebDriverException;
+
+/**
+ * The geometry of the driver's current context at the time a screenshot
+ * was taken: the frame chain, the size of the current frame (or of the
+ * entire page), the scroll position and the default content's viewport
+ * size. It is captured once per screenshot and shared by the screenshot's
+ * sub-screenshots, so those are created without any driver calls.
+ * Immutable.
+ */
+class ScreenshotGeometry {
+
+    private final FrameChain frameChain;
+    private final RectangleSize frameSize;
+    private final Location scrollPosition;
+    private final RectangleSize viewportSize;
+
+    /**
+     * @param frameChain     The frame chain of the context. It must not be
+     *                       modified afterwards.
+     * @param frameSize      The size of the current frame, or of the entire
+     *                       page if not inside a frame.
+     * @param scrollPosition The scroll position of the context.
+     * @param viewportSize   The viewport size of the default content, or
+     *                       {@code null} if unknown.
+     */
+    public ScreenshotGeometry(FrameChain frameChain, RectangleSize frameSize,
+                              Location scrollPosition,
+                              RectangleSize viewportSize) {
+        ArgumentGuard.notNull(frameChain, "frameChain");
+        ArgumentGuard.notNull(frameSize, "frameSize");
+        ArgumentGuard.notNull(scrollPosition, "scrollPosition");
+        this.frameChain = frameChain;
+        this.frameSize = frameSize;
+        this.scrollPosition = new Location(scrollPosition);
+        this.viewportSize = viewportSize;
+    }
+
+    /**
+     * Captures the geometry of the driver's current context. In the default
+     * content this is a single script call. Inside a frame, getting the
+     * default content's viewport size requires switching frames, so it is
+     * only done if required.
+     *
+     * @param logger            A Logger instance.
+     * @param driver            The driver whose context is captured.
+     * @param needsViewportSize Whether the default content's viewport size
+     *                          is required.
+     * @return The geometry of the current context.
+     */
+    public static ScreenshotGeometry capture(Logger logger,
+                                             EyesWebDriver driver,
+                                             boolean needsViewportSize) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(driver, "driver");
+
+        logger.verbose("Capturing screenshot geometry...");
+        FrameChain frameChain = driver.getFrameChain();
+        boolean isDefaultContent = frameChain.size() == 0;
+        // Getting the entire page size and the scroll position in a single
+        // call. This might throw an exception for applications which don't
+        // support Javascript (e.g., Appium). In that case we'll use the
+        // viewport size as the frame's size, and (0,0) as the scroll
+        // position.
+        PageGeometry pageGeometry;
+        try {
+            pageGeometry = driver.getPageGeometry();
+        } catch (WebDriverException e) {
+            pageGeometry = null;
+        }
+
+        RectangleSize viewportSize = null;
+        if (isDefaultContent && pageGeometry != null) {
+            viewportSize = pageGeometry.getViewportSize();
+        }
+        if (viewportSize == null
+                && (needsViewportSize || (isDefaultContent
+                        && pageGeometry == null))) {
+            viewportSize = driver.getDefaultContentViewportSize();
+        }
+
+        // If we're inside a frame, then the frame size is given by the frame
+        // chain. Otherwise, it's the size of the entire page.
+        RectangleSize frameSize;
+        if (!isDefaultContent) {
+            frameSize = frameChain.getCurrentFrameSize();
+        } else if (pageGeometry != null) {
+            frameSize = pageGeometry.getEntirePageSize();
+        } else {
+            frameSize = viewportSize;
+        }
+        Location scrollPosition = (pageGeometry != null)
+                ? pageGeometry.getScrollPosition() : new Location(0, 0);
+
+        ScreenshotGeometry result = new ScreenshotGeometry(frameChain,
+                frameSize, scrollPosition, viewportSize);
+        logger.verbose(String.format("Done! %s", result));
+        return result;
+    }
+
+    /**
+     * @return The frame chain of the context. Must not be modified.
+     */
+    public FrameChain getFrameChain() {
+        return frameChain;
+    }
+
+    /**
+     * @return The size of the current frame, or of the entire page if not
+     * inside a frame.
+     */
+    public RectangleSize getFrameSize() {
+        return frameSize;
+    }
+
+    /**
+     * @return A copy of the scroll position of the context.
+     */
+    public Location getScrollPosition() {
+        return new Location(scrollPosition);
+    }
+
+    /**
+     * @return The viewport size of the default content, or {@code null} if
+     * it wasn't captured.
+     */
+    public RectangleSize getViewportSize() {
+        return viewportSize;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "ScreenshotGeometry(frames: %d, frame size: %s, scroll: %s, " +
+                        "viewport: %s)", frameChain.size(), frameSize,
+                scrollPosition, viewportSize);
+    }
+}
@@ -5,37 +5,453 @@ package com.applitools.eyes;
 
 import com.applitools.utils.ArgumentGuard;
 
-import javax.ws.rs.core.MediaType;
-import javax.ws.rs.core.Response;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
 import java.net.URI;
-import java.util.ArrayList;
-import java.util.List;
+import java.net.URL;
 
-class ScreenshotTaker extends RestClient {
+/**
+ * Takes viewport screenshots by calling the driver server's screenshot
+ * command directly, rather than through the Selenium client. The JSON
+ * response is parsed while it is received, and the base64 screenshot in its
+ * "value" field is decoded straight into an image, so neither the response
+ * nor the screenshot's base64 string are ever held in memory.
+ * <p>
+ * Connections are kept alive and reused by {@link HttpURLConnection}'s
+ * connection pool, as long as each response is read to its end.
+ * <p>
+ * Not thread safe.
+ */
+class ScreenshotTaker {
+
+    private static final int CONNECT_TIMEOUT = 30 * 1000; // Milliseconds
+    // Taking a screenshot of a large page can be slow on some drivers.
+    private static final int READ_TIMEOUT = 5 * 60 * 1000; // Milliseconds
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // The maximal length of an error response included in an exception.
+    private static final int MAX_ERROR_LENGTH = 1024;
 
+    private final Logger logger;
+    private final URL screenshotUrl;
+    private final ScreenshotDecoder decoder;
+
+    /**
+     * @param logger          The logger to use.
+     * @param driverServerUri The URI of the driver server (e.g.,
+     *                        "http://localhost:4444/wd/hub").
+     * @param driverSessionId The driver's session ID.
+     */
     public ScreenshotTaker(Logger logger, URI driverServerUri,
                            String driverSessionId) {
-        super(logger, driverServerUri);
-
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(driverServerUri, "driverServerUri");
         ArgumentGuard.notNullOrEmpty(driverSessionId, "driverSessionId");
 
-        endPoint = endPoint.path("/session/" + driverSessionId +
-                "/screenshot");
+        this.logger = logger;
+        String serverUrl = driverServerUri.toString();
+        if (serverUrl.endsWith("/")) {
+            serverUrl = serverUrl.substring(0, serverUrl.length() - 1);
+        }
+        try {
+            screenshotUrl = new URL(serverUrl + "/session/"
+                    + driverSessionId + "/screenshot");
+        } catch (MalformedURLException e) {
+            throw new EyesException("Invalid driver server URI: "
+                    + driverServerUri, e);
+        }
+        decoder = new ScreenshotDecoder();
+    }
+
+    /**
+     * Takes a screenshot of the viewport.
+     *
+     * @param pool The pool from which the image into which the screenshot
+     *             is decoded is taken, if one of the screenshot's size is
+     *             available.
+     * @return The screenshot, as returned by the driver (i.e., not
+     * rotated).
+     */
+    public BufferedImage getScreenshot(ScreenshotBufferPool pool) {
+        ArgumentGuard.notNull(pool, "pool");
+
+        logger.verbose("ScreenshotTaker.getScreenshot()");
+        HttpURLConnection connection;
+        InputStream input;
+        try {
+            connection = (HttpURLConnection) screenshotUrl.openConnection();
+            connection.setConnectTimeout(CONNECT_TIMEOUT);
+            connection.setReadTimeout(READ_TIMEOUT);
+            connection.setRequestProperty("Accept", "application/json");
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new EyesException(String.format(
+                        "Screenshot request failed (%d): %s", status,
+                        readError(connection)));
+            }
+            input = connection.getInputStream();
+        } catch (IOException e) {
+            throw new EyesException("Screenshot request failed!", e);
+        }
+
+        try {
+            JsonReader json = new JsonReader(input);
+            seekValue(json);
+            BufferedImage screenshot = decoder.decode(
+                    new Base64StringInputStream(json), pool);
+            // Reading the rest of the response, so the connection can be
+            // reused.
+            json.skipToEnd();
+            logger.verbose("Done!");
+            return screenshot;
+        } catch (IOException e) {
+            throw new EyesException("Failed to read screenshot response!", e);
+        } finally {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Nothing to do, the connection is simply not reused.
+            }
+        }
+    }
+
+    /**
+     * Reads the response up to the first character of the top level
+     * "value" field's string.
+     */
+    private static void seekValue(JsonReader json) throws IOException {
+        json.expect('{');
+        while (true) {
+            int c = json.readNonWhitespace();
+            if (c == ',') {
+                continue;
+            }
+            if (c == '}' || c == -1) {
+                throw new EyesException("Screenshot response has no value!");
+            }
+            if (c != '"') {
+                throw new IOException("Invalid JSON response!");
+            }
+            String key = json.readString();
+            json.expect(':');
+            int first = json.readNonWhitespace();
+            if ("value".equals(key)) {
+                if (first != '"') {
+                    throw new EyesException(
+                            "Screenshot response value is not a string!");
+                }
+                return;
+            }
+            json.skipValue(first);
+        }
+    }
+
+    private static String readError(HttpURLConnection connection) {
+        InputStream error = connection.getErrorStream();
+        if (error == null) {
+            return "";
+        }
+        StringBuilder message = new StringBuilder();
+        try {
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = error.read(buffer)) != -1) {
+                    int remaining = MAX_ERROR_LENGTH - message.length();
+                    if (remaining > 0) {
+                        message.append(new String(buffer, 0,
+                                Math.min(length, remaining), "UTF-8"));
+                    }
+                }
+            } finally {
+                error.close();
+            }
+        } catch (IOException e) {
+            // Returning whatever we managed to read.
+        }
+        return message.toString();
+    }
+
+    /**
+     * A minimal pull reader of JSON bytes, which only supports what's
+     * needed for finding a field and skipping the others. Strings are read
+     * as bytes, which is enough for ASCII keys (non-ASCII strings are only
+     * skipped).
+     */
+    private static class JsonReader {
+        private final InputStream input;
+        private final byte[] buffer;
+        private int position;
+        private int limit;
+
+        public JsonReader(InputStream input) {
+            this.input = input;
+            buffer = new byte[BUFFER_SIZE];
+            position = 0;
+            limit = 0;
+        }
+
+        /**
+         * @return The next byte, or -1 at the end of the response.
+         */
+        public int read() throws IOException {
+            if (position == limit) {
+                limit = input.read(buffer, 0, buffer.length);
+                position = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return -1;
+                }
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        /**
+         * @return The next byte which is not whitespace, or -1 at the end of
+         * the response.
+         */
+        public int readNonWhitespace() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (c == ' ' || c == '\t' || c == '\n' || c == '\r');
+            return c;
+        }
+
+        public void expect(char expected) throws IOException {
+            if (readNonWhitespace() != expected) {
+                throw new IOException("Invalid JSON response, expected '"
+                        + expected + "'!");
+            }
+        }
+
+        /**
+         * Reads a string whose opening quote was already read.
+         */
+        public String readString() throws IOException {
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new IOException("Unterminated JSON string!");
+                }
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\') {
+                    c = read();
+                }
+                value.append((char) c);
+            }
+        }
+
+        /**
+         * Skips a value, given its first byte (which was already read).
+         */
+        public void skipValue(int first) throws IOException {
+            if (first == '"') {
+                skipString();
+                return;
+            }
+            if (first != '{' && first != '[') {
+                // A number, true, false or null.
+                while (true) {
+                    int c = read();
+                    if (c == -1) {
+                        return;
+                    }
+                    if (c == ',' || c == '}' || c == ']') {
+                        // The delimiter belongs to the enclosing object.
+                        --position;
+                        return;
+                    }
+                }
+            }
+            int depth = 1;
+            while (depth > 0) {
+                int c = read();
+                if (c == -1) {
+                    throw new IOException("Unterminated JSON value!");
+                }
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    ++depth;
+                } else if (c == '}' || c == ']') {
+                    --depth;
+                }
+            }
+        }
+
+        private void skipString() throws IOException {
+            while (true) {
+                int c = read();
+                if (c == -1) {
+                    throw new IOException("Unterminated JSON string!");
+                }
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    read();
+                }
+            }
+        }
+
+        public void skipToEnd() throws IOException {
+            position = limit;
+            while (input.read(buffer, 0, buffer.length) != -1) {
+                // Discarding.
+            }
+        }
     }
 
-    public String getScreenshot() {
-        Response response;
-        WebDriverScreenshot screenshot;
-        // Performing the call to get the screenshot
-        response = endPoint.request(MediaType.APPLICATION_JSON_TYPE).get();
+    /**
+     * Decodes the base64 characters of a JSON string while they are read.
+     * The stream ends at the string's closing quote. JSON escapes (e.g.,
+     * "\/" or "\n" line breaks) are unescaped before decoding.
+     */
+    private static class Base64StringInputStream extends InputStream {
+        private static final int[] VALUES = new int[128];
+
+        static {
+            String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                    + "abcdefghijklmnopqrstuvwxyz0123456789+/";
+            for (int i = 0; i < VALUES.length; ++i) {
+                VALUES[i] = -1;
+            }
+            for (int i = 0; i < alphabet.length(); ++i) {
+                VALUES[alphabet.charAt(i)] = i;
+            }
+        }
+
+        private static final int END = -1;
+        private static final int PADDING = -2;
+
+        private final JsonReader json;
+        private final byte[] decoded;
+        private int decodedPosition;
+        private int decodedLength;
+        private boolean ended;
+
+        public Base64StringInputStream(JsonReader json) {
+            this.json = json;
+            decoded = new byte[3];
+            decodedPosition = 0;
+            decodedLength = 0;
+            ended = false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (decodedPosition == decodedLength && !decodeQuantum()) {
+                return -1;
+            }
+            return decoded[decodedPosition++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int count = 0;
+            while (count < len) {
+                if (decodedPosition == decodedLength && !decodeQuantum()) {
+                    break;
+                }
+                int available = Math.min(decodedLength - decodedPosition,
+                        len - count);
+                System.arraycopy(decoded, decodedPosition, b, off + count,
+                        available);
+                decodedPosition += available;
+                count += available;
+            }
+            return count == 0 ? -1 : count;
+        }
 
-        // Only OK is acceptable for us.
-        List<Integer> validStatusCodes = new ArrayList<Integer>(1);
-        validStatusCodes.add(Response.Status.OK.getStatusCode());
+        /**
+         * Decodes the next 4 base64 characters.
+         *
+         * @return Whether any bytes were decoded.
+         */
+        private boolean decodeQuantum() throws IOException {
+            if (ended) {
+                return false;
+            }
+            int quantum = 0;
+            int count = 0;
+            while (count < 4) {
+                int value = nextValue();
+                if (value == END || value == PADDING) {
+                    if (value == END) {
+                        ended = true;
+                    }
+                    break;
+                }
+                quantum = (quantum << 6) | value;
+                ++count;
+            }
+            if (count < 2) {
+                // A trailing single character carries no full byte.
+                ended = true;
+                return false;
+            }
+            quantum <<= 6 * (4 - count);
+            decoded[0] = (byte) (quantum >> 16);
+            decoded[1] = (byte) (quantum >> 8);
+            decoded[2] = (byte) quantum;
+            decodedPosition = 0;
+            decodedLength = count - 1;
+            return true;
+        }
 
-        screenshot = parseResponseWithJsonData(response, validStatusCodes,
-                WebDriverScreenshot.class);
+        /**
+         * @return The value of the next base64 character, {@link #END} at
+         * the string's closing quote or {@link #PADDING} for '='.
+         */
+        private int nextValue() throws IOException {
+            while (true) {
+                int c = json.read();
+                if (c == -1) {
+                    throw new IOException("Unterminated JSON string!");
+                }
+                if (c == '"') {
+                    return END;
+                }
+                if (c == '\\') {
+                    c = json.read();
+                    if (c == 'u') {
+                        c = readHexChar();
+                    } else if (c == 'n' || c == 'r' || c == 't') {
+                        continue;
+                    }
+                }
+                if (c == '=') {
+                    return PADDING;
+                }
+                if (c < VALUES.length && VALUES[c] >= 0) {
+                    return VALUES[c];
+                }
+                if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                    throw new IOException(
+                            "Invalid base64 character in screenshot: " + c);
+                }
+            }
+        }
 
-        return screenshot.getValue();
+        private int readHexChar() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; ++i) {
+                int digit = Character.digit(json.read(), 16);
+                if (digit < 0) {
+                    throw new IOException("Invalid JSON unicode escape!");
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
     }
 }
\ No newline at end of file
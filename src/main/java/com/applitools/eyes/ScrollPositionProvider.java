@@ -0,0 +1,65 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+/**
+ * A {@link PositionProvider} which moves the current context's window using
+ * {@code window.scrollTo}.
+ */
+public class ScrollPositionProvider implements PositionProvider {
+
+    private final Logger logger;
+    private final EyesWebDriver driver;
+
+    public ScrollPositionProvider(Logger logger, EyesWebDriver driver) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(driver, "driver");
+
+        this.logger = logger;
+        this.driver = driver;
+    }
+
+    /**
+     * @return The scroll position of the current frame, once scrolling
+     * settled.
+     */
+    public Location getCurrentPosition() {
+        logger.verbose("ScrollPositionProvider.getCurrentPosition()");
+        return driver.waitForScrollToSettle().getScrollPosition();
+    }
+
+    /**
+     * Scrolls to the given position.
+     * @param location The position to scroll to.
+     */
+    public void setPosition(Location location) {
+        driver.scrollTo(location);
+    }
+
+    /**
+     * @return The size of the entire page based on the scroll width/height.
+     */
+    public RectangleSize getEntireSize() {
+        return driver.getEntirePageSize();
+    }
+
+    public PositionMemento getState() {
+        return new ScrollPositionMemento(driver.getCurrentScrollPosition());
+    }
+
+    public void restoreState(PositionMemento state) {
+        ArgumentGuard.notNull(state, "state");
+        driver.scrollTo(((ScrollPositionMemento) state).position);
+    }
+
+    private static class ScrollPositionMemento extends PositionMemento {
+        private final Location position;
+
+        public ScrollPositionMemento(Location position) {
+            this.position = new Location(position);
+        }
+    }
+}
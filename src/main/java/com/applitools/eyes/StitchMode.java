@@ -0,0 +1,20 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+/**
+ * Represents the types of available stitch modes.
+ */
+public enum StitchMode {
+    /**
+     * Standard JavaScript scrolling (window.scrollTo).
+     */
+    SCROLL,
+
+    /**
+     * CSS translation of the document element. Does not fire scroll events,
+     * so scroll handlers, lazy loaders and sticky headers are not triggered.
+     */
+    CSS
+}
@@ -0,0 +1,26 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+/**
+ * Represents where the pixels of large stitched images are stored.
+ */
+public enum StitchedImageStorage {
+    /**
+     * The Java heap (a regular {@link java.awt.image.BufferedImage}).
+     */
+    HEAP,
+
+    /**
+     * A direct (off-heap) buffer. Notice direct memory is limited by the
+     * JVM's {@code -XX:MaxDirectMemorySize}.
+     */
+    DIRECT,
+
+    /**
+     * A memory-mapped temporary file, so pages can be evicted by the OS
+     * under memory pressure.
+     */
+    MEMORY_MAPPED
+}
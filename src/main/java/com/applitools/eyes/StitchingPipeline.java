@@ -0,0 +1,660 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Decodes, crops, rotates and stitches screenshot parts into a stitched
+ * image. When created with a positive number of pending parts, the work is
+ * done on a worker thread so the test thread only has to scroll and
+ * capture. Parts are stitched in the order they were added, so overlapping
+ * parts are written exactly as they would have been sequentially.
+ * Each part is copied once, directly from its decoded raster into the
+ * stitched image's raster (no cropped copy and no intermediate Raster).
+ * Parts added as base64 are decoded into the raster of the previous part
+ * (the first one into a pooled image, which is returned to the pool when
+ * stitching is done), and when they need rotation, they are rotated while
+ * being copied. Parts which were captured already decoded are returned to
+ * the pool once stitched.
+ * <p>
+ * When created with a {@link StreamingPngEncoder}, the stitched image is
+ * only a band of the result: rows are encoded as soon as no later part
+ * covers them, and the band then moves down. Memory is then bounded by the
+ * band's height rather than by the height of the result.
+ */
+class StitchingPipeline {
+
+    // How long shutdown waits for the worker to stop (a part being stitched
+    // can't be interrupted, but stitching a single part is quick).
+    private static final int SHUTDOWN_TIMEOUT_MS = 10000;
+
+    private final Logger logger;
+    private final BufferedImage stitchedImage;
+    private final int stitchedHeight;
+    private final StreamingPngEncoder encoder;
+    // The row of the result which is at the top of the stitched image. Rows
+    // above it were already encoded (always 0 when not streaming).
+    private int bandTop;
+    private final Region regionInScreenshot;
+    private final int rotationDegrees;
+    private final ImageCodec codec;
+    private final ScreenshotBufferPool bufferPool;
+    // The last decoded part, whose raster is reused for decoding the next
+    // part (parts are stitched one after the other, so it's no longer used
+    // by then).
+    private BufferedImage decodedPart;
+    // Only used for parts which can't be rotated while being copied.
+    private BufferedImage rotatedPart;
+    private final ExecutorService executor;
+    private final Semaphore pendingParts;
+    private final List<Future<?>> stitchedParts;
+    private volatile Throwable failure;
+
+    /**
+     * @param logger             A Logger instance.
+     * @param stitchedImage      The image into which parts are stitched.
+     * @param codec              The codec used for decoding parts.
+     * @param bufferPool         The pool of images into which parts are
+     *                           decoded.
+     * @param regionInScreenshot The region to crop from each part, or an
+     *                           empty region to use the entire part.
+     * @param rotationDegrees    The degrees by which each part should be
+     *                           rotated after decoding (0 for none).
+     * @param maxPendingParts    The maximum number of captured parts which
+     *                           may wait for the worker. If 0, parts are
+     *                           stitched synchronously on the calling thread.
+     */
+    public StitchingPipeline(Logger logger, BufferedImage stitchedImage,
+                             ImageCodec codec,
+                             ScreenshotBufferPool bufferPool,
+                             Region regionInScreenshot, int rotationDegrees,
+                             int maxPendingParts) {
+        this(logger, stitchedImage, stitchedImage == null ? 0 :
+                stitchedImage.getHeight(), null, codec, bufferPool,
+                regionInScreenshot, rotationDegrees, maxPendingParts);
+    }
+
+    /**
+     * Creates a pipeline which streams the result as a PNG.
+     *
+     * @param logger             A Logger instance.
+     * @param bandImage          The image used for holding the rows which
+     *                           were not encoded yet. Its width is the width
+     *                           of the result, and it must be high enough
+     *                           to hold the rows written by the parts
+     *                           between two consecutive band boundaries.
+     * @param stitchedHeight     The height of the result.
+     * @param encoder            The encoder to which the result is written.
+     * @param codec              The codec used for decoding parts.
+     * @param bufferPool         The pool of images into which parts are
+     *                           decoded.
+     * @param regionInScreenshot The region to crop from each part, or an
+     *                           empty region to use the entire part.
+     * @param rotationDegrees    The degrees by which each part should be
+     *                           rotated after decoding (0 for none).
+     * @param maxPendingParts    The maximum number of captured parts which
+     *                           may wait for the worker. If 0, parts are
+     *                           stitched synchronously on the calling thread.
+     */
+    public StitchingPipeline(Logger logger, BufferedImage bandImage,
+                             int stitchedHeight, StreamingPngEncoder encoder,
+                             ImageCodec codec,
+                             ScreenshotBufferPool bufferPool,
+                             Region regionInScreenshot, int rotationDegrees,
+                             int maxPendingParts) {
+        ArgumentGuard.notNull(logger, "logger");
+        ArgumentGuard.notNull(bandImage, "bandImage");
+        ArgumentGuard.notNull(codec, "codec");
+        ArgumentGuard.notNull(bufferPool, "bufferPool");
+        ArgumentGuard.greaterThanZero(stitchedHeight, "stitchedHeight");
+        ArgumentGuard.notNull(regionInScreenshot, "regionInScreenshot");
+        ArgumentGuard.greaterThanOrEqualToZero(maxPendingParts,
+                "maxPendingParts");
+
+        this.logger = logger;
+        this.stitchedImage = bandImage;
+        this.stitchedHeight = stitchedHeight;
+        this.encoder = encoder;
+        this.bandTop = 0;
+        this.regionInScreenshot = regionInScreenshot;
+        this.rotationDegrees = rotationDegrees;
+        this.codec = codec;
+        this.bufferPool = bufferPool;
+        this.stitchedParts = new LinkedList<Future<?>>();
+
+        if (maxPendingParts > 0) {
+            pendingParts = new Semaphore(maxPendingParts);
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "eyes-stitching");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        } else {
+            pendingParts = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * @return The image into which the parts are stitched. Only complete
+     * after {@link #finish()} returned (when streaming, this is only the
+     * last band).
+     */
+    public BufferedImage getStitchedImage() {
+        return stitchedImage;
+    }
+
+    /**
+     * Adds an already decoded (and rotated) part.
+     * @param partImage The part's image.
+     * @param position The position in the stitched image at which the part
+     *                 should be written.
+     * @param completeRows The number of rows of the result which no later
+     *                     part covers, once this part is stitched. Only
+     *                     used when streaming.
+     */
+    public void addPart(final BufferedImage partImage,
+                        final Location position, final int completeRows) {
+        ArgumentGuard.notNull(partImage, "partImage");
+        ArgumentGuard.notNull(position, "position");
+        submit(new Runnable() {
+            public void run() {
+                stitch(partImage, 0, position);
+                encodeCompleteRows(completeRows);
+            }
+        });
+    }
+
+    /**
+     * Adds a part as captured from the browser.
+     * @param part64 The part's screenshot as base64 PNG, before rotation.
+     * @param position The position in the stitched image at which the part
+     *                 should be written.
+     * @param completeRows The number of rows of the result which no later
+     *                     part covers, once this part is stitched. Only
+     *                     used when streaming.
+     */
+    public void addPart(final String part64, final Location position,
+                        final int completeRows) {
+        ArgumentGuard.notNull(part64, "part64");
+        ArgumentGuard.notNull(position, "position");
+        submit(new Runnable() {
+            public void run() {
+                decodePart(part64);
+                stitchCapturedPart(decodedPart, position);
+                encodeCompleteRows(completeRows);
+            }
+        });
+    }
+
+    /**
+     * Adds a part as captured from the browser, which was already decoded
+     * (e.g., by the direct screenshot capture). The part's image is
+     * returned to the pool once it was stitched.
+     * @param partImage The part's image, before rotation.
+     * @param position The position in the stitched image at which the part
+     *                 should be written.
+     * @param completeRows The number of rows of the result which no later
+     *                     part covers, once this part is stitched. Only
+     *                     used when streaming.
+     */
+    public void addCapturedPart(final BufferedImage partImage,
+                                final Location position,
+                                final int completeRows) {
+        ArgumentGuard.notNull(partImage, "partImage");
+        ArgumentGuard.notNull(position, "position");
+        submit(new Runnable() {
+            public void run() {
+                stitchCapturedPart(partImage, position);
+                bufferPool.release(partImage);
+                encodeCompleteRows(completeRows);
+            }
+        });
+    }
+
+    /**
+     * Stitches a part which wasn't rotated yet.
+     */
+    private void stitchCapturedPart(BufferedImage partImage,
+                                    Location position) {
+        if (rotationDegrees == 0 || ImageRotator.canRotateInto(
+                partImage.getRaster(), stitchedImage.getRaster())) {
+            stitch(partImage, rotationDegrees, position);
+        } else {
+            rotatedPart = ImageRotator.rotate(partImage, rotationDegrees,
+                    rotatedPart);
+            stitch(rotatedPart, 0, position);
+        }
+    }
+
+    private void decodePart(String part64) {
+        if (decodedPart == null) {
+            RectangleSize size = ScreenshotDecoder.getPngSize(part64);
+            if (size != null) {
+                decodedPart = bufferPool.acquire(size.getWidth(),
+                        size.getHeight());
+            }
+        }
+        BufferedImage buffer = decodedPart;
+        decodedPart = codec.decode(part64, buffer);
+        if (decodedPart != buffer) {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Waits for all the added parts to be stitched. When streaming, also
+     * encodes the remaining rows and finishes the PNG.
+     * @throws EyesException If stitching any of the parts failed.
+     */
+    public void finish() {
+        if (executor == null) {
+            encodeCompleteRows(stitchedHeight);
+            finishEncoding();
+            releaseParts();
+            return;
+        }
+        logger.verbose("Waiting for stitching to complete...");
+        try {
+            for (Future<?> stitchedPart : stitchedParts) {
+                stitchedPart.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EyesException("Interrupted while stitching!", e);
+        } catch (ExecutionException e) {
+            throw new EyesException("Failed to stitch screenshot part!",
+                    e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+        encodeCompleteRows(stitchedHeight);
+        finishEncoding();
+        releaseParts();
+        logger.verbose("Done!");
+    }
+
+    /**
+     * Returns the part buffers to the pool. Only called once the worker is
+     * done with them.
+     */
+    private void releaseParts() {
+        bufferPool.release(decodedPart);
+        bufferPool.release(rotatedPart);
+        decodedPart = null;
+        rotatedPart = null;
+    }
+
+    /**
+     * Stops the worker, discarding any parts which were not stitched yet,
+     * and waits for it to stop using the parts. When streaming and encoding
+     * didn't finish, the encoder is aborted. Safe to call after
+     * {@link #finish()}.
+     *
+     * @return Whether the worker stopped, so the images which were added
+     * as parts are no longer used and can be returned to the pool.
+     */
+    public boolean shutdown() {
+        boolean isStopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                isStopped = executor.awaitTermination(SHUTDOWN_TIMEOUT_MS,
+                        TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                isStopped = false;
+            }
+        }
+        // The deflater is thread safe, so if the worker is still writing
+        // rows, it just fails.
+        if (encoder != null) {
+            encoder.abort();
+        }
+        if (!isStopped) {
+            logger.log("Stitching worker didn't stop in time.");
+            return false;
+        }
+        // When stitching failed, the part buffers were not released yet.
+        releaseParts();
+        return true;
+    }
+
+    private void submit(final Runnable stitchTask) {
+        if (executor == null) {
+            stitchTask.run();
+            return;
+        }
+
+        // Fail fast rather than keep capturing parts which will be thrown
+        // away anyway.
+        if (failure != null) {
+            throw new EyesException("Failed to stitch screenshot part!",
+                    failure);
+        }
+
+        try {
+            pendingParts.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EyesException("Interrupted while stitching!", e);
+        }
+
+        stitchedParts.add(executor.submit(new Runnable() {
+            public void run() {
+                try {
+                    stitchTask.run();
+                } catch (RuntimeException e) {
+                    failure = e;
+                    throw e;
+                } finally {
+                    pendingParts.release();
+                }
+            }
+        }));
+    }
+
+    /**
+     * Encodes the rows of the band up to the given row of the result, and
+     * moves the band down so it starts at that row.
+     */
+    private void encodeCompleteRows(int completeRows) {
+        if (encoder == null) {
+            return;
+        }
+        int rowCount = Math.min(completeRows, stitchedHeight) - bandTop;
+        if (rowCount <= 0) {
+            return;
+        }
+        rowCount = Math.min(rowCount, stitchedImage.getHeight());
+
+        logger.verbose(String.format("Encoding rows %d-%d...", bandTop,
+                bandTop + rowCount));
+        try {
+            encoder.writeRows(stitchedImage, 0, rowCount);
+        } catch (IOException e) {
+            throw new EyesException("Failed to write stitched image rows!",
+                    e);
+        }
+
+        // Moving the rows which are not complete yet to the top of the band,
+        // and clearing the rest.
+        int bandWidth = stitchedImage.getWidth();
+        int remainingRows = stitchedImage.getHeight() - rowCount;
+        if (remainingRows > 0) {
+            WritableRaster band = stitchedImage.getRaster();
+            copyPixels(band, 0, rowCount, band, 0, 0, bandWidth,
+                    remainingRows);
+        }
+        Graphics2D g = stitchedImage.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.setColor(new Color(0, 0, 0, 0));
+            g.fillRect(0, remainingRows, bandWidth, rowCount);
+        } finally {
+            g.dispose();
+        }
+        bandTop += rowCount;
+        logger.verbose("Done!");
+    }
+
+    private void finishEncoding() {
+        if (encoder == null) {
+            return;
+        }
+        logger.verbose("Finishing encoding...");
+        try {
+            encoder.finish();
+        } catch (IOException e) {
+            throw new EyesException("Failed to write stitched image!", e);
+        }
+        logger.verbose("Done!");
+    }
+
+    /**
+     * @param partImage The part's image.
+     * @param rotationDegrees The degrees by which the part should be
+     *                        rotated while copying it (0 for none), in
+     *                        which case the rasters must be supported by
+     *                        {@link ImageRotator#canRotateInto}.
+     * @param position The position in the stitched image at which the
+     *                 (rotated) part should be written.
+     */
+    private void stitch(BufferedImage partImage, int rotationDegrees,
+                        Location position) {
+        int clockwise = ImageRotator.normalizeDegrees(rotationDegrees);
+        boolean isRotated = clockwise == 90 || clockwise == 270;
+        // The area of the (rotated) part to use, clipped to the part's
+        // bounds.
+        int srcX = 0;
+        int srcY = 0;
+        int width = isRotated ? partImage.getHeight() : partImage.getWidth();
+        int height = isRotated ? partImage.getWidth() : partImage.getHeight();
+        if (!regionInScreenshot.isEmpty()) {
+            srcX = Math.max(0, regionInScreenshot.getLeft());
+            srcY = Math.max(0, regionInScreenshot.getTop());
+            width = Math.min(width, regionInScreenshot.getLeft()
+                    + regionInScreenshot.getWidth()) - srcX;
+            height = Math.min(height, regionInScreenshot.getTop()
+                    + regionInScreenshot.getHeight()) - srcY;
+        }
+
+        // Clipping to the stitched image's bounds (the last parts usually
+        // exceed them, and when stitching an area, parts might start before
+        // it). When streaming, rows above the band were already encoded, so
+        // they can't be changed anymore.
+        int dstX = position.getX();
+        int dstY = position.getY() - bandTop;
+        if (dstX < 0) {
+            srcX -= dstX;
+            width += dstX;
+            dstX = 0;
+        }
+        if (dstY < 0) {
+            if (bandTop > 0) {
+                logger.verbose(String.format(
+                        "Part at %s overlaps rows which were already encoded.",
+                        position));
+            }
+            srcY -= dstY;
+            height += dstY;
+            dstY = 0;
+        }
+        width = Math.min(width, stitchedImage.getWidth() - dstX);
+        height = Math.min(height, Math.min(stitchedImage.getHeight(),
+                stitchedHeight - bandTop) - dstY);
+        if (width <= 0 || height <= 0) {
+            logger.verbose(String.format(
+                    "Part at %s is out of the stitched image's bounds.",
+                    position));
+            return;
+        }
+
+        logger.verbose(String.format("Stitching part at %s", position));
+        if (clockwise == 0) {
+            copyPixels(partImage.getRaster(), srcX, srcY,
+                    stitchedImage.getRaster(), dstX, dstY, width, height);
+            return;
+        }
+
+        // Mapping the area back to the coordinates of the part before
+        // rotation.
+        int partWidth = partImage.getWidth();
+        int partHeight = partImage.getHeight();
+        int unrotatedX;
+        int unrotatedY;
+        switch (clockwise) {
+            case 90:
+                unrotatedX = srcY;
+                unrotatedY = partHeight - srcX - width;
+                break;
+            case 180:
+                unrotatedX = partWidth - srcX - width;
+                unrotatedY = partHeight - srcY - height;
+                break;
+            default:
+                unrotatedX = partWidth - srcY - height;
+                unrotatedY = srcX;
+                break;
+        }
+        ImageRotator.rotateInto(partImage.getRaster(), unrotatedX,
+                unrotatedY, isRotated ? height : width,
+                isRotated ? width : height, clockwise,
+                stitchedImage.getRaster(), dstX, dstY);
+    }
+
+    /**
+     * Copies a rectangle of pixels directly between the rasters' data
+     * buffers, without creating intermediate rasters. When both rasters
+     * share the same interleaved byte or packed int layout (which is the
+     * case for decoded screenshots and a stitched image of the same type),
+     * each row is a single array copy (or a single bulk put, if the stitched
+     * image is stored off heap). Otherwise the pixels are copied
+     * through a child view of the source raster.
+     */
+    private static void copyPixels(Raster src, int srcX, int srcY,
+                                   WritableRaster dst, int dstX, int dstY,
+                                   int width, int height) {
+        if (copyInterleavedBytes(src, srcX, srcY, dst, dstX, dstY, width,
+                height) || copyPackedInts(src, srcX, srcY, dst, dstX, dstY,
+                width, height)) {
+            return;
+        }
+
+        dst.setRect(dstX, dstY,
+                src.createChild(srcX, srcY, width, height, 0, 0, null));
+    }
+
+    private static boolean copyInterleavedBytes(Raster src, int srcX,
+            int srcY, WritableRaster dst, int dstX, int dstY, int width,
+            int height) {
+        if (!(src.getSampleModel() instanceof PixelInterleavedSampleModel)
+                || !(dst.getSampleModel()
+                        instanceof PixelInterleavedSampleModel)
+                || !(src.getDataBuffer() instanceof DataBufferByte)
+                || !isBufferOfType(dst.getDataBuffer(),
+                        DataBufferByte.class, DataBuffer.TYPE_BYTE)) {
+            return false;
+        }
+
+        ComponentSampleModel srcModel =
+                (ComponentSampleModel) src.getSampleModel();
+        ComponentSampleModel dstModel =
+                (ComponentSampleModel) dst.getSampleModel();
+        int pixelStride = srcModel.getPixelStride();
+        int[] bandOffsets = srcModel.getBandOffsets();
+        // Each pixel must occupy exactly "pixelStride" bytes, laid out the
+        // same way in both rasters.
+        if (dstModel.getPixelStride() != pixelStride
+                || bandOffsets.length != pixelStride
+                || !Arrays.equals(bandOffsets, dstModel.getBandOffsets())) {
+            return false;
+        }
+        for (int bandOffset : bandOffsets) {
+            if (bandOffset >= pixelStride) {
+                return false;
+            }
+        }
+
+        DataBufferByte srcBuffer = (DataBufferByte) src.getDataBuffer();
+        DataBuffer dstBuffer = dst.getDataBuffer();
+        byte[] srcData = srcBuffer.getData();
+        int srcStride = srcModel.getScanlineStride();
+        int dstStride = dstModel.getScanlineStride();
+        int srcIndex = srcBuffer.getOffset()
+                + (srcY - src.getSampleModelTranslateY()) * srcStride
+                + (srcX - src.getSampleModelTranslateX()) * pixelStride;
+        int dstIndex = dstBuffer.getOffset()
+                + (dstY - dst.getSampleModelTranslateY()) * dstStride
+                + (dstX - dst.getSampleModelTranslateX()) * pixelStride;
+        int rowLength = width * pixelStride;
+        if (dstBuffer instanceof DataBufferByte) {
+            byte[] dstData = ((DataBufferByte) dstBuffer).getData();
+            for (int row = 0; row < height; ++row) {
+                System.arraycopy(srcData, srcIndex, dstData, dstIndex,
+                        rowLength);
+                srcIndex += srcStride;
+                dstIndex += dstStride;
+            }
+        } else {
+            ByteBufferDataBuffer dstData = (ByteBufferDataBuffer) dstBuffer;
+            for (int row = 0; row < height; ++row) {
+                dstData.setElems(dstIndex, srcData, srcIndex, rowLength);
+                srcIndex += srcStride;
+                dstIndex += dstStride;
+            }
+        }
+        return true;
+    }
+
+    private static boolean copyPackedInts(Raster src, int srcX, int srcY,
+            WritableRaster dst, int dstX, int dstY, int width, int height) {
+        if (!(src.getSampleModel() instanceof SinglePixelPackedSampleModel)
+                || !(dst.getSampleModel()
+                        instanceof SinglePixelPackedSampleModel)
+                || !(src.getDataBuffer() instanceof DataBufferInt)
+                || !isBufferOfType(dst.getDataBuffer(),
+                        DataBufferInt.class, DataBuffer.TYPE_INT)) {
+            return false;
+        }
+
+        SinglePixelPackedSampleModel srcModel =
+                (SinglePixelPackedSampleModel) src.getSampleModel();
+        SinglePixelPackedSampleModel dstModel =
+                (SinglePixelPackedSampleModel) dst.getSampleModel();
+        if (!Arrays.equals(srcModel.getBitMasks(), dstModel.getBitMasks())) {
+            return false;
+        }
+
+        DataBufferInt srcBuffer = (DataBufferInt) src.getDataBuffer();
+        DataBuffer dstBuffer = dst.getDataBuffer();
+        int[] srcData = srcBuffer.getData();
+        int srcStride = srcModel.getScanlineStride();
+        int dstStride = dstModel.getScanlineStride();
+        int srcIndex = srcBuffer.getOffset()
+                + (srcY - src.getSampleModelTranslateY()) * srcStride
+                + (srcX - src.getSampleModelTranslateX());
+        int dstIndex = dstBuffer.getOffset()
+                + (dstY - dst.getSampleModelTranslateY()) * dstStride
+                + (dstX - dst.getSampleModelTranslateX());
+        if (dstBuffer instanceof DataBufferInt) {
+            int[] dstData = ((DataBufferInt) dstBuffer).getData();
+            for (int row = 0; row < height; ++row) {
+                System.arraycopy(srcData, srcIndex, dstData, dstIndex, width);
+                srcIndex += srcStride;
+                dstIndex += dstStride;
+            }
+        } else {
+            ByteBufferDataBuffer dstData = (ByteBufferDataBuffer) dstBuffer;
+            for (int row = 0; row < height; ++row) {
+                dstData.setElems(dstIndex, srcData, srcIndex, width);
+                srcIndex += srcStride;
+                dstIndex += dstStride;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the buffer is either an array buffer of the given
+     * class, or an off heap buffer of the given data type.
+     */
+    private static boolean isBufferOfType(DataBuffer buffer,
+            Class<? extends DataBuffer> arrayBufferClass, int dataType) {
+        return arrayBufferClass.isInstance(buffer)
+                || (buffer instanceof ByteBufferDataBuffer
+                        && buffer.getDataType() == dataType);
+    }
+}
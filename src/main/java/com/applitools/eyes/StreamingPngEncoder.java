@@ -0,0 +1,221 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ArgumentGuard;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Encodes an image as an 8 bit RGB/RGBA PNG, row by row, so the rows can be
+ * written as soon as they are available without keeping the entire image
+ * in memory.
+ */
+class StreamingPngEncoder {
+
+    private static final byte[] PNG_SIGNATURE =
+            {(byte) 137, 80, 78, 71, 13, 10, 26, 10};
+    private static final int COLOR_TYPE_RGB = 2;
+    private static final int COLOR_TYPE_RGBA = 6;
+    // The maximum size of the data in each IDAT chunk.
+    static final int MAX_IDAT_SIZE = 64 * 1024;
+
+    private final OutputStream output;
+    private final int height;
+    private final Deflater deflater;
+    private final DeflaterOutputStream idatStream;
+    private final PngRowFilter rowFilter;
+    private byte[] currentRow;
+    private byte[] previousRow;
+    private int rowsWritten;
+
+    /**
+     * Writes the PNG header.
+     *
+     * @param output   The stream to which the PNG is written.
+     * @param width    The width of the image.
+     * @param height   The height of the image.
+     * @param hasAlpha Whether to encode the alpha channel.
+     * @throws IOException If writing to the output failed.
+     */
+    public StreamingPngEncoder(OutputStream output, int width, int height,
+                               boolean hasAlpha) throws IOException {
+        this(output, width, height, hasAlpha, PngCompression.DEFAULT);
+    }
+
+    /**
+     * Writes the PNG header.
+     *
+     * @param output      The stream to which the PNG is written.
+     * @param width       The width of the image.
+     * @param height      The height of the image.
+     * @param hasAlpha    Whether to encode the alpha channel.
+     * @param compression The compression level of the image data.
+     * @throws IOException If writing to the output failed.
+     */
+    public StreamingPngEncoder(OutputStream output, int width, int height,
+                               boolean hasAlpha, PngCompression compression)
+            throws IOException {
+        ArgumentGuard.notNull(output, "output");
+        ArgumentGuard.greaterThanZero(width, "width");
+        ArgumentGuard.greaterThanZero(height, "height");
+        ArgumentGuard.notNull(compression, "compression");
+
+        this.output = output;
+        this.height = height;
+        rowFilter = new PngRowFilter(width, hasAlpha ? 4 : 3);
+        currentRow = new byte[rowFilter.getRowLength()];
+        previousRow = new byte[rowFilter.getRowLength()];
+
+        writeHeader(output, width, height, hasAlpha);
+
+        deflater = new Deflater(compression.getDeflaterLevel());
+        idatStream = new DeflaterOutputStream(new IdatOutputStream(output),
+                deflater, MAX_IDAT_SIZE);
+    }
+
+    /**
+     * @return The number of rows written so far.
+     */
+    public int getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * Writes the next rows of the image.
+     *
+     * @param source   The image containing the rows.
+     * @param sourceY  The row in {@code source} of the first row to write.
+     * @param rowCount The number of rows to write.
+     * @throws IOException If writing to the output failed.
+     */
+    public void writeRows(BufferedImage source, int sourceY, int rowCount)
+            throws IOException {
+        ArgumentGuard.notNull(source, "source");
+        if (rowsWritten + rowCount > height) {
+            throw new EyesException(String.format(
+                    "Can't write %d rows, only %d rows are left!", rowCount,
+                    height - rowsWritten));
+        }
+
+        for (int y = sourceY; y < sourceY + rowCount; ++y) {
+            rowFilter.readRow(source, y, currentRow);
+            byte[] filteredRow = rowFilter.filter(currentRow,
+                    rowsWritten > 0 ? previousRow : null);
+            idatStream.write(filteredRow, 0, filteredRow.length);
+
+            byte[] swap = previousRow;
+            previousRow = currentRow;
+            currentRow = swap;
+            ++rowsWritten;
+        }
+    }
+
+    /**
+     * Writes the remaining image data and the PNG trailer. The output stream
+     * itself is not closed.
+     *
+     * @throws IOException If writing to the output failed.
+     */
+    public void finish() throws IOException {
+        // The deflater's native memory is released even if the image is
+        // incomplete.
+        try {
+            if (rowsWritten != height) {
+                throw new EyesException(String.format(
+                        "Only %d of %d rows were written!", rowsWritten,
+                        height));
+            }
+            idatStream.finish();
+            idatStream.flush();
+        } finally {
+            deflater.end();
+        }
+        writeChunk(output, "IEND", new byte[0], 0, 0);
+        output.flush();
+    }
+
+    /**
+     * Releases the encoder's resources (the deflater's native memory)
+     * without completing the image, e.g., when the rows can't be provided.
+     * Nothing more is written to the output. Safe to call more than once,
+     * and after {@link #finish()}.
+     */
+    public void abort() {
+        deflater.end();
+    }
+
+    /**
+     * Writes the PNG signature and the IHDR chunk of an 8 bit RGB/RGBA
+     * image.
+     */
+    static void writeHeader(OutputStream output, int width, int height,
+                            boolean hasAlpha) throws IOException {
+        output.write(PNG_SIGNATURE);
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 8; // Bit depth
+        header[9] = (byte) (hasAlpha ? COLOR_TYPE_RGBA : COLOR_TYPE_RGB);
+        // Compression, filter and interlace methods are all 0.
+        writeChunk(output, "IHDR", header, 0, header.length);
+    }
+
+    static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    static void writeChunk(OutputStream output, String type,
+                           byte[] data, int offset, int length)
+            throws IOException {
+        byte[] lengthAndType = new byte[8];
+        writeInt(lengthAndType, 0, length);
+        for (int i = 0; i < 4; ++i) {
+            lengthAndType[4 + i] = (byte) type.charAt(i);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(lengthAndType, 4, 4);
+        crc.update(data, offset, length);
+        byte[] crcBytes = new byte[4];
+        writeInt(crcBytes, 0, (int) crc.getValue());
+
+        output.write(lengthAndType);
+        output.write(data, offset, length);
+        output.write(crcBytes);
+    }
+
+    /**
+     * Writes the compressed data it receives as IDAT chunks.
+     */
+    static class IdatOutputStream extends OutputStream {
+        private final OutputStream output;
+
+        public IdatOutputStream(OutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int chunkLength = Math.min(len, MAX_IDAT_SIZE);
+                writeChunk(output, "IDAT", b, off, chunkLength);
+                off += chunkLength;
+                len -= chunkLength;
+            }
+        }
+    }
+}
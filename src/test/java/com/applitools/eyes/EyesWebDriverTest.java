@@ -0,0 +1,320 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DesiredCapabilities;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.ErrorCodes;
+import org.openqa.selenium.remote.HttpCommandExecutor;
+import org.openqa.selenium.remote.RemoteWebDriver;
+import org.openqa.selenium.remote.Response;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the driver calls made by {@link EyesWebDriver} (e.g., when switching
+ * frames or waiting for scrolls), using a driver whose commands are recorded
+ * and answered locally.
+ */
+public class EyesWebDriverTest {
+
+    private static final String SESSION_ID = "stub-session";
+    private static final String FRAME_ELEMENT_ID = "frame-1";
+
+    private RecordingCommandExecutor executor;
+    private EyesWebDriver driver;
+
+    @Before
+    public void setUp() throws MalformedURLException {
+        executor = new RecordingCommandExecutor();
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setJavascriptEnabled(true);
+        driver = new EyesWebDriver(new Logger(), new Eyes(),
+                new RemoteWebDriver(executor, capabilities));
+        executor.commands.clear();
+    }
+
+    @Test
+    public void testSwitchToFrameElementRoundTrips() {
+        WebElement frameElement = driver.findElement(By.id("frame"));
+        executor.commands.clear();
+
+        driver.switchTo().frame(frameElement);
+
+        // The frame's metadata is read in a single script call.
+        assertEquals(Arrays.asList(DriverCommand.EXECUTE_SCRIPT,
+                DriverCommand.SWITCH_TO_FRAME), executor.commands);
+        assertEquals(1, driver.getLastFrameSwitchRoundTrips());
+        assertEquals(1, driver.getFrameChain().size());
+    }
+
+    @Test
+    public void testSwitchToFrameByIndexRoundTrips() {
+        driver.switchTo().frame(0);
+
+        // The frame index is read in a single script call.
+        assertEquals(Arrays.asList(DriverCommand.EXECUTE_SCRIPT,
+                DriverCommand.SWITCH_TO_FRAME), executor.commands);
+        assertEquals(1, driver.getLastFrameSwitchRoundTrips());
+        assertEquals(1, driver.getFrameChain().size());
+    }
+
+    @Test
+    public void testSwitchToFrameByNameRoundTrips() {
+        driver.switchTo().frame("main");
+
+        assertEquals(Arrays.asList(DriverCommand.EXECUTE_SCRIPT,
+                DriverCommand.SWITCH_TO_FRAME), executor.commands);
+        assertEquals(1, driver.getLastFrameSwitchRoundTrips());
+    }
+
+    @Test
+    public void testRestoreFrameChainRoundTrips() {
+        driver.switchTo().frame(0);
+        FrameChain frameChain = driver.getFrameChain();
+        driver.switchTo().defaultContent();
+        assertEquals(0, driver.getLastFrameSwitchRoundTrips());
+        executor.commands.clear();
+
+        ((EyesTargetLocator) driver.switchTo()).frames(frameChain);
+
+        // Restoring the parent's scroll position and switching, the frame's
+        // metadata is reused from the chain.
+        assertEquals(Arrays.asList(DriverCommand.EXECUTE_SCRIPT,
+                DriverCommand.SWITCH_TO_FRAME), executor.commands);
+        assertEquals(0, driver.getLastFrameSwitchRoundTrips());
+        assertEquals(1, driver.getFrameChain().size());
+    }
+
+    @Test
+    public void testRestoreFrameChainUsesStitchMode() {
+        driver.switchTo().frame(0);
+        FrameChain frameChain = driver.getFrameChain();
+        driver.switchTo().defaultContent();
+        driver.setStitchMode(StitchMode.CSS);
+        executor.scripts.clear();
+
+        ((EyesTargetLocator) driver.switchTo()).frames(frameChain);
+
+        // The parent's position is restored by translating the page.
+        boolean isTranslated = false;
+        for (String script : executor.scripts) {
+            isTranslated |= script.contains("translate(");
+        }
+        assertTrue(isTranslated);
+        assertEquals(1, driver.getFrameChain().size());
+    }
+
+    @Test
+    public void testPageSizesAreCachedUntilNavigation() {
+        RectangleSize entirePageSize = driver.getEntirePageSize();
+        assertEquals(new RectangleSize(1000, 3000), entirePageSize);
+        assertEquals(Collections.singletonList(DriverCommand.EXECUTE_SCRIPT),
+                executor.commands);
+        executor.commands.clear();
+
+        // Both sizes were read by the same call, so no more calls are made.
+        assertEquals(entirePageSize, driver.getEntirePageSize());
+        assertEquals(new RectangleSize(800, 600),
+                driver.extractViewportSize());
+        assertEquals(Collections.<String>emptyList(), executor.commands);
+
+        driver.navigate().refresh();
+        executor.commands.clear();
+        assertEquals(entirePageSize, driver.getEntirePageSize());
+        assertEquals(Collections.singletonList(DriverCommand.EXECUTE_SCRIPT),
+                executor.commands);
+    }
+
+    @Test
+    public void testViewportSizeIsReusedWithinFrames() {
+        driver.extractViewportSize();
+        driver.switchTo().frame(0);
+        executor.commands.clear();
+
+        // No switching to the default content and back.
+        assertEquals(new RectangleSize(800, 600),
+                driver.getDefaultContentViewportSize());
+        assertEquals(Collections.<String>emptyList(), executor.commands);
+    }
+
+    @Test
+    public void testElementScrollSettledByAsyncScript() {
+        WebElement element = driver.findElement(By.id("scrollable"));
+        executor.asyncScriptResult = Arrays.asList(0L, 120L, 500L, 2000L);
+        executor.commands.clear();
+
+        Location position = ((EyesRemoteWebElement) element)
+                .waitForScrollToSettle();
+
+        assertEquals(0, position.getX());
+        assertEquals(120, position.getY());
+        assertEquals(Collections.singletonList(
+                DriverCommand.EXECUTE_ASYNC_SCRIPT), executor.commands);
+    }
+
+    @Test
+    public void testElementScrollSettledByPolling() {
+        WebElement element = driver.findElement(By.id("scrollable"));
+        executor.asyncScriptStatus = ErrorCodes.UNHANDLED_ERROR;
+        // Still scrolling, and then the content grows.
+        List<Object> states = executor.elementScrollStates;
+        states.add(Arrays.asList(0L, 100L, 500L, 2000L));
+        states.add(Arrays.asList(0L, 120L, 500L, 2000L));
+        states.add(Arrays.asList(0L, 120L, 500L, 2400L));
+        states.add(Arrays.asList(0L, 120L, 500L, 2400L));
+        executor.commands.clear();
+
+        Location position = ((EyesRemoteWebElement) element)
+                .waitForScrollToSettle();
+
+        assertEquals(0, position.getX());
+        assertEquals(120, position.getY());
+        assertTrue(states.isEmpty());
+    }
+
+    @Test
+    public void testAsyncScrollSettleRetriedAfterTimeout() {
+        WebElement element = driver.findElement(By.id("scrollable"));
+        executor.asyncScriptStatus = ErrorCodes.ASYNC_SCRIPT_TIMEOUT;
+        executor.elementScrollStates.add(Arrays.asList(0L, 120L, 500L, 2000L));
+        executor.elementScrollStates.add(Arrays.asList(0L, 120L, 500L, 2000L));
+        ((EyesRemoteWebElement) element).waitForScrollToSettle();
+        assertTrue(executor.elementScrollStates.isEmpty());
+
+        // A timeout only affects the wait in which it happened.
+        executor.asyncScriptStatus = ErrorCodes.SUCCESS;
+        executor.asyncScriptResult = Arrays.asList(0L, 150L, 500L, 2000L);
+        executor.commands.clear();
+        Location position = ((EyesRemoteWebElement) element)
+                .waitForScrollToSettle();
+
+        assertEquals(150, position.getY());
+        assertEquals(Collections.singletonList(
+                DriverCommand.EXECUTE_ASYNC_SCRIPT), executor.commands);
+    }
+
+    @Test
+    public void testAsyncScrollSettleDisabledIfUnsupported() {
+        WebElement element = driver.findElement(By.id("scrollable"));
+        executor.asyncScriptStatus = ErrorCodes.UNKNOWN_COMMAND;
+        executor.elementScrollStates.add(Arrays.asList(0L, 120L, 500L, 2000L));
+        executor.elementScrollStates.add(Arrays.asList(0L, 120L, 500L, 2000L));
+        ((EyesRemoteWebElement) element).waitForScrollToSettle();
+
+        executor.elementScrollStates.add(Arrays.asList(0L, 150L, 500L, 2000L));
+        executor.elementScrollStates.add(Arrays.asList(0L, 150L, 500L, 2000L));
+        executor.commands.clear();
+        Location position = ((EyesRemoteWebElement) element)
+                .waitForScrollToSettle();
+
+        assertEquals(150, position.getY());
+        assertFalse(executor.commands.contains(
+                DriverCommand.EXECUTE_ASYNC_SCRIPT));
+        assertTrue(executor.elementScrollStates.isEmpty());
+    }
+
+    @Test
+    public void testPageScrollSettleRetriedAfterTimeout() {
+        executor.asyncScriptStatus = ErrorCodes.ASYNC_SCRIPT_TIMEOUT;
+        driver.waitForScrollToSettle();
+
+        executor.asyncScriptStatus = ErrorCodes.SUCCESS;
+        executor.asyncScriptResult = Arrays.asList(1000L, 1000L, 800L, 600L,
+                600L, 3000L, 3000L, 0L, 0L, 800L, 600L, 1L, -1L, -1L);
+        executor.commands.clear();
+        driver.waitForScrollToSettle();
+
+        assertEquals(Collections.singletonList(
+                DriverCommand.EXECUTE_ASYNC_SCRIPT), executor.commands);
+    }
+
+    /**
+     * A command executor which records the names of executed commands, and
+     * answers them as a driver for a page with a single frame would.
+     */
+    private static class RecordingCommandExecutor extends HttpCommandExecutor {
+
+        private final List<String> commands = new ArrayList<String>();
+        // The executed (synchronous) scripts.
+        private final List<String> scripts = new ArrayList<String>();
+        // The results of the element scroll state scripts, in order.
+        private final LinkedList<Object> elementScrollStates =
+                new LinkedList<Object>();
+        private Object asyncScriptResult;
+        private int asyncScriptStatus = ErrorCodes.SUCCESS;
+
+        public RecordingCommandExecutor() throws MalformedURLException {
+            super(new URL("http://localhost:4444/wd/hub"));
+        }
+
+        @Override
+        public Response execute(Command command) throws IOException {
+            commands.add(command.getName());
+            Response response = new Response();
+            response.setSessionId(SESSION_ID);
+            response.setStatus(ErrorCodes.SUCCESS);
+            String name = command.getName();
+            if (name.equals(DriverCommand.NEW_SESSION)) {
+                Map<String, Object> capabilities =
+                        new HashMap<String, Object>();
+                capabilities.put("browserName", "stub");
+                capabilities.put("javascriptEnabled", true);
+                response.setValue(capabilities);
+            } else if (name.equals(DriverCommand.FIND_ELEMENT)) {
+                response.setValue(createElement());
+            } else if (name.equals(DriverCommand.EXECUTE_SCRIPT)) {
+                response.setValue(executeScript(
+                        (String) command.getParameters().get("script")));
+            } else if (name.equals(DriverCommand.EXECUTE_ASYNC_SCRIPT)) {
+                response.setStatus(asyncScriptStatus);
+                response.setValue(asyncScriptStatus == ErrorCodes.SUCCESS
+                        ? asyncScriptResult : "Async script failed");
+            }
+            return response;
+        }
+
+        private Object executeScript(String script) {
+            scripts.add(script);
+            if (script.contains("elem.scrollWidth")) {
+                return elementScrollStates.removeFirst();
+            }
+            if (script.contains("querySelectorAll('frame, iframe')")) {
+                // The frame index: scroll position, mutation count, token,
+                // and the frame's element, name, id, location, size and
+                // borders.
+                return Arrays.asList(0L, 0L, -1L, "token", createElement(),
+                        "main", "", 10L, 20L, 300L, 200L, 2L, 2L);
+            }
+            if (script.contains("window.devicePixelRatio")) {
+                // The page geometry: document and body sizes, scroll
+                // position, viewport size, device pixel ratio and the
+                // (untracked) mutation and resize counts.
+                return Arrays.asList(1000L, 1000L, 800L, 600L, 600L, 3000L,
+                        3000L, 0L, 0L, 800L, 600L, 1L, -1L, -1L);
+            }
+            if (script.contains("var frame = arguments[0];")) {
+                // The frame's location, size, borders and the parent's
+                // scroll position.
+                return Arrays.asList(10L, 20L, 300L, 200L, 2L, 2L, 0L, 0L);
+            }
+            return null;
+        }
+
+        private static Map<String, Object> createElement() {
+            return Collections.<String, Object>singletonMap("ELEMENT",
+                    FRAME_ELEMENT_ID);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openqa.selenium.remote.DesiredCapabilities;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link FullPageScreenshotTaker} against a stub driver server.
+ */
+public class FullPageScreenshotTakerTest {
+
+    private static final String SESSION_ID = "stub-session";
+    private static final String SCREENSHOT = "iVBORw0KGgo=";
+
+    private HttpServer server;
+    private List<String> requestPaths;
+
+    @Before
+    public void setUp() throws IOException {
+        requestPaths = Collections.synchronizedList(new ArrayList<String>());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                requestPaths.add(exchange.getRequestMethod() + " " + path);
+                String prefix = "/session/" + SESSION_ID + "/";
+                String body;
+                int status;
+                if (path.equals(prefix + "goog/cdp/execute")
+                        || path.equals(prefix + "ms/cdp/execute")) {
+                    status = 200;
+                    body = "{\"sessionId\":\"" + SESSION_ID
+                            + "\",\"value\":{\"data\":\"" + SCREENSHOT
+                            + "\"}}";
+                } else {
+                    status = 404;
+                    body = "{\"value\":{\"error\":\"unknown command\"}}";
+                }
+                byte[] bytes = body.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type",
+                        "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                OutputStream output = exchange.getResponseBody();
+                output.write(bytes);
+                output.close();
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testEdgeUsesMsCdpEndpoint() {
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setCapability("browserName", "MicrosoftEdge");
+        capabilities.setCapability("ms:edgeOptions",
+                Collections.singletonMap("debuggerAddress", "localhost:0"));
+
+        FullPageScreenshotTaker.Protocol protocol =
+                FullPageScreenshotTaker.detectProtocol(capabilities);
+        assertEquals(FullPageScreenshotTaker.Protocol.EDGE, protocol);
+
+        String screenshot = createTaker(protocol).getScreenshot(
+                new RectangleSize(800, 3000));
+        assertEquals(SCREENSHOT, screenshot);
+        assertEquals(Collections.singletonList(
+                "POST /session/" + SESSION_ID + "/ms/cdp/execute"),
+                requestPaths);
+    }
+
+    @Test
+    public void testChromeUsesGoogCdpEndpoint() {
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setCapability("browserName", "chrome");
+        capabilities.setCapability("goog:chromeOptions",
+                Collections.singletonMap("debuggerAddress", "localhost:0"));
+
+        FullPageScreenshotTaker.Protocol protocol =
+                FullPageScreenshotTaker.detectProtocol(capabilities);
+        assertEquals(FullPageScreenshotTaker.Protocol.CHROME, protocol);
+
+        String screenshot = createTaker(protocol).getScreenshot(
+                new RectangleSize(800, 3000));
+        assertEquals(SCREENSHOT, screenshot);
+        assertEquals(Collections.singletonList(
+                "POST /session/" + SESSION_ID + "/goog/cdp/execute"),
+                requestPaths);
+    }
+
+    @Test
+    public void testNoProtocolWithoutCapability() {
+        DesiredCapabilities capabilities = new DesiredCapabilities();
+        capabilities.setCapability("browserName", "safari");
+
+        assertNull(FullPageScreenshotTaker.detectProtocol(capabilities));
+    }
+
+    private FullPageScreenshotTaker createTaker(
+            FullPageScreenshotTaker.Protocol protocol) {
+        return new FullPageScreenshotTaker(new Logger(),
+                URI.create("http://127.0.0.1:"
+                        + server.getAddress().getPort()), SESSION_ID,
+                protocol);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.applitools.utils.ImageUtils;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares {@link ImageRotator} with {@link ImageUtils#rotateImage}, which
+ * it replaces for the common screenshot image types.
+ */
+public class ImageRotatorTest {
+
+    private static final int[] IMAGE_TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR
+    };
+
+    // Odd widths and heights, and a size which spans several tiles.
+    private static final int[][] SIZES = {
+            {37, 29}, {38, 29}, {37, 30}, {1, 1}, {131, 67}
+    };
+
+    private static final int[] DEGREES = {90, 180, 270};
+
+    @Test
+    public void testRotateMatchesImageUtils() {
+        for (int type : IMAGE_TYPES) {
+            for (int[] size : SIZES) {
+                BufferedImage image = createImage(type, size[0], size[1],
+                        false);
+                for (int degrees : DEGREES) {
+                    String message = getMessage(type, size, degrees);
+                    BufferedImage expected =
+                            ImageUtils.rotateImage(image, degrees);
+                    BufferedImage rotated =
+                            ImageRotator.rotate(image, degrees, null);
+                    assertNotSame(message, image, rotated);
+                    assertEquals(message, type, rotated.getType());
+                    assertSamePixels(message, expected, rotated);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRotateInPlaceMatchesImageUtils() {
+        for (int type : IMAGE_TYPES) {
+            for (int[] size : SIZES) {
+                BufferedImage image = createImage(type, size[0], size[1],
+                        false);
+                BufferedImage expected = ImageUtils.rotateImage(image, 180);
+                BufferedImage rotated = ImageRotator.rotate(image, 180,
+                        image);
+                String message = getMessage(type, size, 180);
+                assertSame(message, image, rotated);
+                assertSamePixels(message, expected, rotated);
+            }
+        }
+    }
+
+    @Test
+    public void testRotateIntoDestination() {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage image = createImage(type, 37, 29, false);
+            BufferedImage destination = new BufferedImage(29, 37, type);
+            BufferedImage rotated = ImageRotator.rotate(image, 90,
+                    destination);
+            String message = getMessage(type, new int[]{37, 29}, 90);
+            assertSame(message, destination, rotated);
+            assertSamePixels(message, ImageUtils.rotateImage(image, 90),
+                    rotated);
+        }
+    }
+
+    /**
+     * ImageUtils draws the image, which blends translucent pixels, so
+     * translucent images are compared with the exact rotation instead.
+     */
+    @Test
+    public void testRotateKeepsTranslucentPixels() {
+        int[] size = {37, 29};
+        BufferedImage image = createImage(BufferedImage.TYPE_4BYTE_ABGR,
+                size[0], size[1], true);
+        for (int degrees : DEGREES) {
+            BufferedImage rotated = ImageRotator.rotate(image, degrees, null);
+            String message = getMessage(image.getType(), size, degrees);
+            for (int y = 0; y < image.getHeight(); ++y) {
+                for (int x = 0; x < image.getWidth(); ++x) {
+                    int rotatedX;
+                    int rotatedY;
+                    switch (degrees) {
+                        case 90:
+                            rotatedX = image.getHeight() - 1 - y;
+                            rotatedY = x;
+                            break;
+                        case 180:
+                            rotatedX = image.getWidth() - 1 - x;
+                            rotatedY = image.getHeight() - 1 - y;
+                            break;
+                        default:
+                            rotatedX = y;
+                            rotatedY = image.getWidth() - 1 - x;
+                            break;
+                    }
+                    assertEquals(message, image.getRGB(x, y),
+                            rotated.getRGB(rotatedX, rotatedY));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return An image in which every pixel is different.
+     */
+    private static BufferedImage createImage(int type, int width, int height,
+                                             boolean isTranslucent) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int alpha = isTranslucent ? (x * 37 + y * 11) & 0xFF : 0xFF;
+                image.setRGB(x, y, (alpha << 24) | ((x & 0xFF) << 16)
+                        | ((y & 0xFF) << 8) | ((x * 7 + y * 3) & 0xFF));
+            }
+        }
+        return image;
+    }
+
+    private static String getMessage(int type, int[] size, int degrees) {
+        return String.format("Type %d, %dx%d, %d degrees", type, size[0],
+                size[1], degrees);
+    }
+
+    private static void assertSamePixels(String message,
+                                         BufferedImage expected,
+                                         BufferedImage actual) {
+        assertEquals(message, expected.getWidth(), actual.getWidth());
+        assertEquals(message, expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); ++y) {
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    fail(String.format("%s: pixel (%d, %d) is %08x " +
+                                    "instead of %08x", message, x, y,
+                            actual.getRGB(x, y), expected.getRGB(x, y)));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+
+import static org.junit.Assert.*;
+
+/**
+ * Encodes images in several bands with {@link ParallelPngEncoder}, and
+ * checks the result is a single valid PNG.
+ */
+public class ParallelPngEncoderTest {
+
+    private static final int[] IMAGE_TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR
+    };
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMultiBandRoundTrip() throws IOException {
+        // The last band is shorter than the others.
+        int height = 4 * ParallelPngEncoder.MIN_BAND_HEIGHT + 13;
+        for (int type : IMAGE_TYPES) {
+            BufferedImage image =
+                    StreamingPngEncoderTest.createImage(type, 37, height);
+            for (int bandCount = 2; bandCount <= 4; ++bandCount) {
+                StreamingPngEncoderTest.assertSamePixels(image,
+                        StreamingPngEncoderTest.decode(encode(image,
+                                bandCount)));
+            }
+        }
+    }
+
+    @Test
+    public void testMultiBandChecksum() throws IOException {
+        BufferedImage image = StreamingPngEncoderTest.createImage(
+                BufferedImage.TYPE_INT_ARGB, 301,
+                5 * ParallelPngEncoder.MIN_BAND_HEIGHT);
+        byte[] zlibStream = StreamingPngEncoderTest.getImageData(
+                encode(image, 5));
+
+        // Inflating the bands as raw deflate data, so the checksum is
+        // compared explicitly.
+        byte[] rows = StreamingPngEncoderTest.inflate(Arrays.copyOfRange(
+                zlibStream, 2, zlibStream.length - 4), true);
+        assertEquals(image.getHeight() * (image.getWidth() * 4 + 1),
+                rows.length);
+        Adler32 adler = new Adler32();
+        adler.update(rows);
+        assertEquals(adler.getValue(), readUnsignedInt(zlibStream,
+                zlibStream.length - 4));
+
+        // And as a zlib stream, which verifies the checksum as well.
+        assertArrayEquals(rows,
+                StreamingPngEncoderTest.inflate(zlibStream, false));
+    }
+
+    @Test
+    public void testCombineAdler32() {
+        Random random = new Random(7);
+        // Longer than the Adler-32 modulus, so the sums wrap.
+        byte[] data = new byte[200000];
+        random.nextBytes(data);
+        int[] splits = {0, 1, 100, 65521, 65522, 100000, data.length - 1,
+                data.length};
+        for (int split : splits) {
+            Adler32 first = new Adler32();
+            first.update(data, 0, split);
+            Adler32 second = new Adler32();
+            second.update(data, split, data.length - split);
+            Adler32 all = new Adler32();
+            all.update(data);
+            assertEquals("Split at " + split, all.getValue(),
+                    ParallelPngEncoder.combineAdler32(first.getValue(),
+                            second.getValue(), data.length - split));
+        }
+    }
+
+    @Test
+    public void testCombineAdler32OfSeveralParts() {
+        Random random = new Random(11);
+        byte[] data = new byte[300000];
+        random.nextBytes(data);
+        Adler32 all = new Adler32();
+        all.update(data);
+
+        long combined = 1;
+        for (int offset = 0; offset < data.length; ) {
+            int length = Math.min(data.length - offset,
+                    random.nextInt(70000));
+            Adler32 part = new Adler32();
+            part.update(data, offset, length);
+            combined = ParallelPngEncoder.combineAdler32(combined,
+                    part.getValue(), length);
+            offset += length;
+        }
+        assertEquals(all.getValue(), combined);
+    }
+
+    private byte[] encode(BufferedImage image, int bandCount)
+            throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ParallelPngEncoder.encode(image, output, PngCompression.DEFAULT,
+                executor, bandCount);
+        return output.toByteArray();
+    }
+
+    private static long readUnsignedInt(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xFFL) << 24)
+                | ((buffer[offset + 1] & 0xFFL) << 16)
+                | ((buffer[offset + 2] & 0xFFL) << 8)
+                | (buffer[offset + 3] & 0xFFL);
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link ScreenshotTaker} against a stub driver server.
+ */
+public class ScreenshotTakerTest {
+
+    private static final String SESSION_ID = "stub-session";
+
+    private HttpServer server;
+    private String responseBody;
+    private boolean chunked;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/session/" + SESSION_ID + "/screenshot",
+                new HttpHandler() {
+                    public void handle(HttpExchange exchange)
+                            throws IOException {
+                        byte[] body = responseBody.getBytes("UTF-8");
+                        exchange.getResponseHeaders().set("Content-Type",
+                                "application/json; charset=utf-8");
+                        // A zero length means a chunked response.
+                        exchange.sendResponseHeaders(200,
+                                chunked ? 0 : body.length);
+                        OutputStream output = exchange.getResponseBody();
+                        // Writing in small pieces, so the response spans
+                        // multiple chunks.
+                        for (int i = 0; i < body.length; i += 1000) {
+                            output.write(body, i,
+                                    Math.min(1000, body.length - i));
+                            output.flush();
+                        }
+                        output.close();
+                    }
+                });
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testChunkedResponseWithValueNotFirst() throws IOException {
+        BufferedImage expected = createImage(800, 600);
+        // Escaping slashes, as some JSON encoders do.
+        String base64 = toBase64(expected).replace("/", "\\/");
+        responseBody = "{\"sessionId\":\"" + SESSION_ID + "\",\"status\":0,"
+                + "\"state\":\"success\",\"hCode\":123,"
+                + "\"class\":\"org.openqa.selenium.remote.Response\","
+                + "\"value\":\"" + base64 + "\"}";
+        chunked = true;
+
+        BufferedImage actual = createTaker().getScreenshot(
+                new ScreenshotBufferPool());
+
+        assertSameImage(expected, actual);
+    }
+
+    @Test
+    public void testFixedLengthResponse() throws IOException {
+        BufferedImage expected = createImage(64, 48);
+        responseBody = "{\"value\":\"" + toBase64(expected)
+                + "\",\"status\":0}";
+        chunked = false;
+
+        ScreenshotTaker taker = createTaker();
+        ScreenshotBufferPool pool = new ScreenshotBufferPool();
+        BufferedImage first = taker.getScreenshot(pool);
+        assertSameImage(expected, first);
+
+        // A released image of the same size is reused.
+        pool.release(first);
+        BufferedImage second = taker.getScreenshot(pool);
+        assertSame(first, second);
+        assertSameImage(expected, second);
+    }
+
+    @Test(expected = EyesException.class)
+    public void testMissingValue() throws IOException {
+        responseBody = "{\"sessionId\":\"" + SESSION_ID + "\",\"status\":0}";
+        chunked = true;
+
+        createTaker().getScreenshot(new ScreenshotBufferPool());
+    }
+
+    private ScreenshotTaker createTaker() {
+        return new ScreenshotTaker(new Logger(),
+                URI.create("http://127.0.0.1:"
+                        + server.getAddress().getPort() + "/"), SESSION_ID);
+    }
+
+    private static BufferedImage createImage(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                image.setRGB(x, y, x * x * 31 + y * y * 17 + x * y);
+            }
+        }
+        return image;
+    }
+
+    static String toBase64(BufferedImage image) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", output);
+        byte[] bytes = output.toByteArray();
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+                + "abcdefghijklmnopqrstuvwxyz0123456789+/";
+        StringBuilder base64 = new StringBuilder();
+        for (int i = 0; i < bytes.length; i += 3) {
+            int count = Math.min(3, bytes.length - i);
+            int quantum = 0;
+            for (int j = 0; j < 3; ++j) {
+                quantum <<= 8;
+                if (j < count) {
+                    quantum |= bytes[i + j] & 0xFF;
+                }
+            }
+            for (int j = 0; j < 4; ++j) {
+                base64.append(j <= count
+                        ? alphabet.charAt((quantum >> (18 - 6 * j)) & 0x3F)
+                        : '=');
+            }
+        }
+        return base64.toString();
+    }
+
+    private static void assertSameImage(BufferedImage expected,
+                                        BufferedImage actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); ++y) {
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                assertEquals(expected.getRGB(x, y) & 0xFFFFFF,
+                        actual.getRGB(x, y) & 0xFFFFFF);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stitches base64 screenshot parts with {@link StitchingPipeline}, and
+ * checks the result and the memory allocated while stitching.
+ */
+public class StitchingPipelineTest {
+
+    private static final int WIDTH = 640;
+    private static final int VIEWPORT_HEIGHT = 480;
+    private static final int PAGE_HEIGHT = 4000;
+    // Parts overlap by the scroll bar size, as in getStitchedRegion.
+    private static final int PART_STEP = VIEWPORT_HEIGHT - 50;
+
+    private BufferedImage page;
+    private Location[] positions;
+    private String[] parts;
+    private ImageCodec codec;
+    private ScreenshotBufferPool bufferPool;
+
+    @Before
+    public void setUp() throws IOException {
+        page = StreamingPngEncoderTest.createImage(
+                BufferedImage.TYPE_3BYTE_BGR, WIDTH, PAGE_HEIGHT);
+        int partCount = (PAGE_HEIGHT - VIEWPORT_HEIGHT + PART_STEP - 1)
+                / PART_STEP + 1;
+        positions = new Location[partCount];
+        parts = new String[partCount];
+        for (int i = 0; i < partCount; ++i) {
+            // The last scroll position is limited by the page's height.
+            int top = Math.min(i * PART_STEP, PAGE_HEIGHT - VIEWPORT_HEIGHT);
+            positions[i] = new Location(0, top);
+            parts[i] = ScreenshotTakerTest.toBase64(
+                    page.getSubimage(0, top, WIDTH, VIEWPORT_HEIGHT));
+        }
+        codec = new ScreenshotCodec();
+        bufferPool = new ScreenshotBufferPool();
+    }
+
+    @Test
+    public void testStitchedImage() {
+        StreamingPngEncoderTest.assertSamePixels(page, stitch(Region.EMPTY));
+    }
+
+    @Test
+    public void testStitchedRegion() {
+        Region region = new Region(100, 0, 400, VIEWPORT_HEIGHT);
+        BufferedImage stitchedImage = stitch(region);
+        StreamingPngEncoderTest.assertSamePixels(
+                page.getSubimage(100, 0, 400, PAGE_HEIGHT), stitchedImage);
+    }
+
+    /**
+     * Each part used to be copied twice after decoding (a cropped copy and
+     * a Raster copy), and decoded into a new image. Now parts are decoded
+     * into a reused image and copied once, directly into the stitched
+     * image. What's left is mostly ImageIO's PNG reader, which allocates a
+     * copy of each row while decoding into the destination.
+     */
+    @Test
+    public void testStitchingAllocations() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations =
+                (com.sun.management.ThreadMXBean) threads;
+        if (!allocations.isThreadAllocatedMemorySupported()
+                || !allocations.isThreadAllocatedMemoryEnabled()) {
+            return;
+        }
+        long threadId = Thread.currentThread().getId();
+
+        // Warming up, so class loading and the first buffers aren't counted.
+        stitch(Region.EMPTY);
+
+        long partBytes = (long) WIDTH * VIEWPORT_HEIGHT * 3;
+        long stitchedBytes = (long) WIDTH * PAGE_HEIGHT * 3;
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        stitch(Region.EMPTY);
+        long allocated = allocations.getThreadAllocatedBytes(threadId)
+                - before;
+
+        long perPart = (allocated - stitchedBytes) / parts.length;
+        assertTrue(String.format("Allocated %d bytes per %d bytes part.",
+                perPart, partBytes), perPart < 2 * partBytes);
+    }
+
+    /**
+     * Stitches the parts synchronously, so all the allocations are made by
+     * the calling thread.
+     */
+    private BufferedImage stitch(Region regionInScreenshot) {
+        BufferedImage firstPart = codec.decode(parts[0],
+                bufferPool.acquire(WIDTH, VIEWPORT_HEIGHT));
+        int stitchedWidth = regionInScreenshot.isEmpty() ? WIDTH
+                : regionInScreenshot.getWidth();
+        BufferedImage stitchedImage = new BufferedImage(stitchedWidth,
+                PAGE_HEIGHT, firstPart.getType());
+        StitchingPipeline pipeline = new StitchingPipeline(new Logger(),
+                stitchedImage, codec, bufferPool, regionInScreenshot, 0, 0);
+        try {
+            pipeline.addPart(firstPart, positions[0], 0);
+            for (int i = 1; i < parts.length; ++i) {
+                pipeline.addPart(parts[i], positions[i], 0);
+            }
+            pipeline.finish();
+        } finally {
+            if (pipeline.shutdown()) {
+                bufferPool.release(firstPart);
+            }
+        }
+        return stitchedImage;
+    }
+}
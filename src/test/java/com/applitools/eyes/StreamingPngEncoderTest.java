@@ -0,0 +1,282 @@
+/*
+ * Applitools SDK for Selenium integration.
+ */
+package com.applitools.eyes;
+
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Encodes known images with {@link StreamingPngEncoder}, decodes them with
+ * ImageIO and compares the pixels.
+ */
+public class StreamingPngEncoderTest {
+
+    private static final int[] IMAGE_TYPES = {
+            BufferedImage.TYPE_INT_RGB,
+            BufferedImage.TYPE_INT_ARGB,
+            BufferedImage.TYPE_3BYTE_BGR,
+            BufferedImage.TYPE_4BYTE_ABGR,
+            // Read through getRGB.
+            BufferedImage.TYPE_USHORT_565_RGB
+    };
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage image = createImage(type, 37, 29);
+            assertSamePixels(image, decode(encode(image, 1)));
+        }
+    }
+
+    @Test
+    public void testRoundTripInSeveralWrites() throws IOException {
+        for (int type : IMAGE_TYPES) {
+            BufferedImage image = createImage(type, 37, 29);
+            assertSamePixels(image, decode(encode(image, 5)));
+        }
+    }
+
+    @Test
+    public void testRoundTripOfMultipleIdatChunks() throws IOException {
+        // Noise doesn't compress, so the data is split between chunks.
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 401,
+                301);
+        byte[] png = encode(image, 1);
+        assertTrue(png.length > 2 * StreamingPngEncoder.MAX_IDAT_SIZE);
+        assertSamePixels(image, decode(png));
+    }
+
+    @Test
+    public void testAllFiltersAreUsed() throws IOException {
+        // Only types whose pixels are stored as 8 bit samples, so the rows
+        // are encoded exactly as they were generated.
+        int[] types = {BufferedImage.TYPE_INT_RGB,
+                BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR,
+                BufferedImage.TYPE_4BYTE_ABGR};
+        for (int type : types) {
+            BufferedImage image = createImage(type, 37, 29);
+            Set<Integer> filters = getRowFilters(encode(image, 1),
+                    image.getColorModel().hasAlpha() ? 4 : 3,
+                    image.getWidth());
+            for (int filter = PngRowFilter.FILTER_NONE;
+                 filter <= PngRowFilter.FILTER_PAETH; ++filter) {
+                assertTrue("Filter " + filter + " wasn't used for type "
+                        + type, filters.contains(filter));
+            }
+        }
+    }
+
+    @Test
+    public void testAbortAfterFinish() throws IOException {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 5, 5);
+        StreamingPngEncoder encoder = new StreamingPngEncoder(
+                new ByteArrayOutputStream(), 5, 5, false);
+        encoder.writeRows(image, 0, 5);
+        encoder.finish();
+        encoder.abort();
+        encoder.abort();
+    }
+
+    @Test
+    public void testAbortIncompleteImage() throws IOException {
+        BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 5, 5);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StreamingPngEncoder encoder = new StreamingPngEncoder(output, 5, 5,
+                false);
+        encoder.writeRows(image, 0, 2);
+        int written = output.size();
+        encoder.abort();
+        assertEquals(written, output.size());
+        try {
+            encoder.writeRows(image, 2, 3);
+            encoder.finish();
+            fail("Expected the aborted encoder to fail.");
+        } catch (RuntimeException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Creates an image whose rows are each best filtered by a specific
+     * filter. Noise rows are followed by a row of zeros (none), a copy of
+     * the noise row (up), a horizontal gradient (sub), and by rows whose
+     * bytes are exactly the average or Paeth prediction of their neighbours.
+     */
+    static BufferedImage createImage(int type, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        int channels = image.getColorModel().hasAlpha() ? 4 : 3;
+        Random random = new Random(width * 31 + height);
+        int[][] previousRow = new int[width][channels];
+        int[][] row = new int[width][channels];
+        for (int y = 0; y < height; ++y) {
+            int rowType = y % 9;
+            for (int x = 0; x < width; ++x) {
+                for (int c = 0; c < channels; ++c) {
+                    int left = x > 0 ? row[x - 1][c] : 0;
+                    int up = previousRow[x][c];
+                    int upLeft = x > 0 ? previousRow[x - 1][c] : 0;
+                    int value;
+                    switch (rowType) {
+                        case 1:
+                            value = 0;
+                            break;
+                        case 3:
+                            value = up;
+                            break;
+                        case 4:
+                            value = (x * (c + 3)) & 0xFF;
+                            break;
+                        case 6:
+                            value = (left + up) >> 1;
+                            break;
+                        case 8:
+                            value = paethPredictor(left, up, upLeft);
+                            break;
+                        default:
+                            value = random.nextInt(256);
+                            break;
+                    }
+                    row[x][c] = value;
+                }
+                int alpha = channels == 4 ? row[x][3] : 0xFF;
+                image.setRGB(x, y, (alpha << 24) | (row[x][0] << 16)
+                        | (row[x][1] << 8) | row[x][2]);
+            }
+            int[][] swap = previousRow;
+            previousRow = row;
+            row = swap;
+        }
+        return image;
+    }
+
+    private static int paethPredictor(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    /**
+     * @param writes The number of calls in which the rows are written.
+     */
+    private static byte[] encode(BufferedImage image, int writes)
+            throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StreamingPngEncoder encoder = new StreamingPngEncoder(output,
+                image.getWidth(), image.getHeight(),
+                image.getColorModel().hasAlpha());
+        int rowsPerWrite = (image.getHeight() + writes - 1) / writes;
+        for (int y = 0; y < image.getHeight(); y += rowsPerWrite) {
+            encoder.writeRows(image, y,
+                    Math.min(rowsPerWrite, image.getHeight() - y));
+        }
+        encoder.finish();
+        return output.toByteArray();
+    }
+
+    static BufferedImage decode(byte[] png) throws IOException {
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+        assertNotNull("ImageIO couldn't read the PNG.", image);
+        return image;
+    }
+
+    static void assertSamePixels(BufferedImage expected,
+                                 BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getColorModel().hasAlpha(),
+                actual.getColorModel().hasAlpha());
+        for (int y = 0; y < expected.getHeight(); ++y) {
+            for (int x = 0; x < expected.getWidth(); ++x) {
+                if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+                    fail(String.format("Pixel (%d, %d): expected %08x, " +
+                                    "got %08x", x, y, expected.getRGB(x, y),
+                            actual.getRGB(x, y)));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The filter types of the rows of the given PNG.
+     */
+    static Set<Integer> getRowFilters(byte[] png, int bytesPerPixel,
+                                      int width) throws IOException {
+        byte[] rows = inflate(getImageData(png), false);
+        int rowLength = width * bytesPerPixel + 1;
+        assertEquals(0, rows.length % rowLength);
+        Set<Integer> filters = new HashSet<Integer>();
+        for (int i = 0; i < rows.length; i += rowLength) {
+            filters.add(rows[i] & 0xFF);
+        }
+        return filters;
+    }
+
+    /**
+     * @return The concatenated data of the IDAT chunks of the given PNG (a
+     * zlib stream).
+     */
+    static byte[] getImageData(byte[] png) throws IOException {
+        DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(png));
+        input.skipBytes(8);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        while (true) {
+            int length = input.readInt();
+            byte[] type = new byte[4];
+            input.readFully(type);
+            byte[] data = new byte[length];
+            input.readFully(data);
+            input.skipBytes(4);
+            String chunkType = new String(type, "US-ASCII");
+            if (chunkType.equals("IDAT")) {
+                idat.write(data);
+            } else if (chunkType.equals("IEND")) {
+                return idat.toByteArray();
+            }
+        }
+    }
+
+    /**
+     * @param nowrap Whether the data is raw deflate data rather than a zlib
+     *               stream (whose checksum is then verified).
+     */
+    static byte[] inflate(byte[] data, boolean nowrap) throws IOException {
+        Inflater inflater = new Inflater(nowrap);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try {
+            inflater.setInput(data);
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && inflater.needsInput()) {
+                    fail("Image data is truncated.");
+                }
+                raw.write(buffer, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid image data!", e);
+        } finally {
+            inflater.end();
+        }
+        return raw.toByteArray();
+    }
+}